@@ -28,16 +28,21 @@ package org.ow2.proactive.procci;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.ow2.proactive.procci.rest.DeadlineInterceptor;
+import org.ow2.proactive.procci.rest.PathConstant;
+import org.ow2.proactive.procci.rest.RequestIdentityMapInterceptor;
+import org.ow2.proactive.procci.service.ConnectorConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.web.MultipartAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.PropertySource;
-import org.springframework.http.MediaType;
 import org.springframework.web.multipart.MultipartResolver;
 import org.springframework.web.multipart.commons.CommonsMultipartResolver;
-import org.springframework.web.servlet.config.annotation.ContentNegotiationConfigurer;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
 import com.google.common.base.Predicate;
@@ -61,19 +66,31 @@ import springfox.documentation.swagger2.annotations.EnableSwagger2;
 @PropertySource("classpath:application.properties")
 public class Application extends WebMvcConfigurerAdapter {
 
+    //the request answers with its own deadline error before the servlet container gives up on it
+    private static final long ASYNC_TIMEOUT_MARGIN_MILLIS = 5000;
+
+    @Autowired
+    private ConnectorConfiguration configuration;
+
+    @Autowired
+    private DeadlineInterceptor deadlineInterceptor;
+
+    @Autowired
+    private RequestIdentityMapInterceptor requestIdentityMapInterceptor;
+
     public static void main(String[] args) {
         SpringApplication.run(Application.class, args);
     }
 
     @Override
-    public void configureContentNegotiation(ContentNegotiationConfigurer configurer) {
-        configurer.favorPathExtension(false)
-                  .favorParameter(true)
-                  .parameterName("format")
-                  .ignoreAcceptHeader(true)
-                  .useJaf(false)
-                  .defaultContentType(MediaType.APPLICATION_JSON)
-                  .mediaType("json", MediaType.APPLICATION_JSON);
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(deadlineInterceptor).addPathPatterns(PathConstant.QUERY_PATH + "**");
+        registry.addInterceptor(requestIdentityMapInterceptor).addPathPatterns(PathConstant.QUERY_PATH + "**");
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(configuration.getRequestDeadlineMillis() + ASYNC_TIMEOUT_MARGIN_MILLIS);
     }
 
     @Bean
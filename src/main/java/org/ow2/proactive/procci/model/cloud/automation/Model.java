@@ -52,7 +52,7 @@ import lombok.ToString;
 /**
  * Cloud Automation serviceModel
  */
-@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
 @Getter
 @ToString
 @EqualsAndHashCode
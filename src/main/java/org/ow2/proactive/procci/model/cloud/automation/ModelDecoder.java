@@ -0,0 +1,149 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.model.cloud.automation;
+
+import static org.ow2.proactive.procci.model.ModelConstant.ACTION_DESCRIPTION;
+import static org.ow2.proactive.procci.model.ModelConstant.ACTION_ICON;
+import static org.ow2.proactive.procci.model.ModelConstant.ACTION_NAME;
+import static org.ow2.proactive.procci.model.ModelConstant.ACTION_ORIGIN_STATES;
+import static org.ow2.proactive.procci.model.ModelConstant.ACTION_TYPE;
+import static org.ow2.proactive.procci.model.ModelConstant.GENERIC_INFORMATION;
+import static org.ow2.proactive.procci.model.ModelConstant.SERVICE_DESCRIPTION;
+import static org.ow2.proactive.procci.model.ModelConstant.SERVICE_MODEL;
+import static org.ow2.proactive.procci.model.ModelConstant.SERVICE_NAME;
+import static org.ow2.proactive.procci.model.ModelConstant.SERVICE_TYPE;
+import static org.ow2.proactive.procci.model.ModelConstant.VARIABLES;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+
+/**
+ * Read the serviceInstances of Cloud Automation Service from a json stream
+ * <p>
+ * The stream is read token by token and each model is built as soon as its json object is read, without the
+ * intermediate string and json tree of the response. The http transport gives the response body while it is
+ * received, so only a buffer of the body is held in memory at once. The decoded models are equal to the ones built
+ * by {@link Model#Model(org.json.simple.JSONObject)}.
+ */
+public class ModelDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private ModelDecoder() {
+    }
+
+    /**
+     * Read the models of a serviceInstances response
+     *
+     * @param input is a json object whose values are the cloud automation models
+     * @return the models in the order of the response
+     * @throws IOException if the stream can not be read or is not a valid response
+     */
+    public static List<Model> decodeModels(InputStream input) throws IOException {
+        List<Model> models = new ArrayList<>();
+        decodeModels(input, models::add);
+        return models;
+    }
+
+    /**
+     * Read the models of a serviceInstances response and give them one by one to the consumer
+     *
+     * @param input is a json object whose values are the cloud automation models
+     * @param consumer receives each model as soon as it is read
+     * @throws IOException if the stream can not be read or is not a valid response
+     */
+    public static void decodeModels(InputStream input, Consumer<Model> consumer) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createJsonParser(input)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+                consumer.accept(readModel(parser));
+            }
+            expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+        }
+    }
+
+    private static Model readModel(JsonParser parser) throws IOException {
+        Map<String, String> genericInfo = new HashMap<>();
+        Map<String, String> variables = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.START_OBJECT && GENERIC_INFORMATION.equals(field)) {
+                readStrings(parser, genericInfo);
+            } else if (value == JsonToken.START_OBJECT && VARIABLES.equals(field)) {
+                readStrings(parser, variables);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Model(genericInfo.getOrDefault(SERVICE_MODEL, ""),
+                         genericInfo.getOrDefault(SERVICE_TYPE, ""),
+                         genericInfo.getOrDefault(SERVICE_NAME, ""),
+                         genericInfo.getOrDefault(SERVICE_DESCRIPTION, ""),
+                         genericInfo.getOrDefault(ACTION_TYPE, ""),
+                         genericInfo.getOrDefault(ACTION_NAME, ""),
+                         genericInfo.getOrDefault(ACTION_DESCRIPTION, ""),
+                         genericInfo.getOrDefault(ACTION_ORIGIN_STATES, ""),
+                         genericInfo.getOrDefault(ACTION_ICON, ""),
+                         variables);
+    }
+
+    /**
+     * Read the scalar members of the current json object, the nested objects and arrays are skipped
+     */
+    private static void readStrings(JsonParser parser, Map<String, String> values) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                values.put(key, null);
+            } else if (value.isScalarValue()) {
+                values.put(key, parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException("expected " + expected + " but found " + actual,
+                                         parser.getCurrentLocation());
+        }
+    }
+}
@@ -25,16 +25,37 @@
  */
 package org.ow2.proactive.procci.model.exception;
 
+import org.apache.http.HttpStatus;
 import org.json.simple.JSONObject;
 
+import lombok.Getter;
 
+
+/**
+ * The Exception occur when a Cloud Automation microservice rejects a request with a 4xx status
+ */
 public class CloudAutomationClientException extends ClientException {
 
     private JSONObject jsonError;
 
+    @Getter
+    private final int status;
+
     public CloudAutomationClientException(String exception) {
+        this(exception, HttpStatus.SC_BAD_REQUEST);
+    }
+
+    public CloudAutomationClientException(String exception, int status) {
         jsonError = new JSONObject();
         jsonError.put("error", exception);
+        this.status = status;
+    }
+
+    /**
+     * @return true if the requested resource does not exist
+     */
+    public boolean isNotFound() {
+        return status == HttpStatus.SC_NOT_FOUND;
     }
 
     @Override
@@ -0,0 +1,57 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.model.exception;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.json.simple.JSONObject;
+
+import lombok.Getter;
+
+
+/**
+ * The Exception occur when several mixins of a request can not be resolved, it gathers the error of each mixin
+ */
+@Getter
+public class MixinResolutionException extends ClientException {
+
+    private final Map<String, ClientException> errors;
+
+    public MixinResolutionException(Map<String, ClientException> errors) {
+        this.errors = errors;
+    }
+
+    @Override
+    public String getJsonError() {
+        return "{\"error\" : \"" + errors.size() + " mixins can not be resolved\", \"mixins\" : {" +
+               errors.entrySet()
+                     .stream()
+                     .map(error -> "\"" + JSONObject.escape(error.getKey()) + "\" : " + error.getValue().getJsonError())
+                     .collect(Collectors.joining(", ")) +
+               "}}";
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.model.exception;
+
+import org.json.simple.JSONObject;
+
+
+/**
+ * The Exception occurs when a request is refused without being handled because the connector or one of the
+ * services it calls is overloaded, the request can be sent again later
+ */
+public class ServiceUnavailableException extends ServerException {
+
+    private JSONObject jsonError;
+
+    public ServiceUnavailableException(String reason) {
+        jsonError = new JSONObject();
+        jsonError.put("error", "503 Service Unavailable");
+        jsonError.put("reason", reason);
+    }
+
+    @Override
+    public String getJsonError() {
+        return jsonError.toJSONString();
+    }
+}
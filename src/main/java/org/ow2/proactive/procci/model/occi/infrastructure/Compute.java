@@ -45,6 +45,7 @@ import org.ow2.proactive.procci.model.occi.metamodel.Kind;
 import org.ow2.proactive.procci.model.occi.metamodel.Link;
 import org.ow2.proactive.procci.model.occi.metamodel.Mixin;
 import org.ow2.proactive.procci.model.occi.metamodel.Resource;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.RenderingFields;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.ResourceRendering;
 
 import lombok.Getter;
@@ -115,14 +116,17 @@ public class Compute extends Resource {
     }
 
     /**
-     * Give the OCCI rendering of a compute
+     * Give the OCCI rendering of a compute restricted to some fields
      *
+     * @param fields are the members and the attributes asked
      * @return the compute rendering
      */
-    public ResourceRendering getRendering() {
+    @Override
+    public ResourceRendering getRendering(RenderingFields fields) {
 
         ResourceRendering.Builder resourceRendering = new ResourceRendering.Builder(this.getKind().getTitle(),
-                                                                                    this.getRenderingId());
+                                                                                    this.getRenderingId(),
+                                                                                    fields);
         this.getTitle().ifPresent(title -> resourceRendering.addAttribute(ENTITY_TITLE_NAME, title));
         this.getSummary().ifPresent(summary -> resourceRendering.addAttribute(SUMMARY_NAME, summary));
         this.architecture.ifPresent(archi -> resourceRendering.addAttribute(ARCHITECTURE_NAME, archi.name()));
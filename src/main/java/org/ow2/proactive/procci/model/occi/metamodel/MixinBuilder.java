@@ -123,14 +123,14 @@ public class MixinBuilder {
                                                                 .orElseThrow(() -> new SyntaxException(apply, "Kind")))
                                .collect(Collectors.toList());
 
-        this.entities = Optional.ofNullable(mixinRendering.getEntities())
-                                .map(entitiesId -> new ArrayList<>(entitiesId))
-                                .orElse(new ArrayList<>())
-                                .stream()
-                                .map(entityId -> instanceService.getMixinsFreeEntity(entityId))
-                                .filter(entity -> entity.isPresent())
-                                .map(entity -> entity.get())
-                                .collect(Collectors.toList());
+        //the entities are resolved together in order to look up the instances once
+        Set<String> entitiesId = Optional.ofNullable(mixinRendering.getEntities()).orElse(new HashSet<>());
+        Map<String, Entity> entitiesById = entitiesId.isEmpty() ? new HashMap<>()
+                                                                : instanceService.getMixinsFreeEntities(entitiesId);
+        this.entities = entitiesId.stream()
+                                  .map(entityId -> entitiesById.get(entityId))
+                                  .filter(entity -> entity != null)
+                                  .collect(Collectors.toList());
 
     }
 
@@ -33,6 +33,7 @@ import java.util.Optional;
 import java.util.Set;
 
 import org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelAttributes;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.RenderingFields;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.ResourceRendering;
 
 import com.google.common.collect.ImmutableCollection;
@@ -81,8 +82,20 @@ public class Resource extends Entity {
 
     @Override
     public ResourceRendering getRendering() {
+        return getRendering(RenderingFields.all());
+    }
+
+    /**
+     * Give the OCCI rendering restricted to some fields, the attributes and the members which are not asked are
+     * never added to it
+     *
+     * @param fields are the members and the attributes asked
+     * @return the resource rendering
+     */
+    public ResourceRendering getRendering(RenderingFields fields) {
         ResourceRendering.Builder resourceRendering = new ResourceRendering.Builder(this.getKind().getTitle(),
-                                                                                    this.getRenderingId());
+                                                                                    this.getRenderingId(),
+                                                                                    fields);
         this.getTitle().ifPresent(title -> resourceRendering.addAttribute(ENTITY_TITLE_NAME, title));
         this.getSummary().ifPresent(summary -> resourceRendering.addAttribute(SUMMARY_NAME, summary));
         this.getMixins().forEach(mixin -> resourceRendering.addMixin(mixin.getTitle()));
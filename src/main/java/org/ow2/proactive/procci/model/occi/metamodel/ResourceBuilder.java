@@ -84,10 +84,8 @@ public class ResourceBuilder {
                                                                   .map(attributes -> attributes.get(ENTITY_TITLE_NAME)));
         this.summary = ConvertUtils.convertStringFromObject(Optional.ofNullable(rendering.getAttributes())
                                                                     .map(attributes -> attributes.get(SUMMARY_NAME)));
-        this.mixins = new ArrayList<>();
-        for (String mixin : Optional.ofNullable(rendering.getMixins()).orElse(new ArrayList<>())) {
-            this.mixins.add(mixinService.getMixinByTitle(mixin));
-        }
+        this.mixins = new ArrayList<>(mixinService.getMixinsByTitles(Optional.ofNullable(rendering.getMixins())
+                                                                          .orElse(new ArrayList<>())));
         associateProviderMixin(mixinService, rendering.getAttributes());
         this.links = new ArrayList<>();
     }
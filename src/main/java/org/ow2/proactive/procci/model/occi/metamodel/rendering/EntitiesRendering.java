@@ -25,7 +25,7 @@
  */
 package org.ow2.proactive.procci.model.occi.metamodel.rendering;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -50,7 +50,7 @@ public class EntitiesRendering {
         private final Map<String, EntityRendering> entities;
 
         public Builder() {
-            entities = new HashMap<>();
+            entities = new LinkedHashMap<>();
         }
 
         public Builder addEntity(EntityRendering entity) {
@@ -28,6 +28,10 @@ package org.ow2.proactive.procci.model.occi.metamodel.rendering;
 import java.util.List;
 import java.util.Map;
 
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
@@ -37,7 +41,12 @@ import lombok.NoArgsConstructor;
 
 /**
  * Model rendering for an entity
+ * <p>
+ * The null members are left out of the json rendering, by the jackson mapper of the connector as well as by the one
+ * of the REST responses
  */
+@JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @AllArgsConstructor(access = AccessLevel.PROTECTED)
 @Getter
 @EqualsAndHashCode
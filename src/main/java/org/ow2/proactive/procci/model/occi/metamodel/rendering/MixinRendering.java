@@ -26,12 +26,15 @@
 package org.ow2.proactive.procci.model.occi.metamodel.rendering;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.codehaus.jackson.map.ObjectMapper;
 import org.ow2.proactive.procci.model.exception.ServerException;
+import org.ow2.proactive.procci.model.utils.ConvertUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +45,7 @@ import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import lombok.ToString;
 
 
@@ -78,13 +82,30 @@ public class MixinRendering {
     @ApiModelProperty(hidden = true)
     private String location;
 
+    @Setter
     @ApiModelProperty(hidden = true)
     private Set<String> entities;
 
+    /**
+     * Give a copy whose collections can be changed without changing the ones of this rendering
+     *
+     * @return a copy of the rendering
+     */
+    public MixinRendering copy() {
+        return new MixinRendering(term,
+                                  scheme,
+                                  title,
+                                  attributes == null ? null : new HashMap<>(attributes),
+                                  actions == null ? null : new ArrayList<>(actions),
+                                  depends == null ? null : new ArrayList<>(depends),
+                                  applies == null ? null : new ArrayList<>(applies),
+                                  location,
+                                  entities == null ? null : new HashSet<>(entities));
+    }
+
     public static MixinRendering convertMixinFromString(String mixinRendering) {
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            return mapper.readValue(mixinRendering, MixinRendering.class);
+            return ConvertUtils.MAPPER.readValue(mixinRendering, MixinRendering.class);
         } catch (IOException ex) {
             logger.error("IO Exception in MixinRendering :", ex.getMessage());
             throw new ServerException();
@@ -92,9 +113,8 @@ public class MixinRendering {
     }
 
     public static String convertStringFromMixin(MixinRendering mixinRendering) {
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            return mapper.writeValueAsString(mixinRendering);
+            return ConvertUtils.MAPPER.writeValueAsString(mixinRendering);
         } catch (IOException ex) {
             logger.error("IO Exception in MixinRendering :", ex.getMessage());
             throw new ServerException();
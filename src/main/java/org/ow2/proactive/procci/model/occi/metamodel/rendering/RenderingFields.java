@@ -0,0 +1,129 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.model.occi.metamodel.rendering;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.ow2.proactive.procci.model.exception.SyntaxException;
+
+import com.google.common.collect.ImmutableSet;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+
+/**
+ * The members and the attributes of the entity renderings asked by a client
+ * <p>
+ * A field is a member of the rendering like {@code mixins} or {@code links}, the member {@code attributes} for all
+ * the attributes, or the name of one attribute like {@code occi.compute.state}. The id is always given, the members
+ * and the attributes which are not asked are left out of the rendering.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class RenderingFields {
+
+    public static final String KIND = "kind";
+
+    public static final String MIXINS = "mixins";
+
+    public static final String ATTRIBUTES = "attributes";
+
+    public static final String ACTIONS = "actions";
+
+    public static final String LINKS = "links";
+
+    public static final String ID = "id";
+
+    private static final Set<String> MEMBERS = ImmutableSet.of(KIND, MIXINS, ATTRIBUTES, ACTIONS, LINKS, ID);
+
+    private static final RenderingFields ALL = new RenderingFields(MEMBERS, Collections.emptySet());
+
+    private final Set<String> members;
+
+    private final Set<String> attributes;
+
+    private RenderingFields(Set<String> members, Set<String> attributes) {
+        this.members = Collections.unmodifiableSet(members);
+        this.attributes = Collections.unmodifiableSet(attributes);
+    }
+
+    /**
+     * @return the fields of the whole rendering
+     */
+    public static RenderingFields all() {
+        return ALL;
+    }
+
+    /**
+     * @param fields are the fields written as in the description of the class, or null for the whole rendering
+     * @return the fields asked
+     * @throws SyntaxException if a field is neither a member nor an attribute name
+     */
+    public static RenderingFields parse(List<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return ALL;
+        }
+        Set<String> members = new LinkedHashSet<>();
+        Set<String> attributes = new LinkedHashSet<>();
+        members.add(ID);
+        for (String field : fields) {
+            String name = field.trim();
+            if (MEMBERS.contains(name)) {
+                members.add(name);
+            } else if (name.indexOf('.') > 0) {
+                attributes.add(name);
+            } else {
+                throw new SyntaxException(field, "a member like " + MIXINS + " or an attribute like occi.compute.state");
+            }
+        }
+        return new RenderingFields(members, attributes);
+    }
+
+    public boolean isAll() {
+        return members.containsAll(MEMBERS);
+    }
+
+    public boolean includes(String member) {
+        return members.contains(member);
+    }
+
+    /**
+     * @return true if all the attributes or some of them are asked
+     */
+    public boolean includesAttributes() {
+        return includes(ATTRIBUTES) || !attributes.isEmpty();
+    }
+
+    public boolean includesAttribute(String attributeName) {
+        return includes(ATTRIBUTES) || attributes.contains(attributeName);
+    }
+}
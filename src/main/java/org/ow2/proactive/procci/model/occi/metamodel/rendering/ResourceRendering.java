@@ -30,6 +30,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.ow2.proactive.procci.model.exception.UnknownAttributeException;
@@ -87,37 +88,74 @@ public class ResourceRendering extends EntityRendering {
 
         private List<LinkRendering> links;
 
+        private final RenderingFields fields;
+
         public Builder(String kind, String id) {
+            this(kind, id, RenderingFields.all());
+        }
+
+        /**
+         * Build a rendering restricted to some fields, the members and the attributes which are not asked are left
+         * out when they are added
+         */
+        public Builder(String kind, String id, RenderingFields fields) {
             this.kind = kind;
             this.mixins = new ArrayList<>();
             this.attributes = new HashMap<>();
             this.actions = new ArrayList<>();
             this.id = id;
             this.links = new ArrayList<>();
+            this.fields = fields;
         }
 
         public Builder addMixin(String mixin) {
-            this.mixins.add(mixin);
+            if (fields.includes(RenderingFields.MIXINS)) {
+                this.mixins.add(mixin);
+            }
             return this;
         }
 
         public Builder addAttribute(String attributeName, Object attributeValue) {
-            this.attributes.put(attributeName, attributeValue);
+            if (fields.includesAttribute(attributeName)) {
+                this.attributes.put(attributeName, attributeValue);
+            }
+            return this;
+        }
+
+        /**
+         * Add an attribute whose value is only computed when the attribute is asked
+         */
+        public Builder addComputedAttribute(String attributeName, Supplier<?> attributeValue) {
+            if (fields.includesAttribute(attributeName)) {
+                this.attributes.put(attributeName, attributeValue.get());
+            }
             return this;
         }
 
         public Builder addAction(String action) {
-            this.actions.add(action);
+            if (fields.includes(RenderingFields.ACTIONS)) {
+                this.actions.add(action);
+            }
             return this;
         }
 
         public Builder addLink(LinkRendering link) {
-            this.links.add(link);
+            if (fields.includes(RenderingFields.LINKS)) {
+                this.links.add(link);
+            }
             return this;
         }
 
+        /**
+         * @return the rendering, the members which are not asked are null and are not serialised
+         */
         public ResourceRendering build() {
-            return new ResourceRendering(kind, mixins, attributes, actions, id, links);
+            return new ResourceRendering(fields.includes(RenderingFields.KIND) ? kind : null,
+                                         fields.includes(RenderingFields.MIXINS) ? mixins : null,
+                                         fields.includesAttributes() ? attributes : null,
+                                         fields.includes(RenderingFields.ACTIONS) ? actions : null,
+                                         id,
+                                         fields.includes(RenderingFields.LINKS) ? links : null);
         }
     }
 
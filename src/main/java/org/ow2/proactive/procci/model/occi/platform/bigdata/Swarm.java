@@ -48,6 +48,7 @@ import org.ow2.proactive.procci.model.occi.metamodel.Attribute;
 import org.ow2.proactive.procci.model.occi.metamodel.Kind;
 import org.ow2.proactive.procci.model.occi.metamodel.Link;
 import org.ow2.proactive.procci.model.occi.metamodel.Mixin;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.RenderingFields;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.ResourceRendering;
 import org.ow2.proactive.procci.model.occi.platform.Component;
 import org.ow2.proactive.procci.model.occi.platform.Status;
@@ -111,21 +112,24 @@ public class Swarm extends Component {
     }
 
     /**
-     * Give the OCCI rendering of a swarm
+     * Give the OCCI rendering of a swarm restricted to some fields
      *
+     * @param fields are the members and the attributes asked
      * @return the swarm rendering
      */
-    public ResourceRendering getRendering() {
+    @Override
+    public ResourceRendering getRendering(RenderingFields fields) {
 
         ResourceRendering.Builder resourceRendering = new ResourceRendering.Builder(this.getKind().getTitle(),
-                                                                                    this.getRenderingId());
+                                                                                    this.getRenderingId(),
+                                                                                    fields);
         this.getTitle().ifPresent(title -> resourceRendering.addAttribute(ENTITY_TITLE_NAME, title));
         this.getSummary().ifPresent(summary -> resourceRendering.addAttribute(SUMMARY_NAME, summary));
         this.getStatus().ifPresent(status -> resourceRendering.addAttribute(STATUS_NAME, status.name()));
         this.machineName.ifPresent(name -> resourceRendering.addAttribute(MACHINE_NAME_NAME, name));
         resourceRendering.addAttribute(HOST_IP_NAME, hostIp);
         resourceRendering.addAttribute(MASTER_IP_NAME, masterIp);
-        resourceRendering.addAttribute(AGENTS_IP_NAME, getAgentsIpAsString());
+        resourceRendering.addComputedAttribute(AGENTS_IP_NAME, this::getAgentsIpAsString);
         networkName.ifPresent(name -> resourceRendering.addAttribute(NETWORK_NAME_NAME, name));
 
         this.getMixins().forEach(mixin -> resourceRendering.addMixin(mixin.getTitle()));
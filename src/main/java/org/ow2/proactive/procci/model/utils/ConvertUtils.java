@@ -43,6 +43,11 @@ public class ConvertUtils {
 
     public static Logger logger = LoggerFactory.getLogger(ConvertUtils.class);
 
+    /**
+     * The mapper is thread safe once configured, it is shared to keep its serializer caches
+     */
+    public static final ObjectMapper MAPPER = new ObjectMapper();
+
     /**
      * Parse a string integer into an optional integer
      *
@@ -96,7 +101,7 @@ public class ConvertUtils {
 
     public static String mapObject(Object obj) {
         try {
-            return new ObjectMapper().writeValueAsString(obj);
+            return MAPPER.writeValueAsString(obj);
         } catch (IOException ex) {
             logger.error("IO Exception in " + ConvertUtils.class.getName() + " :", ex);
             throw new ServerException();
@@ -105,9 +110,8 @@ public class ConvertUtils {
     }
 
     public static <T> T readMappedObject(String references, TypeReference<T> mapType) {
-        ObjectMapper objectMapper = new ObjectMapper();
         try {
-            return objectMapper.readValue(references, mapType);
+            return MAPPER.readValue(references, mapType);
         } catch (IOException ex) {
             logger.error("IO Exception in " + ConvertUtils.class.getName() + " :", ex);
             throw new ServerException();
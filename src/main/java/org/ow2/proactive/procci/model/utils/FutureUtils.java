@@ -0,0 +1,179 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.model.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.ow2.proactive.procci.model.exception.ServerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Helpers for the asynchronous calls
+ */
+public class FutureUtils {
+
+    private static final Logger logger = LoggerFactory.getLogger(FutureUtils.class);
+
+    /**
+     * Wait for the result of an asynchronous call
+     * <p>
+     * The exception which made the call fail is thrown as is if it is an unchecked exception, otherwise it is
+     * logged and replaced by a ServerException
+     *
+     * @param future is the asynchronous call
+     * @return the result of the call
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException ex) {
+            throw unwrap(ex);
+        }
+    }
+
+    /**
+     * Give the exception which made an asynchronous call fail
+     *
+     * @param throwable is the exception given by the future
+     * @return the original unchecked exception or a ServerException
+     */
+    public static RuntimeException unwrap(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) &&
+               cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RuntimeException && !(cause instanceof CancellationException)) {
+            return (RuntimeException) cause;
+        }
+        logger.error("Asynchronous call failed", cause);
+        return new ServerException();
+    }
+
+    /**
+     * Make one asynchronous call per key, with at most the given number of calls in progress at the same time
+     * <p>
+     * The duplicated keys are called once. No call is started anymore once one of them has failed.
+     *
+     * @param keys are the arguments of the calls
+     * @param parallelism is the maximum number of calls in progress
+     * @param call makes the asynchronous call for a key
+     * @return the future results by key, in the order of the keys, it fails with the first failure
+     */
+    public static <K, V> CompletableFuture<Map<K, V>> allOf(Collection<K> keys, int parallelism,
+            Function<K, CompletableFuture<V>> call) {
+        Batch<K, V> batch = new Batch<>(new ArrayList<>(new LinkedHashSet<>(keys)), call);
+        if (batch.keys.isEmpty()) {
+            batch.result.complete(new LinkedHashMap<>());
+        } else {
+            batch.start(Math.min(parallelism, batch.keys.size()));
+        }
+        return batch.result;
+    }
+
+    /**
+     * The calls of {@link #allOf(Collection, int, Function)}, a call is started each time one completes
+     * <p>
+     * The calls are started by a loop rather than from the completion of the previous ones, so the calls which
+     * complete at once do not pile up on the stack.
+     */
+    private static class Batch<K, V> {
+
+        private final List<K> keys;
+
+        private final Function<K, CompletableFuture<V>> call;
+
+        private final Map<K, V> values = new LinkedHashMap<>();
+
+        private final CompletableFuture<Map<K, V>> result = new CompletableFuture<>();
+
+        private int next;
+
+        //the calls to start, the thread which raises it from zero starts them
+        private final AtomicInteger pendingStarts = new AtomicInteger();
+
+        private int completed;
+
+        Batch(List<K> keys, Function<K, CompletableFuture<V>> call) {
+            this.keys = keys;
+            this.call = call;
+            keys.forEach(key -> values.put(key, null));
+        }
+
+        void start(int calls) {
+            if (pendingStarts.getAndAdd(calls) != 0) {
+                return;
+            }
+            do {
+                startNext();
+            } while (pendingStarts.decrementAndGet() > 0);
+        }
+
+        //only called by the thread which holds the pending starts
+        private void startNext() {
+            if (next >= keys.size() || result.isDone()) {
+                return;
+            }
+            K key = keys.get(next++);
+            CompletableFuture<V> future;
+            try {
+                future = call.apply(key);
+            } catch (RuntimeException ex) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(ex);
+            }
+            future.whenComplete((value, ex) -> {
+                if (ex != null) {
+                    result.completeExceptionally(unwrap(ex));
+                    return;
+                }
+                if (onValue(key, value)) {
+                    result.complete(values);
+                } else {
+                    start(1);
+                }
+            });
+        }
+
+        private synchronized boolean onValue(K key, V value) {
+            values.put(key, value);
+            return ++completed == keys.size();
+        }
+    }
+}
@@ -25,20 +25,28 @@
  */
 package org.ow2.proactive.procci.rest;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
-import org.ow2.proactive.procci.model.exception.ClientException;
-import org.ow2.proactive.procci.model.exception.ServerException;
 import org.ow2.proactive.procci.model.occi.infrastructure.Compute;
 import org.ow2.proactive.procci.model.occi.infrastructure.ComputeBuilder;
-import org.ow2.proactive.procci.model.occi.metamodel.Entity;
 import org.ow2.proactive.procci.model.occi.metamodel.Resource;
+import org.ow2.proactive.procci.model.occi.metamodel.ResourceBuilder;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.EntitiesRendering;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.EntityRendering;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.RenderingFields;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.ResourceRendering;
+import org.ow2.proactive.procci.model.utils.ConvertUtils;
+import org.ow2.proactive.procci.service.ConnectorConfiguration;
+import org.ow2.proactive.procci.service.InstanceFilter;
 import org.ow2.proactive.procci.service.occi.InstanceService;
 import org.ow2.proactive.procci.service.occi.MixinService;
+import org.ow2.proactive.procci.service.occi.RequestContext;
 import org.ow2.proactive.procci.service.transformer.TransformerManager;
 import org.ow2.proactive.procci.service.transformer.TransformerType;
 import org.slf4j.Logger;
@@ -47,11 +55,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import com.google.common.collect.AbstractIterator;
 
 
 /**
@@ -72,69 +86,173 @@ public class ComputeRest {
     @Autowired
     private TransformerManager transformerManager;
 
+    @Autowired
+    private RequestExecutor requestExecutor;
+
+    @Autowired
+    private ConnectorConfiguration configuration;
+
+    @InitBinder(Pages.FILTER)
+    public void initFilterBinder(WebDataBinder binder) {
+        Pages.bindFilters(binder);
+    }
+
     //-------------------Retrieve All Computes--------------------------------------------------------
 
+    /**
+     * Give the compute instances, all of them or a page of the ones matching the filters ordered by id when a
+     * limit, a cursor or a filter is given
+     * <p>
+     * A filter is a condition like {@code occi.compute.state=active}, {@code occi.compute.cores>=4},
+     * {@code occi.core.title=web*} or {@code mixin=title}, an instance matches when it meets all the filters.
+     * The fields like {@code fields=occi.compute.state} restrict the renderings, the mixins are only resolved when
+     * they are asked.
+     */
     @RequestMapping(method = RequestMethod.GET)
-    public ResponseEntity<EntitiesRendering> listAllComputes() {
+    public CompletableFuture<ResponseEntity<EntitiesRendering>> listAllComputes(
+            @RequestParam(value = Pages.LIMIT, required = false) Integer limit,
+            @RequestParam(value = Pages.CURSOR, required = false) String cursor,
+            @RequestParam(value = Pages.FILTER, required = false) String[] filters,
+            @RequestParam(value = Pages.FIELDS, required = false) List<String> fields) {
         logger.debug("Get all Compute instances");
-        try {
-
-            List<EntityRendering> entityRenderings = instanceService.getInstancesRendering(mixinService);
-            return new ResponseEntity<>(new EntitiesRendering.Builder().addEntities(entityRenderings).build(),
-                                        HttpStatus.OK);
-        } catch (ClientException e) {
-            logger.error(this.getClass().getName(), e);
-            return new ResponseEntity(e.getJsonError(), HttpStatus.BAD_REQUEST);
-        } catch (ServerException e) {
-            logger.error(this.getClass().getName(), e);
-            return new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+
+        return requestExecutor.compose(() -> {
+            if (limit == null && cursor == null && filters == null && fields == null) {
+                return instanceService.getInstancesRenderingAsync(mixinService)
+                                      .thenApply(entityRenderings -> new ResponseEntity<>(new EntitiesRendering.Builder().addEntities(entityRenderings)
+                                                                                                                        .build(),
+                                                                                          HttpStatus.OK));
+            }
+            int pageLimit = limit == null && cursor == null ? Integer.MAX_VALUE : Pages.limit(limit, configuration);
+            RenderingFields renderingFields = RenderingFields.parse(fields);
+            RequestContext context = RequestContext.current();
+            return instanceService.getInstancesBuildersAsync(Optional.empty(),
+                                                             InstanceFilter.parse(Pages.filters(filters)),
+                                                             Pages.afterId(cursor),
+                                                             pageLimit,
+                                                             mixinService)
+                                  .thenCompose(page -> context.run(() -> instanceService.getRenderingsAsync(page,
+                                                                                                            mixinService,
+                                                                                                            renderingFields)
+                                                                                        .thenApply(renderings -> Pages.response(PathConstant.COMPUTE_PATH,
+                                                                                                                                pageLimit,
+                                                                                                                                Pages.filters(filters),
+                                                                                                                                fields,
+                                                                                                                                page,
+                                                                                                                                renderings))));
+        }).exceptionally(ex -> ErrorResponses.of(ex, logger));
+    }
+
+    //-------------------Stream All Computes--------------------------------------------------------
+
+    /**
+     * Give all the compute instances as one json rendering per line, the instances are read from the index and
+     * rendered batch by batch, each batch being written as soon as its mixins are resolved
+     * <p>
+     * An error while reading the first batch gives an error response, an error once the first rendering is written
+     * can only stop the stream, so a stream not ending with a line break is incomplete.
+     */
+    @RequestMapping(method = RequestMethod.GET, params = "format=" + PathConstant.NDJSON_FORMAT)
+    public CompletableFuture<ResponseEntity<ResponseBodyEmitter>> streamAllComputes(
+            @RequestParam(value = Pages.FIELDS, required = false) List<String> fields) {
+        logger.debug("Stream all Compute instances");
+
+        return requestExecutor.compose(() -> {
+            RenderingFields renderingFields = RenderingFields.parse(fields);
+            int batchSize = configuration.getRestStreamBatchSize();
+            MediaType mediaType = MediaType.valueOf(PathConstant.APPLICATION_NDJSON_VALUE);
+            return instanceService.getInstancesBuildersAsync(Optional.empty(),
+                                                             InstanceFilter.empty(),
+                                                             Optional.empty(),
+                                                             batchSize,
+                                                             mixinService)
+                                  .thenApply(firstBatch -> ResponseEntity.ok()
+                                                                         .contentType(mediaType)
+                                                                         .body(requestExecutor.stream(new RenderedBatches(firstBatch,
+                                                                                                                          batchSize,
+                                                                                                                          renderingFields),
+                                                                                                      mediaType)));
+        }).exceptionally(ex -> ErrorResponses.of(ex, logger));
     }
 
     //-------------------Retrieve Single Compute--------------------------------------------------------
 
+    /**
+     * Give a compute instance, restricted to the fields asked if any
+     */
     @RequestMapping(value = "{id}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<ResourceRendering> getCompute(@PathVariable("id") String id) {
+    public CompletableFuture<ResponseEntity<ResourceRendering>> getCompute(@PathVariable("id") String id,
+            @RequestParam(value = Pages.FIELDS, required = false) List<String> fields) {
         logger.debug("Get Compute ");
-        try {
-
-            Optional<Entity> compute = instanceService.getEntity(id,
-                                                                 transformerManager.getTransformerProvider(TransformerType.COMPUTE));
-            if (!compute.isPresent()) {
-                return new ResponseEntity(HttpStatus.NOT_FOUND);
-            } else {
-                return new ResponseEntity<>(((Compute) compute.get()).getRendering(), HttpStatus.OK);
-            }
-        } catch (ClientException e) {
-            logger.error(this.getClass().getName(), e);
-            return new ResponseEntity(e.getJsonError(), HttpStatus.BAD_REQUEST);
-        } catch (ServerException e) {
-            logger.error(this.getClass().getName(), e);
-            return new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
-        }
 
+        return requestExecutor.compose(() -> instanceService.getRenderingAsync(id,
+                                                                              transformerManager.getTransformerProvider(TransformerType.COMPUTE),
+                                                                              mixinService,
+                                                                              RenderingFields.parse(fields)))
+                              .thenApply(compute -> compute.map(rendering -> new ResponseEntity<>(rendering, HttpStatus.OK))
+                                                           .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND)))
+                              .exceptionally(ex -> ErrorResponses.of(ex, logger));
     }
 
     //-------------------Create a Compute--------------------------------------------------------
 
     @RequestMapping(method = RequestMethod.POST)
-    public ResponseEntity<ResourceRendering> createCompute(@RequestBody ResourceRendering computeRendering)
-            throws InterruptedException, NumberFormatException {
+    public CompletableFuture<ResponseEntity<ResourceRendering>> createCompute(
+            @RequestBody ResourceRendering computeRendering) {
         logger.debug("Creating Compute " + computeRendering.toString());
-        try {
+
+        return requestExecutor.submit(() -> {
             computeRendering.checkAttributes(Compute.getAttributes(), "Compute", mixinService);
 
             Resource response = instanceService.create(new ComputeBuilder(mixinService, computeRendering).build(),
                                                        transformerManager.getTransformerProvider(TransformerType.COMPUTE),
                                                        mixinService);
             return new ResponseEntity<>(response.getRendering(), HttpStatus.CREATED);
-        } catch (ClientException e) {
-            logger.error(this.getClass().getName(), e);
-            return new ResponseEntity(e.getJsonError(), HttpStatus.BAD_REQUEST);
-        } catch (ServerException e) {
-            logger.error(this.getClass().getName(), e);
-            return new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+        }).exceptionally(ex -> ErrorResponses.of(ex, logger));
     }
 
+
+    /**
+     * The renderings of all the compute instances one batch at a time, the next batch is read from the index after
+     * the last instance of the previous one once it is rendered
+     */
+    private class RenderedBatches extends AbstractIterator<byte[]> {
+
+        private final int batchSize;
+
+        private final RenderingFields renderingFields;
+
+        private List<ResourceBuilder> batch;
+
+        RenderedBatches(List<ResourceBuilder> firstBatch, int batchSize, RenderingFields renderingFields) {
+            this.batch = firstBatch;
+            this.batchSize = batchSize;
+            this.renderingFields = renderingFields;
+        }
+
+        @Override
+        protected byte[] computeNext() {
+            if (batch.isEmpty()) {
+                return endOfData();
+            }
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            try {
+                for (EntityRendering entityRendering : instanceService.getRenderings(batch,
+                                                                                     mixinService,
+                                                                                     renderingFields)) {
+                    chunk.write(ConvertUtils.MAPPER.writeValueAsBytes(entityRendering));
+                    chunk.write('\n');
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            batch = batch.size() < batchSize ? Collections.emptyList()
+                                             : instanceService.getInstancesBuilders(Optional.empty(),
+                                                                                    InstanceFilter.empty(),
+                                                                                    batch.get(batchSize - 1).getUrl(),
+                                                                                    batchSize,
+                                                                                    mixinService);
+            return chunk.toByteArray();
+        }
+    }
 }
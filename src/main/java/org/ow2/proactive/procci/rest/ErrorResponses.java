@@ -0,0 +1,69 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.rest;
+
+import org.ow2.proactive.procci.model.exception.ClientException;
+import org.ow2.proactive.procci.model.exception.ServerException;
+import org.ow2.proactive.procci.model.exception.ServiceUnavailableException;
+import org.ow2.proactive.procci.model.utils.FutureUtils;
+import org.slf4j.Logger;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+
+/**
+ * The responses given when handling a REST request fails, a ClientException is a bad request, a
+ * ServiceUnavailableException is a service unavailable and the other ServerExceptions are internal server errors
+ */
+final class ErrorResponses {
+
+    private ErrorResponses() {
+    }
+
+    /**
+     * @param throwable is the failure of the request, possibly wrapped by the future of the work
+     * @param logger is the logger of the REST service
+     * @return the response matching the failure
+     * @throws RuntimeException the failure itself if it is neither a ClientException nor a ServerException
+     */
+    static <T> ResponseEntity<T> of(Throwable throwable, Logger logger) {
+        RuntimeException ex = FutureUtils.unwrap(throwable);
+        if (ex instanceof ClientException) {
+            logger.error(logger.getName(), ex);
+            return new ResponseEntity(((ClientException) ex).getJsonError(), HttpStatus.BAD_REQUEST);
+        }
+        if (ex instanceof ServiceUnavailableException) {
+            logger.warn(logger.getName() + " : " + ((ServiceUnavailableException) ex).getJsonError());
+            return new ResponseEntity(((ServiceUnavailableException) ex).getJsonError(),
+                                      HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        if (ex instanceof ServerException) {
+            logger.error(logger.getName(), ex);
+            return new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        throw ex;
+    }
+}
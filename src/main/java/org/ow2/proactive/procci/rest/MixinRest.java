@@ -25,8 +25,8 @@
  */
 package org.ow2.proactive.procci.rest;
 
-import org.ow2.proactive.procci.model.exception.ClientException;
-import org.ow2.proactive.procci.model.exception.ServerException;
+import java.util.concurrent.CompletableFuture;
+
 import org.ow2.proactive.procci.model.occi.metamodel.Mixin;
 import org.ow2.proactive.procci.model.occi.metamodel.MixinBuilder;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.MixinRendering;
@@ -60,75 +60,59 @@ public class MixinRest {
     @Autowired
     private MixinService mixinService;
 
+    @Autowired
+    private RequestExecutor requestExecutor;
+
     //-------------------Get a Mixin--------------------------------------------------------
 
     @RequestMapping(value = "{mixinTitle}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<MixinRendering> getMixin(@PathVariable("mixinTitle") String mixinTitle) {
+    public CompletableFuture<ResponseEntity<MixinRendering>> getMixin(@PathVariable("mixinTitle") String mixinTitle) {
         logger.debug("Getting Mixin " + mixinTitle);
 
-        try {
-            return new ResponseEntity(mixinService.getMixinByTitle(mixinTitle).getRendering(), HttpStatus.OK);
-        } catch (ClientException ex) {
-            return new ResponseEntity(ex.getJsonError(), HttpStatus.BAD_REQUEST);
-        } catch (ServerException exception) {
-            return new ResponseEntity(exception.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+        return requestExecutor.submit(() -> new ResponseEntity<>(mixinService.getMixinByTitle(mixinTitle)
+                                                                             .getRendering(),
+                                                                 HttpStatus.OK))
+                              .exceptionally(ex -> ErrorResponses.of(ex, logger));
     }
 
     //-------------------Create a Mixin--------------------------------------------------------
 
     @RequestMapping(method = RequestMethod.POST)
-    public ResponseEntity<MixinRendering> createMixin(@RequestBody MixinRendering mixinRendering) {
+    public CompletableFuture<ResponseEntity<MixinRendering>> createMixin(@RequestBody MixinRendering mixinRendering) {
         logger.debug("Creating Mixin " + mixinRendering.toString());
-        try {
+
+        return requestExecutor.submit(() -> {
             Mixin mixin = new MixinBuilder(mixinService, instanceService, mixinRendering).build();
             mixinService.addMixin(mixin);
-
-            return new ResponseEntity(mixin.getRendering(), HttpStatus.OK);
-        } catch (ServerException ex) {
-            logger.error(this.getClass().getName(), ex);
-            return new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
-        } catch (ClientException ex) {
-            return new ResponseEntity(ex.getJsonError(), HttpStatus.BAD_REQUEST);
-        }
+            return new ResponseEntity<>(mixin.getRendering(), HttpStatus.OK);
+        }).exceptionally(ex -> ErrorResponses.of(ex, logger));
     }
 
     //-------------------Update a Mixin--------------------------------------------------------
 
     @RequestMapping(value = "{mixinTitle}", method = RequestMethod.PUT)
-    public ResponseEntity<MixinRendering> updateMixin(@PathVariable("mixinTitle") String mixinTitle,
-            @RequestBody MixinRendering mixinRendering) {
+    public CompletableFuture<ResponseEntity<MixinRendering>> updateMixin(
+            @PathVariable("mixinTitle") String mixinTitle, @RequestBody MixinRendering mixinRendering) {
         logger.debug("Updating Mixin " + mixinTitle + " with " + mixinRendering.toString());
 
-        Mixin mixin = null;
-        try {
-            mixin = new MixinBuilder(mixinService, instanceService, mixinRendering).build();
+        return requestExecutor.submit(() -> {
+            Mixin mixin = new MixinBuilder(mixinService, instanceService, mixinRendering).build();
             mixinService.addMixin(mixin);
-        } catch (ServerException ex) {
-            logger.error(this.getClass().getName(), ex);
-            return new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
-        } catch (ClientException ex) {
-            return new ResponseEntity(ex.getJsonError(), HttpStatus.BAD_REQUEST);
-        }
-        return new ResponseEntity(mixin.getRendering(), HttpStatus.OK);
+            return new ResponseEntity<>(mixin.getRendering(), HttpStatus.OK);
+        }).exceptionally(ex -> ErrorResponses.of(ex, logger));
     }
 
     //-------------------Remove a Mixin--------------------------------------------------------
     @RequestMapping(value = "{mixinTitle}", method = RequestMethod.DELETE)
-    public ResponseEntity<MixinRendering> removeMixin(@PathVariable("mixinTitle") String mixinTitle) {
+    public CompletableFuture<ResponseEntity<MixinRendering>> removeMixin(
+            @PathVariable("mixinTitle") String mixinTitle) {
         logger.debug("Deleting Mixin " + mixinTitle);
 
-        Mixin mixin = null;
-        try {
-            mixin = mixinService.getMixinByTitle(mixinTitle);
+        return requestExecutor.submit(() -> {
+            Mixin mixin = mixinService.getMixinByTitle(mixinTitle);
             mixinService.removeMixin(mixinTitle);
-        } catch (ServerException ex) {
-            logger.error(this.getClass().getName(), ex);
-            return new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
-        } catch (ClientException ex) {
-            return new ResponseEntity(ex.getJsonError(), HttpStatus.BAD_REQUEST);
-        }
-        return new ResponseEntity(mixin.getRendering(), HttpStatus.OK);
+            return new ResponseEntity<>(mixin.getRendering(), HttpStatus.OK);
+        }).exceptionally(ex -> ErrorResponses.of(ex, logger));
     }
 
 }
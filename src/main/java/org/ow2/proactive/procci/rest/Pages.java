@@ -0,0 +1,149 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.rest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+import org.ow2.proactive.procci.model.exception.SyntaxException;
+import org.ow2.proactive.procci.model.occi.metamodel.ResourceBuilder;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.EntitiesRendering;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.EntityRendering;
+import org.ow2.proactive.procci.service.ConnectorConfiguration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.beans.propertyeditors.StringArrayPropertyEditor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.util.UriComponentsBuilder;
+
+
+/**
+ * The pages of the entity collections, ordered by entity id
+ * <p>
+ * A full page gives the link to the next one in a Link header. The cursor of the link is the id of the last entity
+ * of the page encoded in base64, the clients give it back as is. The next page of a full page can be empty.
+ * The filters and the fields of a page are given again to the next one. A filter is a parameter of its own, its
+ * value is taken as is even if it contains commas.
+ */
+final class Pages {
+
+    static final String LIMIT = "limit";
+
+    static final String CURSOR = "cursor";
+
+    static final String FILTER = "filter";
+
+    static final String FIELDS = "fields";
+
+    private Pages() {
+    }
+
+    /**
+     * Keep the commas of the filter values, the filters are only given separately by repeating the parameter
+     *
+     * @param binder is the binder of the filter parameter
+     */
+    static void bindFilters(WebDataBinder binder) {
+        binder.registerCustomEditor(String[].class, new StringArrayPropertyEditor(null));
+    }
+
+    /**
+     * @param filters are the filters bound from the request, or null
+     * @return the filters as a list, or null if there is none
+     */
+    static List<String> filters(String[] filters) {
+        return filters == null ? null : Arrays.asList(filters);
+    }
+
+    /**
+     * @param limit is the limit asked by the request, or null
+     * @param configuration gives the default and the maximum limits
+     * @return the number of entities to put in the page
+     * @throws SyntaxException if the limit is not positive
+     */
+    static int limit(Integer limit, ConnectorConfiguration configuration) {
+        if (limit == null) {
+            return configuration.getRestPageDefaultLimit();
+        }
+        if (limit <= 0) {
+            throw new SyntaxException(String.valueOf(limit), "a positive limit");
+        }
+        return Math.min(limit, configuration.getRestPageMaxLimit());
+    }
+
+    /**
+     * @param cursor is the cursor given by the request, or null for the first page
+     * @return the id of the last entity of the previous page, or empty for the first page
+     * @throws SyntaxException if the cursor was not given by a previous page
+     */
+    static Optional<String> afterId(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException ex) {
+            throw new SyntaxException(cursor, "a cursor given by a previous page");
+        }
+    }
+
+    /**
+     * @param path is the path of the collection
+     * @param limit is the number of entities asked for the page
+     * @param filters are the filters of the request, given again to the next page
+     * @param fields are the fields of the request, given again to the next page
+     * @param page are the builders of the entities of the page
+     * @param renderings are the renderings of these entities
+     * @return the response giving the page and the link to the next one if the page is full
+     */
+    static ResponseEntity<EntitiesRendering> response(String path, int limit, List<String> filters,
+            List<String> fields, List<ResourceBuilder> page, List<EntityRendering> renderings) {
+        HttpHeaders headers = new HttpHeaders();
+        Optional<String> lastId = page.size() == limit ? page.get(limit - 1).getUrl() : Optional.empty();
+        lastId.ifPresent(id -> {
+            UriComponentsBuilder next = UriComponentsBuilder.fromPath(path).queryParam(LIMIT, limit);
+            Optional.ofNullable(filters).ifPresent(values -> next.queryParam(FILTER, values.toArray()));
+            Optional.ofNullable(fields).ifPresent(values -> next.queryParam(FIELDS, String.join(",", values)));
+            next.queryParam(CURSOR, cursor(id));
+            headers.add(HttpHeaders.LINK, "<" + next.build().encode().toUriString() + ">; rel=\"next\"");
+        });
+        return new ResponseEntity<>(new EntitiesRendering.Builder().addEntities(renderings).build(),
+                                    headers,
+                                    HttpStatus.OK);
+    }
+
+    /**
+     * @param id is the id of the last entity of a page
+     * @return the cursor of the next page
+     */
+    static String cursor(String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+}
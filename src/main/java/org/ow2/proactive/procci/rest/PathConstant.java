@@ -35,4 +35,9 @@ public class PathConstant {
 
     public static final String QUERY_PATH = "/occi/";
 
+    //value of the format parameter asking for a collection streamed as one json object per line
+    public static final String NDJSON_FORMAT = "ndjson";
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
 }
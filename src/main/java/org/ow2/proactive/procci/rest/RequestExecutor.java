@@ -0,0 +1,227 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.rest;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.ow2.proactive.procci.model.exception.ServiceUnavailableException;
+import org.ow2.proactive.procci.service.ConnectorConfiguration;
+import org.ow2.proactive.procci.service.http.Deadline;
+import org.ow2.proactive.procci.service.occi.RequestContext;
+import org.ow2.proactive.procci.service.occi.RequestIdentityMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+/**
+ * Run the work of the REST requests, a servlet thread is given back to the container as soon as the request is
+ * handed over and the response is written once the work is done
+ * <p>
+ * The reads compose the calls to cloud automation and hold no thread while waiting for them. The work which still
+ * blocks, like the creations, runs on a bounded pool with the deadline and the identity map of the request. A
+ * request still waiting for a thread when its deadline passes is not handled anymore, and a request is refused with
+ * a service unavailable at once when too many are already waiting.
+ * <p>
+ * The streamed response bodies are written by their own pool, so that a long stream never takes a thread from the
+ * other requests. As many streams as there are stream threads can wait for one, the others are refused. A stream
+ * has no overall time limit, but its first chunk must be computed within the deadline of the request, waiting for a
+ * thread included. Each following chunk is computed within a deadline of its own.
+ */
+@Component
+@ManagedResource(objectName = "org.ow2.proactive.procci:name=RequestExecutor", description = "REST request handling")
+public class RequestExecutor {
+
+    private final Logger logger = LoggerFactory.getLogger(RequestExecutor.class);
+
+    @Autowired
+    private ConnectorConfiguration configuration;
+
+    //the servlet container never gives up on a stream, its first chunk has the deadline of the request and the
+    //following ones have their own deadlines
+    private static final long STREAM_NO_TIMEOUT = 0L;
+
+    private ThreadPoolExecutor executor;
+
+    private ThreadPoolExecutor streamExecutor;
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(configuration.getRestHandlerThreads(),
+                                          configuration.getRestHandlerThreads(),
+                                          0L,
+                                          TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<>(configuration.getRestHandlerQueueCapacity()),
+                                          new ThreadFactoryBuilder().setNameFormat("rest-handler-%d")
+                                                                    .setDaemon(true)
+                                                                    .build());
+        streamExecutor = new ThreadPoolExecutor(configuration.getRestStreamThreads(),
+                                                configuration.getRestStreamThreads(),
+                                                0L,
+                                                TimeUnit.MILLISECONDS,
+                                                new ArrayBlockingQueue<>(configuration.getRestStreamThreads()),
+                                                new ThreadFactoryBuilder().setNameFormat("rest-stream-%d")
+                                                                          .setDaemon(true)
+                                                                          .build());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (streamExecutor != null) {
+            streamExecutor.shutdownNow();
+        }
+    }
+
+    @ManagedAttribute(description = "Number of REST requests being handled")
+    public int getActiveRequests() {
+        return executor.getActiveCount();
+    }
+
+    @ManagedAttribute(description = "Number of REST requests waiting for a thread")
+    public int getQueuedRequests() {
+        return executor.getQueue().size();
+    }
+
+    @ManagedAttribute(description = "Number of response bodies being streamed")
+    public int getActiveStreams() {
+        return streamExecutor.getActiveCount();
+    }
+
+    @ManagedAttribute(description = "Number of response bodies waiting for a thread to be streamed")
+    public int getQueuedStreams() {
+        return streamExecutor.getQueue().size();
+    }
+
+    /**
+     * Start the non blocking work of the current request on the current thread
+     *
+     * @param work starts the work of the request, the continuations given to the futures of cloud automation must
+     * restore the context of the request themselves
+     * @return the future result of the work, it fails with the exception thrown when starting the work as well
+     */
+    public <T> CompletableFuture<T> compose(Supplier<CompletableFuture<T>> work) {
+        try {
+            return work.get();
+        } catch (RuntimeException ex) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+    }
+
+    /**
+     * Do the blocking work of the current request on another thread
+     *
+     * @param work is the work of the request, it runs with the deadline and the identity map of the request
+     * @return the future result of the work, it fails with the exception thrown by the work, with a
+     * DeadlineExceededException if the deadline passes before the work starts or with a ServiceUnavailableException
+     * if the request is refused
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        RequestContext context = RequestContext.current();
+        Supplier<T> task = () -> context.run(() -> {
+            context.getDeadline().ifPresent(deadline -> deadline.check("waiting for a REST handler thread"));
+            return work.get();
+        });
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException ex) {
+            logger.warn("too many REST requests waiting, the request is refused");
+            CompletableFuture<T> refused = new CompletableFuture<>();
+            refused.completeExceptionally(new ServiceUnavailableException("too many requests waiting"));
+            return refused;
+        }
+    }
+
+    /**
+     * Give a response body written chunk by chunk on the stream threads, each chunk is sent and flushed as soon as
+     * it is computed
+     * <p>
+     * The first chunk is computed within a deadline of the configured request duration starting now, so a stream
+     * which waits too long for a thread is given up before it starts. Each following chunk is computed within a new
+     * deadline of the same duration. Each chunk is computed with a new identity map. An error once the first chunk
+     * is sent can only stop the stream.
+     *
+     * @param chunks computes the chunks of the body when they are asked
+     * @param mediaType is the media type of the body
+     * @return the response body to give back to Spring MVC
+     * @throws ServiceUnavailableException if as many streams as there are stream threads are already waiting
+     */
+    public ResponseBodyEmitter stream(Iterator<byte[]> chunks, MediaType mediaType) {
+        Deadline firstChunkDeadline = Deadline.after(configuration.getRequestDeadlineMillis());
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(STREAM_NO_TIMEOUT);
+        try {
+            streamExecutor.execute(() -> {
+                try {
+                    firstChunkDeadline.check("waiting for a REST stream thread");
+                    Optional<byte[]> chunk = nextChunk(chunks, firstChunkDeadline);
+                    while (chunk.isPresent()) {
+                        emitter.send(chunk.get(), mediaType);
+                        chunk = nextChunk(chunks, Deadline.after(configuration.getRequestDeadlineMillis()));
+                    }
+                    emitter.complete();
+                } catch (IOException | RuntimeException ex) {
+                    logger.warn("the stream is stopped", ex);
+                    emitter.completeWithError(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            logger.warn("too many streams waiting, the request is refused");
+            throw new ServiceUnavailableException("too many streams waiting");
+        }
+        return emitter;
+    }
+
+    private Optional<byte[]> nextChunk(Iterator<byte[]> chunks, Deadline deadline) {
+        RequestIdentityMap.open();
+        try {
+            return Deadline.within(deadline, () -> chunks.hasNext() ? Optional.of(chunks.next()) : Optional.empty());
+        } finally {
+            RequestIdentityMap.close();
+        }
+    }
+}
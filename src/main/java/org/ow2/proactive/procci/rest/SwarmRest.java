@@ -25,14 +25,23 @@
  */
 package org.ow2.proactive.procci.rest;
 
-import org.ow2.proactive.procci.model.exception.ClientException;
-import org.ow2.proactive.procci.model.exception.ServerException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
 import org.ow2.proactive.procci.model.occi.metamodel.Resource;
+import org.ow2.proactive.procci.model.occi.metamodel.ResourceBuilder;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.EntitiesRendering;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.RenderingFields;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.ResourceRendering;
 import org.ow2.proactive.procci.model.occi.platform.bigdata.Swarm;
 import org.ow2.proactive.procci.model.occi.platform.bigdata.SwarmBuilder;
+import org.ow2.proactive.procci.model.occi.platform.bigdata.constants.BigDataIdentifiers;
+import org.ow2.proactive.procci.service.ConnectorConfiguration;
+import org.ow2.proactive.procci.service.InstanceFilter;
 import org.ow2.proactive.procci.service.occi.InstanceService;
 import org.ow2.proactive.procci.service.occi.MixinService;
+import org.ow2.proactive.procci.service.occi.RequestContext;
 import org.ow2.proactive.procci.service.transformer.TransformerManager;
 import org.ow2.proactive.procci.service.transformer.TransformerType;
 import org.slf4j.Logger;
@@ -41,10 +50,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 
@@ -66,43 +78,88 @@ public class SwarmRest {
     @Autowired
     private TransformerManager transformerManager;
 
+    @Autowired
+    private RequestExecutor requestExecutor;
+
+    @Autowired
+    private ConnectorConfiguration configuration;
+
+    @InitBinder(Pages.FILTER)
+    public void initFilterBinder(WebDataBinder binder) {
+        Pages.bindFilters(binder);
+    }
+
+    //-------------------Retrieve All Swarms--------------------------------------------------------
+
+    /**
+     * Give the swarm instances matching the filters ordered by id, all of them or a page of them when a limit or a
+     * cursor is given
+     * <p>
+     * The filters and the fields are the ones of the compute collection
+     */
+    @RequestMapping(method = RequestMethod.GET)
+    public CompletableFuture<ResponseEntity<EntitiesRendering>> listAllSwarms(
+            @RequestParam(value = Pages.LIMIT, required = false) Integer limit,
+            @RequestParam(value = Pages.CURSOR, required = false) String cursor,
+            @RequestParam(value = Pages.FILTER, required = false) String[] filters,
+            @RequestParam(value = Pages.FIELDS, required = false) List<String> fields) {
+        logger.debug("Get all Swarm instances");
+
+        return requestExecutor.compose(() -> {
+            int pageLimit = limit == null && cursor == null ? Integer.MAX_VALUE : Pages.limit(limit, configuration);
+            RenderingFields renderingFields = RenderingFields.parse(fields);
+            RequestContext context = RequestContext.current();
+            return instanceService.getInstancesBuildersAsync(Optional.of(BigDataIdentifiers.SWARM_MODEL),
+                                                             InstanceFilter.parse(Pages.filters(filters)),
+                                                             Pages.afterId(cursor),
+                                                             pageLimit,
+                                                             mixinService)
+                                  .thenCompose(page -> context.run(() -> instanceService.getRenderingsAsync(page,
+                                                                                                            mixinService,
+                                                                                                            renderingFields)
+                                                                                        .thenApply(renderings -> Pages.response(PathConstant.SWARM_PATH,
+                                                                                                                                pageLimit,
+                                                                                                                                Pages.filters(filters),
+                                                                                                                                fields,
+                                                                                                                                page,
+                                                                                                                                renderings))));
+        }).exceptionally(ex -> ErrorResponses.of(ex, logger));
+    }
+
     //-------------------Retrieve a Swarm instance--------------------------------------------------------
 
+    /**
+     * Give a swarm instance, restricted to the fields asked if any
+     */
     @RequestMapping(value = "{id}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<ResourceRendering> getSwarm(@PathVariable("id") String id) {
+    public CompletableFuture<ResponseEntity<ResourceRendering>> getSwarm(@PathVariable("id") String id,
+            @RequestParam(value = Pages.FIELDS, required = false) List<String> fields) {
         logger.debug("Get Swarm " + id);
-        try {
-            return instanceService.getEntity(id, transformerManager.getTransformerProvider(TransformerType.SWARM))
-                                  .map(swar -> new ResponseEntity<>(((Swarm) swar).getRendering(), HttpStatus.OK))
-                                  .orElse(new ResponseEntity(HttpStatus.NOT_FOUND));
-        } catch (ClientException e) {
-            logger.error(this.getClass().getName(), e);
-            return new ResponseEntity(e.getJsonError(), HttpStatus.BAD_REQUEST);
-        } catch (ServerException e) {
-            logger.error(this.getClass().getName(), e);
-            return new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+
+        return requestExecutor.compose(() -> instanceService.getRenderingAsync(id,
+                                                                              transformerManager.getTransformerProvider(TransformerType.SWARM),
+                                                                              mixinService,
+                                                                              RenderingFields.parse(fields)))
+                              .thenApply(swarm -> swarm.map(rendering -> new ResponseEntity<>(rendering, HttpStatus.OK))
+                                                       .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND)))
+                              .exceptionally(ex -> ErrorResponses.of(ex, logger));
     }
 
     //-------------------Deploy Swarm--------------------------------------------------------
 
     @RequestMapping(method = RequestMethod.POST)
-    public ResponseEntity<ResourceRendering> createSwarm(@RequestBody ResourceRendering swarmRendering) {
+    public CompletableFuture<ResponseEntity<ResourceRendering>> createSwarm(
+            @RequestBody ResourceRendering swarmRendering) {
 
         logger.debug("Deploy a swarm " + swarmRendering.toString());
-        try {
+
+        return requestExecutor.submit(() -> {
             swarmRendering.checkAttributes(Swarm.getAttributes(), "Compute", mixinService);
             SwarmBuilder swarmBuilder = new SwarmBuilder(mixinService, swarmRendering);
             Resource response = instanceService.create(swarmBuilder.build(),
                                                        transformerManager.getTransformerProvider(TransformerType.SWARM),
                                                        mixinService);
             return new ResponseEntity<>(response.getRendering(), HttpStatus.CREATED);
-        } catch (ClientException e) {
-            logger.error(this.getClass().getName(), e);
-            return new ResponseEntity(e.getJsonError(), HttpStatus.BAD_REQUEST);
-        } catch (ServerException e) {
-            logger.error(this.getClass().getName(), e);
-            return new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+        }).exceptionally(ex -> ErrorResponses.of(ex, logger));
     }
 }
@@ -25,15 +25,28 @@
  */
 package org.ow2.proactive.procci.service;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.PostConstruct;
 
 import org.json.simple.JSONObject;
 import org.ow2.proactive.procci.model.InstanceModel;
 import org.ow2.proactive.procci.model.cloud.automation.Model;
+import org.ow2.proactive.procci.model.cloud.automation.ModelDecoder;
+import org.ow2.proactive.procci.service.http.Deadline;
+import org.ow2.proactive.procci.service.http.RequestCoalescer;
+import org.ow2.proactive.procci.service.occi.RequestContext;
 import org.ow2.proactive.procci.service.transformer.TransformerProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
 
@@ -43,26 +56,78 @@ import org.springframework.stereotype.Service;
 
 /**
  * Manage the connection and the service with Cloud Automation Microservices
+ * <p>
+ * Each operation has a non-blocking version returning a future, the blocking one waits for it.
+ * The lookups by variable are answered by a local instance index, its statistics are exposed through JMX.
  */
 @Service
+@ManagedResource(objectName = "org.ow2.proactive.procci:name=CloudAutomationInstanceClient", description = "serviceInstances client")
 public class CloudAutomationInstanceClient {
 
-    static final String PCA_INSTANCES_ENDPOINT = "cloud-automation-service.instances.endpoint";
-
     @Autowired
     private RequestUtils requestUtils;
 
+    @Autowired
+    private ConnectorConfiguration configuration;
+
+    private final RequestCoalescer<String, List<Model>> modelsCoalescer = new RequestCoalescer<>();
+
+    private InstanceIndex instanceIndex;
+
+    @PostConstruct
+    public void init() {
+        instanceIndex = new InstanceIndex(this::downloadModels,
+                                          configuration.getInstanceIndexVariables(),
+                                          configuration.getInstanceIndexRefreshAfterMillis(),
+                                          configuration.getInstanceIndexMaxStalenessMillis());
+    }
+
     /**
      *  Give the list of models saved in cloud-automation
      * @return a list of Model
      */
     public List<Model> getModels() {
-        JSONObject jsonModels = requestUtils.getRequest(requestUtils.getProperty(PCA_INSTANCES_ENDPOINT));
+        return Deadline.join(getModelsAsync());
+    }
+
+    /**
+     *  Give the list of models saved in cloud-automation without waiting for the answer
+     *  The models are decoded while the response is read and replace the content of the instance index.
+     *  Concurrent callers share the same download and the same unmodifiable list.
+     * @return the future list of Model
+     */
+    public CompletableFuture<List<Model>> getModelsAsync() {
+        return instanceIndex.load();
+    }
 
-        return (List<Model>) jsonModels.values()
-                                       .stream()
-                                       .map(jsonModel -> new Model((JSONObject) jsonModel))
-                                       .collect(Collectors.toList());
+    /**
+     * Give a page of the models having a variable and meeting conditions, ordered by the value of the variable
+     *
+     * @param variableName  a key in variables, the page is ordered by its value
+     * @param serviceModel  restricts the page to a cloud automation model, or empty for all the models
+     * @param conditions    the conditions on the variables of the models
+     * @param values        restricts the page to the models whose variable has one of these values, or empty
+     * @param after         the value of the last model of the previous page, or empty for the first page
+     * @param limit         the maximum number of models in the page
+     * @return at most limit models meeting everything whose value follows after
+     */
+    public List<Model> queryModels(String variableName, Optional<String> serviceModel,
+            List<InstanceFilter.Condition> conditions, Optional<Set<String>> values, Optional<String> after,
+            int limit) {
+        return Deadline.join(queryModelsAsync(variableName, serviceModel, conditions, values, after, limit));
+    }
+
+    /**
+     * Give a page of the models having a variable and meeting conditions without waiting for the answer
+     * The page is read from the instance index, the conditions are evaluated with its secondary indexes
+     *
+     * @return the future models of the page
+     * @see #queryModels(String, Optional, List, Optional, Optional, int)
+     */
+    public CompletableFuture<List<Model>> queryModelsAsync(String variableName, Optional<String> serviceModel,
+            List<InstanceFilter.Condition> conditions, Optional<Set<String>> values, Optional<String> after,
+            int limit) {
+        return instanceIndex.query(variableName, serviceModel, conditions, values, after, limit);
     }
 
     /**
@@ -73,10 +138,43 @@ public class CloudAutomationInstanceClient {
      * @return the first occurance which match with variableName and variableValue
      */
     public Optional<Model> getInstanceByVariable(String variableName, String variableValue) {
+        return Deadline.join(getInstanceByVariableAsync(variableName, variableValue));
+    }
 
-        return getModels().stream()
-                          .filter(model -> variableValue.equals(model.getVariables().get(variableName)))
-                          .findFirst();
+    /**
+     * Get the cloud automation model which matches with the parameters without waiting for the answer
+     * The model is looked up in the instance index, which is reloaded only when it becomes stale
+     *
+     * @param variableName  a key in variables
+     * @param variableValue the value matching with the variableName key
+     * @return the future first occurance which match with variableName and variableValue
+     */
+    public CompletableFuture<Optional<Model>> getInstanceByVariableAsync(String variableName, String variableValue) {
+        return instanceIndex.find(variableName, variableValue);
+    }
+
+    /**
+     * Get the cloud automation models whose variable has one of the given values
+     *
+     * @param variableName   a key in variables
+     * @param variableValues the values to look for
+     * @return the first occurance of each value, the values without instance are not in the map
+     */
+    public Map<String, Model> getInstancesByVariable(String variableName, Collection<String> variableValues) {
+        return Deadline.join(getInstancesByVariableAsync(variableName, variableValues));
+    }
+
+    /**
+     * Get the cloud automation models whose variable has one of the given values without waiting for the answer
+     * All the values are looked up in the same snapshot of the instance index
+     *
+     * @param variableName   a key in variables
+     * @param variableValues the values to look for
+     * @return the future first occurance of each value, the values without instance are not in the map
+     */
+    public CompletableFuture<Map<String, Model>> getInstancesByVariableAsync(String variableName,
+            Collection<String> variableValues) {
+        return instanceIndex.findAll(variableName, variableValues);
     }
 
     /**
@@ -88,8 +186,22 @@ public class CloudAutomationInstanceClient {
      */
     public Optional<InstanceModel> getInstanceModel(String variableName, String variableValue,
             TransformerProvider transformerProvider) {
-        return getInstanceByVariable(variableName,
-                                     variableValue).map(model -> transformerProvider.toInstanceModel(model));
+        return Deadline.join(getInstanceModelAsync(variableName, variableValue, transformerProvider));
+    }
+
+    /**
+     *  Give the future instance model matching with the parameters without waiting for the answer
+     * @param variableName is a key in the variables for the cloud automation model
+     * @param variableValue is a value in the variables for the cloud automation model
+     * @param transformerProvider is a transformer for converting the cloud automation model into an instance model
+     * @return a future instance model if the parameters match otherwise a future empty optional
+     */
+    public CompletableFuture<Optional<InstanceModel>> getInstanceModelAsync(String variableName, String variableValue,
+            TransformerProvider transformerProvider) {
+        RequestContext context = RequestContext.current();
+        return getInstanceByVariableAsync(variableName,
+                                          variableValue).thenCompose(model -> context.run(() -> toInstanceModelAsync(model,
+                                                                                                                     transformerProvider)));
     }
 
     /**
@@ -101,10 +213,88 @@ public class CloudAutomationInstanceClient {
      */
     public InstanceModel postInstanceModel(InstanceModel instanceModel, String actionType,
             TransformerProvider transformerProvider) {
-        return transformerProvider.toInstanceModel(new Model(requestUtils.postRequest(transformerProvider.toCloudAutomationModel(instanceModel,
-                                                                                                                                 actionType)
-                                                                                                         .getJson(),
-                                                                                      requestUtils.getProperty(PCA_INSTANCES_ENDPOINT))));
+        return Deadline.join(postInstanceModelAsync(instanceModel, actionType, transformerProvider));
+    }
+
+    /**
+     * Create an instance in cloud automation from instanceModel without waiting for the answer
+     * @param instanceModel is the model that is used to create the instance
+     * @param actionType is the action to apply on the instance
+     * @param transformerProvider is the transformer to apply on the instance model
+     * @return the future instance model return by cloud automation
+     */
+    public CompletableFuture<InstanceModel> postInstanceModelAsync(InstanceModel instanceModel, String actionType,
+            TransformerProvider transformerProvider) {
+        JSONObject content = transformerProvider.toCloudAutomationModel(instanceModel, actionType).getJson();
+        RequestContext context = RequestContext.current();
+        return requestUtils.postRequestAsync(content, configuration.getInstancesEndpoint())
+                           .thenCompose(json -> context.run(() -> {
+                               Model created = new Model(json);
+                               instanceIndex.put(created);
+                               return transformerProvider.toInstanceModelAsync(created);
+                           }));
+    }
+
+    //the mixins of the instance are read without blocking the I/O thread which completed the lookup
+    private static CompletableFuture<Optional<InstanceModel>> toInstanceModelAsync(Optional<Model> model,
+            TransformerProvider transformerProvider) {
+        return model.map(found -> transformerProvider.toInstanceModelAsync(found).thenApply(Optional::of))
+                    .orElse(CompletableFuture.completedFuture(Optional.empty()));
+    }
+
+    private CompletableFuture<List<Model>> downloadModels() {
+        String url = configuration.getInstancesEndpoint();
+        return modelsCoalescer.execute(url,
+                                       () -> requestUtils.getRequestAsync(url, ModelDecoder::decodeModels)
+                                                         .thenApply(Collections::unmodifiableList));
+    }
+
+    /**
+     * Reload the instance index from cloud automation
+     */
+    @ManagedOperation(description = "Reload the instance index")
+    public void refreshIndex() {
+        Deadline.join(instanceIndex.refresh());
+    }
+
+    @ManagedAttribute(description = "Lookups answered by the instance index")
+    public long getIndexHits() {
+        return instanceIndex.getHits();
+    }
+
+    @ManagedAttribute(description = "Lookups without matching instance")
+    public long getIndexMisses() {
+        return instanceIndex.getMisses();
+    }
+
+    @ManagedAttribute(description = "Loads of the instance index")
+    public long getIndexRefreshes() {
+        return instanceIndex.getRefreshes();
+    }
+
+    @ManagedAttribute(description = "Failed background loads of the instance index")
+    public long getIndexFailedRefreshes() {
+        return instanceIndex.getFailedRefreshes();
+    }
+
+    @ManagedAttribute(description = "Downloads of the instances sent to cloud automation")
+    public long getModelsCalls() {
+        return modelsCoalescer.getCalls();
+    }
+
+    @ManagedAttribute(description = "Downloads of the instances saved by joining a download in flight")
+    public long getModelsCoalescedCalls() {
+        return modelsCoalescer.getCoalescedCalls();
+    }
+
+    @ManagedAttribute(description = "Number of indexed instances")
+    public int getIndexSize() {
+        return instanceIndex.getSize();
+    }
+
+    @ManagedAttribute(description = "Age of the instance index in milliseconds, -1 before the first load")
+    public long getIndexAgeMillis() {
+        return instanceIndex.getAgeMillis();
     }
 
 }
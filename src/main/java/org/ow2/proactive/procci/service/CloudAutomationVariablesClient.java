@@ -25,17 +25,37 @@
  */
 package org.ow2.proactive.procci.service;
 
-import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.apache.http.HttpResponse;
-import org.apache.http.HttpVersion;
-import org.apache.http.client.fluent.Request;
-import org.apache.http.client.fluent.Response;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.ContentType;
-import org.ow2.proactive.procci.model.exception.ServerException;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.ow2.proactive.procci.model.exception.CloudAutomationClientException;
+import org.ow2.proactive.procci.model.utils.FutureUtils;
+import org.ow2.proactive.procci.service.http.Deadline;
+import org.ow2.proactive.procci.service.http.HttpTransport;
+import org.ow2.proactive.procci.service.http.RequestCoalescer;
+import org.ow2.proactive.procci.service.http.Upstream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
 
@@ -45,89 +65,299 @@ import org.springframework.stereotype.Service;
 
 /**
  * Send CRUD service on cloud-automation-service/variables
+ * <p>
+ * Each operation has a non-blocking version returning a future, the blocking one waits for it.
+ * Concurrent reads of the same key share one request. The reads, updates and deletions are sent again after a
+ * transient failure, the creations are not since they are not idempotent. The batch operations send one request
+ * per key, in parallel on the pooled connections.
+ * <p>
+ * A missing variable is an expected answer : the find, upsert and batch operations report it in their result and
+ * the other operations throw a {@link CloudAutomationClientException} without logging an error.
+ * <p>
+ * A variable is changed from its current value with {@link #modify(String, Function)}, which reads it, applies the
+ * change and writes it back. Cloud automation has no conditional write, so the read and the write are not atomic :
+ * the callers serialise the changes of the same variable.
  */
 @Service
+@ManagedResource(objectName = "org.ow2.proactive.procci:name=CloudAutomationVariablesClient", description = "variables client")
 public class CloudAutomationVariablesClient {
 
     private static final Logger logger = LoggerFactory.getLogger(CloudAutomationVariablesClient.class);
 
-    private static final String VARIABLES_ENDPOINT = "cloud-automation-service.variables.endpoint";
-
     @Autowired
     private RequestUtils requestUtils;
 
-    public String get(String key) {
-        logger.debug("get " + key + " on " + requestUtils.getProperty(VARIABLES_ENDPOINT));
-        String url = getResourceUrl(key);
-        try {
-            Response response = Request.Get(url).version(HttpVersion.HTTP_1_1).execute();
+    @Autowired
+    private HttpTransport httpTransport;
 
-            return requestUtils.readHttpResponse(response.returnResponse(), url, "GET");
+    @Autowired
+    private ConnectorConfiguration configuration;
 
-        } catch (IOException ex) {
-            logger.error("Unable to get on " + getResourceUrl(key) + ", exception : " + ex.getMessage());
-            throw new ServerException();
-        }
+    private final RequestCoalescer<String, Optional<String>> getCoalescer = new RequestCoalescer<>();
+
+    public String get(String key) {
+        return Deadline.join(getAsync(key));
+    }
+
+    /**
+     * Read a variable
+     *
+     * @param key is the variable to read
+     * @return the value of the variable or an empty optional if it does not exist
+     */
+    public Optional<String> find(String key) {
+        return Deadline.join(findAsync(key));
     }
 
     public void post(String key, String value) {
+        Deadline.join(postAsync(key, value));
+    }
 
-        logger.debug("post " + key + " on " + requestUtils.getProperty(VARIABLES_ENDPOINT));
-        String url = getQueryUrl(key);
-        try {
-            HttpResponse response = Request.Post(url)
+    public void update(String key, String value) {
+        Deadline.join(updateAsync(key, value));
+    }
 
-                                           .useExpectContinue()
-                                           .version(HttpVersion.HTTP_1_1)
-                                           .bodyString(value, ContentType.APPLICATION_JSON)
-                                           .execute()
-                                           .returnResponse();
+    public void delete(String key) {
+        Deadline.join(deleteAsync(key));
+    }
 
-            requestUtils.readHttpResponse(response, url, "POST " + value);
+    /**
+     * Create a variable or replace its value, the variable is updated and it is only created when the update
+     * finds nothing, so an existing variable takes one request
+     *
+     * @param key is the variable to write
+     * @param value is the new value
+     */
+    public void upsert(String key, String value) {
+        Deadline.join(upsertAsync(key, value));
+    }
 
-        } catch (IOException ex) {
-            logger.error("Unable to post on " + getQueryUrl(key) + ", exception : " + ex.getMessage());
-            throw new ServerException();
-        }
+    /**
+     * Change a variable from its current value
+     *
+     * @param key is the variable to change
+     * @param modification gives the new value from the current one, an empty optional leaves the variable as is
+     * @return the value of the variable after the change, empty if it has been deleted in between
+     * @see #modifyAsync(String, Function)
+     */
+    public Optional<String> modify(String key, Function<Optional<String>, Optional<String>> modification) {
+        return Deadline.join(modifyAsync(key, modification));
+    }
 
+    public CompletableFuture<String> getAsync(String key) {
+        return findAsync(key).thenApply(value -> value.orElseThrow(() -> notFound(key)));
     }
 
-    public void update(String key, String value) {
-        logger.debug("update " + key + " on " + requestUtils.getProperty(VARIABLES_ENDPOINT));
+    public CompletableFuture<Optional<String>> findAsync(String key) {
+        logger.debug("get " + key + " on " + configuration.getVariablesEndpoint());
         String url = getResourceUrl(key);
-        try {
-            HttpResponse response = Request.Put(url)
+        return getCoalescer.execute(url,
+                                    () -> httpTransport.executeWithRetry(Upstream.VARIABLES, () -> new HttpGet(url))
+                                                       .thenApply(response -> readIfFound(response, url, "GET")));
+    }
+
+    public CompletableFuture<Void> postAsync(String key, String value) {
+        logger.debug("post " + key + " on " + configuration.getVariablesEndpoint());
+        String url = getQueryUrl(key);
+        HttpPost postRequest = new HttpPost(url);
+        postRequest.setEntity(new StringEntity(value, ContentType.APPLICATION_JSON));
+        return httpTransport.execute(Upstream.VARIABLES, postRequest)
+                            .thenAccept(response -> requestUtils.readHttpResponse(response, url, "POST " + value));
+    }
 
-                                           .useExpectContinue()
-                                           .version(HttpVersion.HTTP_1_1)
-                                           .bodyString(value, ContentType.APPLICATION_JSON)
-                                           .execute()
-                                           .returnResponse();
+    public CompletableFuture<Void> updateAsync(String key, String value) {
+        return replaceAsync(key, value).thenAccept(found -> requireFound(key, found));
+    }
 
-            requestUtils.readHttpResponse(response, url, "PUT " + value);
+    public CompletableFuture<Void> upsertAsync(String key, String value) {
+        return replaceAsync(key, value).thenCompose(found -> found ? CompletableFuture.completedFuture(null)
+                                                                   : postAsync(key, value));
+    }
 
-        } catch (IOException ex) {
-            logger.error("Unable to put on " + getResourceUrl(key) + " ,exception : " + ex.getMessage());
-            throw new ServerException();
-        }
+    public CompletableFuture<Void> deleteAsync(String key) {
+        return removeAsync(key).thenAccept(found -> requireFound(key, found));
     }
 
-    public void delete(String key) {
-        logger.debug("delete " + key + " on " + requestUtils.getProperty(VARIABLES_ENDPOINT));
+    /**
+     * Read a variable, apply the change and write the new value
+     * <p>
+     * The read and the write are two requests and cloud automation can not make the write depend on the value
+     * read, so a change made in between by another caller is overwritten. The caller must not change the same
+     * variable again before the future completes.
+     */
+    public CompletableFuture<Optional<String>> modifyAsync(String key,
+            Function<Optional<String>, Optional<String>> modification) {
         String url = getResourceUrl(key);
-        try {
-            HttpResponse response = Request.Delete(url).version(HttpVersion.HTTP_1_1).execute().returnResponse();
+        //the read is not shared with a concurrent one since it has to be sent after the previous writes
+        return httpTransport.executeWithRetry(Upstream.VARIABLES, () -> new HttpGet(url))
+                            .thenApply(response -> readIfFound(response, url, "GET"))
+                            .thenCompose(currentValue -> {
+                                Optional<String> newValue = modification.apply(currentValue);
+                                if (!newValue.isPresent() || newValue.equals(currentValue)) {
+                                    return CompletableFuture.completedFuture(currentValue);
+                                }
+                                if (!currentValue.isPresent()) {
+                                    return postAsync(key, newValue.get()).thenApply(created -> newValue);
+                                }
+                                return replaceAsync(key, newValue.get()).thenApply(found -> found ? newValue
+                                                                                                  : Optional.<String> empty());
+                            });
+    }
 
-            requestUtils.readHttpResponse(response, url, "DELETE");
+    /**
+     * Replace the value of a variable
+     *
+     * @return the future result, false if the variable does not exist
+     */
+    private CompletableFuture<Boolean> replaceAsync(String key, String value) {
+        logger.debug("update " + key + " on " + configuration.getVariablesEndpoint());
+        String url = getResourceUrl(key);
+        Supplier<HttpUriRequest> putRequest = () -> {
+            HttpPut request = new HttpPut(url);
+            request.setEntity(new StringEntity(value, ContentType.APPLICATION_JSON));
+            return request;
+        };
+        return httpTransport.executeWithRetry(Upstream.VARIABLES, putRequest)
+                            .thenApply(response -> readIfFound(response, url, "PUT " + value).isPresent());
+    }
 
-        } catch (IOException ex) {
-            logger.error("Unable to delete on " + getQueryUrl(key) + ", exception : " + ex.getMessage());
-            throw new ServerException();
+    /**
+     * Delete a variable
+     *
+     * @return the future result, false if the variable does not exist
+     */
+    private CompletableFuture<Boolean> removeAsync(String key) {
+        logger.debug("delete " + key + " on " + configuration.getVariablesEndpoint());
+        String url = getResourceUrl(key);
+        return httpTransport.executeWithRetry(Upstream.VARIABLES, () -> new HttpDelete(url))
+                            .thenApply(response -> readIfFound(response, url, "DELETE").isPresent());
+    }
+
+    /**
+     * Read several variables, the requests are sent in parallel
+     *
+     * @param keys are the variables to read
+     * @return the value of each existing variable by key, the missing variables are not in the map
+     */
+    public Map<String, String> getAll(Collection<String> keys) {
+        return Deadline.join(getAllAsync(keys));
+    }
+
+    /**
+     * Update several variables, the requests are sent in parallel
+     *
+     * @param values are the new values by key
+     * @return the keys of the variables which do not exist and have not been updated
+     */
+    public Set<String> putAll(Map<String, String> values) {
+        return Deadline.join(putAllAsync(values));
+    }
+
+    /**
+     * Create or update several variables, the requests are sent in parallel
+     *
+     * @param values are the new values by key
+     */
+    public void upsertAll(Map<String, String> values) {
+        Deadline.join(upsertAllAsync(values));
+    }
+
+    /**
+     * Delete several variables, the requests are sent in parallel
+     *
+     * @param keys are the variables to delete
+     * @return the keys of the variables which did not exist
+     */
+    public Set<String> deleteAll(Collection<String> keys) {
+        return Deadline.join(deleteAllAsync(keys));
+    }
+
+    public CompletableFuture<Map<String, String>> getAllAsync(Collection<String> keys) {
+        return FutureUtils.allOf(keys,
+                                 configuration.getVariablesBatchParallelism(),
+                                 withCurrentDeadline(this::findAsync))
+                          .thenApply(results -> {
+                              Map<String, String> values = new LinkedHashMap<>();
+                              results.forEach((key, value) -> value.ifPresent(present -> values.put(key, present)));
+                              return values;
+                          });
+    }
+
+    public CompletableFuture<Set<String>> putAllAsync(Map<String, String> values) {
+        return FutureUtils.allOf(values.keySet(),
+                                 configuration.getVariablesBatchParallelism(),
+                                 withCurrentDeadline(key -> replaceAsync(key, values.get(key))))
+                          .thenApply(CloudAutomationVariablesClient::missingKeys);
+    }
+
+    public CompletableFuture<Void> upsertAllAsync(Map<String, String> values) {
+        return FutureUtils.allOf(values.keySet(),
+                                 configuration.getVariablesBatchParallelism(),
+                                 withCurrentDeadline(key -> upsertAsync(key, values.get(key))))
+                          .thenApply(results -> null);
+    }
+
+    public CompletableFuture<Set<String>> deleteAllAsync(Collection<String> keys) {
+        return FutureUtils.allOf(keys,
+                                 configuration.getVariablesBatchParallelism(),
+                                 withCurrentDeadline(this::removeAsync))
+                          .thenApply(CloudAutomationVariablesClient::missingKeys);
+    }
+
+    /**
+     * The calls of a batch started when others complete run on the I/O threads, they are given the deadline of
+     * the thread starting the batch
+     */
+    private static <T> Function<String, CompletableFuture<T>> withCurrentDeadline(
+            Function<String, CompletableFuture<T>> call) {
+        Deadline deadline = Deadline.current().orElse(null);
+        return key -> Deadline.within(deadline, () -> call.apply(key));
+    }
+
+    /**
+     * Read the response of a request on a variable, a missing variable gives an empty result and is not logged as
+     * an error
+     *
+     * @return the response body or an empty optional if the variable does not exist
+     */
+    private Optional<String> readIfFound(HttpResponse response, String url, String request) {
+        if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            return Optional.empty();
         }
+        return Optional.of(requestUtils.readHttpResponse(response, url, request));
+    }
+
+    private static void requireFound(String key, boolean found) {
+        if (!found) {
+            throw notFound(key);
+        }
+    }
+
+    private static CloudAutomationClientException notFound(String key) {
+        return new CloudAutomationClientException("variable " + key + " not found", HttpStatus.SC_NOT_FOUND);
+    }
+
+    private static Set<String> missingKeys(Map<String, Boolean> results) {
+        return results.entrySet()
+                      .stream()
+                      .filter(result -> !result.getValue())
+                      .map(Map.Entry::getKey)
+                      .collect(Collectors.toSet());
+    }
+
+    @ManagedAttribute(description = "Variable reads sent to cloud automation")
+    public long getReadCalls() {
+        return getCoalescer.getCalls();
+    }
+
+    @ManagedAttribute(description = "Variable reads saved by joining a read in flight for the same key")
+    public long getReadCoalescedCalls() {
+        return getCoalescer.getCoalescedCalls();
     }
 
     private String getVariablesUrl() {
-        return requestUtils.getProperty(VARIABLES_ENDPOINT);
+        return configuration.getVariablesEndpoint();
     }
 
     private String getResourceUrl(String key) {
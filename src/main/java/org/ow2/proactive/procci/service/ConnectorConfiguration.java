@@ -0,0 +1,713 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service;
+
+import static org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelAttributes.ID_NAME;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+import org.ow2.proactive.procci.service.http.Upstream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import lombok.Getter;
+
+
+/**
+ * Typed view of the connector configuration file config.properties
+ * <p>
+ * The file is read and validated once when the connector starts, the clients then only read the loaded values.
+ * The file can be read again with {@link #reload()}, which is exposed through JMX, the new values replace the old
+ * ones at once and only if they are valid.
+ * <p>
+ * The keys of {@link #STARTUP_KEYS} size the pools, the caches, the guards and the index built when the connector
+ * starts, a reload keeps their startup values and warns when the file changes them. The other keys, the endpoints,
+ * the credentials, the page and batch sizes, the parallelism of the variable batches, the bulkhead wait and the
+ * hedging, are read on each use and apply at once.
+ */
+@Component
+@ManagedResource(objectName = "org.ow2.proactive.procci:name=ConnectorConfiguration", description = "config.properties")
+public class ConnectorConfiguration {
+
+    static final String CONFIGURATION_FILE = "config.properties";
+
+    static final String INSTANCES_ENDPOINT = "cloud-automation-service.instances.endpoint";
+
+    static final String VARIABLES_ENDPOINT = "cloud-automation-service.variables.endpoint";
+
+    static final String SCHEDULER_LOGIN_ENDPOINT = "scheduler.login.endpoint";
+
+    static final String LOGIN_NAME = "login.name";
+
+    static final String LOGIN_PASSWORD = "login.password";
+
+    static final String SESSION_TTL = "scheduler.session.ttl-ms";
+
+    static final String SESSION_REFRESH_MARGIN = "scheduler.session.refresh-margin-ms";
+
+    static final String POOL_MAX_TOTAL = "http.pool.max-total";
+
+    static final String POOL_MAX_PER_ROUTE = "http.pool.max-per-route";
+
+    static final String POOL_KEEP_ALIVE = "http.pool.keep-alive-ms";
+
+    static final String POOL_IDLE_TIMEOUT = "http.pool.idle-timeout-ms";
+
+    static final String CONNECT_TIMEOUT = "http.connect-timeout-ms";
+
+    static final String SOCKET_TIMEOUT = "http.socket-timeout-ms";
+
+    static final String POOL_ACQUIRE_TIMEOUT = "http.pool.acquire-timeout-ms";
+
+    static final String REQUEST_DEADLINE = "rest.request.deadline-ms";
+
+    static final String REST_HANDLER_THREADS = "rest.handler.threads";
+
+    static final String REST_HANDLER_QUEUE_CAPACITY = "rest.handler.queue-capacity";
+
+    static final String REST_STREAM_THREADS = "rest.stream.threads";
+
+    static final String REST_STREAM_BATCH_SIZE = "rest.stream.batch-size";
+
+    static final String REST_PAGE_DEFAULT_LIMIT = "rest.page.default-limit";
+
+    static final String REST_PAGE_MAX_LIMIT = "rest.page.max-limit";
+
+    static final String MAX_CONCURRENT_CALLS = "upstream.%s.max-concurrent-calls";
+
+    static final String BULKHEAD_MAX_WAIT = "upstream.bulkhead.max-wait-ms";
+
+    static final String BREAKER_WINDOW_SIZE = "upstream.circuit-breaker.window-size";
+
+    static final String BREAKER_MINIMUM_CALLS = "upstream.circuit-breaker.minimum-calls";
+
+    static final String BREAKER_FAILURE_RATE = "upstream.circuit-breaker.failure-rate-threshold";
+
+    static final String BREAKER_SLOW_CALL_RATE = "upstream.circuit-breaker.slow-call-rate-threshold";
+
+    static final String BREAKER_SLOW_CALL_DURATION = "upstream.circuit-breaker.slow-call-duration-ms";
+
+    static final String BREAKER_OPEN_DURATION = "upstream.circuit-breaker.open-duration-ms";
+
+    static final String BREAKER_HALF_OPEN_CALLS = "upstream.circuit-breaker.half-open-calls";
+
+    static final String RETRY_MAX_ATTEMPTS = "upstream.retry.max-attempts";
+
+    static final String RETRY_BASE_DELAY = "upstream.retry.base-delay-ms";
+
+    static final String RETRY_MAX_DELAY = "upstream.retry.max-delay-ms";
+
+    static final String RETRY_BUDGET_PERCENT = "upstream.retry.budget-percent";
+
+    static final String RETRY_BUDGET_MAX_TOKENS = "upstream.retry.budget-max-tokens";
+
+    static final String HEDGING_ENABLED = "upstream.hedging.enabled";
+
+    static final String VARIABLES_BATCH_PARALLELISM = "variables.batch.parallelism";
+
+    static final String MIXIN_RESOLUTION_PARALLELISM = "mixin.resolution.parallelism";
+
+    static final String MIXIN_LOCK_STRIPES = "mixin.lock.stripes";
+
+    static final String MIXIN_CACHE_MAX_SIZE = "mixin.cache.max-size";
+
+    static final String MIXIN_CACHE_TTL = "mixin.cache.ttl-ms";
+
+    static final String INSTANCE_INDEX_VARIABLES = "instance.index.variables";
+
+    static final String INSTANCE_INDEX_REFRESH_AFTER = "instance.index.refresh-after-ms";
+
+    static final String INSTANCE_INDEX_MAX_STALENESS = "instance.index.max-staleness-ms";
+
+    /**
+     * The keys only read when the connector starts, a reload does not change them
+     */
+    static final List<String> STARTUP_KEYS = ImmutableList.<String> builder()
+                                                          .add(SESSION_TTL,
+                                                               SESSION_REFRESH_MARGIN,
+                                                               POOL_MAX_TOTAL,
+                                                               POOL_MAX_PER_ROUTE,
+                                                               POOL_KEEP_ALIVE,
+                                                               POOL_IDLE_TIMEOUT,
+                                                               CONNECT_TIMEOUT,
+                                                               SOCKET_TIMEOUT,
+                                                               POOL_ACQUIRE_TIMEOUT,
+                                                               REQUEST_DEADLINE,
+                                                               REST_HANDLER_THREADS,
+                                                               REST_HANDLER_QUEUE_CAPACITY,
+                                                               REST_STREAM_THREADS)
+                                                          .addAll(Arrays.stream(Upstream.values())
+                                                                        .map(Settings::upstreamKey)
+                                                                        .iterator())
+                                                          .add(BREAKER_WINDOW_SIZE,
+                                                               BREAKER_MINIMUM_CALLS,
+                                                               BREAKER_FAILURE_RATE,
+                                                               BREAKER_SLOW_CALL_RATE,
+                                                               BREAKER_SLOW_CALL_DURATION,
+                                                               BREAKER_OPEN_DURATION,
+                                                               BREAKER_HALF_OPEN_CALLS,
+                                                               RETRY_MAX_ATTEMPTS,
+                                                               RETRY_BASE_DELAY,
+                                                               RETRY_MAX_DELAY,
+                                                               RETRY_BUDGET_PERCENT,
+                                                               RETRY_BUDGET_MAX_TOKENS,
+                                                               MIXIN_RESOLUTION_PARALLELISM,
+                                                               MIXIN_LOCK_STRIPES,
+                                                               MIXIN_CACHE_MAX_SIZE,
+                                                               MIXIN_CACHE_TTL,
+                                                               INSTANCE_INDEX_VARIABLES,
+                                                               INSTANCE_INDEX_REFRESH_AFTER,
+                                                               INSTANCE_INDEX_MAX_STALENESS)
+                                                          .build();
+
+    private final Logger logger = LoggerFactory.getLogger(ConnectorConfiguration.class);
+
+    private volatile Settings settings;
+
+    //the values of the startup keys, kept by the reloads
+    private final Properties startupProperties = new Properties();
+
+    public ConnectorConfiguration() {
+        this(readConfigurationFile());
+    }
+
+    ConnectorConfiguration(Properties properties) {
+        this.settings = new Settings(properties);
+        STARTUP_KEYS.stream()
+                    .filter(properties::containsKey)
+                    .forEach(key -> startupProperties.setProperty(key, properties.getProperty(key)));
+    }
+
+    /**
+     * Read config.properties again and replace the current values if the new ones are valid
+     * <p>
+     * The keys of {@link #STARTUP_KEYS} keep their startup values
+     *
+     * @throws IllegalStateException if the file can not be read or contains an invalid value, the current values
+     *                               are kept in that case
+     */
+    @ManagedOperation(description = "Read config.properties again, the startup keys apply at the next restart")
+    public void reload() {
+        try {
+            reload(readConfigurationFile());
+        } catch (IllegalStateException ex) {
+            logger.error("The configuration has not been reloaded", ex);
+            throw ex;
+        }
+    }
+
+    void reload(Properties properties) {
+        for (String key : STARTUP_KEYS) {
+            String startupValue = startupProperties.getProperty(key);
+            if (!Objects.equals(startupValue, properties.getProperty(key))) {
+                logger.warn(key + " is only read when the connector starts, its new value applies at the next restart");
+            }
+            if (startupValue == null) {
+                properties.remove(key);
+            } else {
+                properties.setProperty(key, startupValue);
+            }
+        }
+        settings = new Settings(properties);
+        logger.info(CONFIGURATION_FILE + " has been reloaded");
+    }
+
+    public String getInstancesEndpoint() {
+        return settings.getInstancesEndpoint();
+    }
+
+    public String getVariablesEndpoint() {
+        return settings.getVariablesEndpoint();
+    }
+
+    public String getSchedulerLoginEndpoint() {
+        return settings.getSchedulerLoginEndpoint();
+    }
+
+    public String getLoginName() {
+        return settings.getLoginName();
+    }
+
+    public String getLoginPassword() {
+        return settings.getLoginPassword();
+    }
+
+    public long getSessionTtlMillis() {
+        return settings.getSessionTtlMillis();
+    }
+
+    public long getSessionRefreshMarginMillis() {
+        return settings.getSessionRefreshMarginMillis();
+    }
+
+    public int getPoolMaxTotal() {
+        return settings.getPoolMaxTotal();
+    }
+
+    public int getPoolMaxPerRoute() {
+        return settings.getPoolMaxPerRoute();
+    }
+
+    public long getPoolKeepAliveMillis() {
+        return settings.getPoolKeepAliveMillis();
+    }
+
+    public long getPoolIdleTimeoutMillis() {
+        return settings.getPoolIdleTimeoutMillis();
+    }
+
+    public long getConnectTimeoutMillis() {
+        return settings.getConnectTimeoutMillis();
+    }
+
+    public long getSocketTimeoutMillis() {
+        return settings.getSocketTimeoutMillis();
+    }
+
+    public long getPoolAcquireTimeoutMillis() {
+        return settings.getPoolAcquireTimeoutMillis();
+    }
+
+    public long getRequestDeadlineMillis() {
+        return settings.getRequestDeadlineMillis();
+    }
+
+    public int getRestHandlerThreads() {
+        return settings.getRestHandlerThreads();
+    }
+
+    public int getRestHandlerQueueCapacity() {
+        return settings.getRestHandlerQueueCapacity();
+    }
+
+    /**
+     * @return how many collections are streamed at the same time, the other streams wait for a thread
+     */
+    public int getRestStreamThreads() {
+        return settings.getRestStreamThreads();
+    }
+
+    /**
+     * @return how many entities are rendered together when a collection is streamed
+     */
+    public int getRestStreamBatchSize() {
+        return settings.getRestStreamBatchSize();
+    }
+
+    /**
+     * @return how many entities are in a page of a collection when the request gives a cursor but no limit
+     */
+    public int getRestPageDefaultLimit() {
+        return settings.getRestPageDefaultLimit();
+    }
+
+    /**
+     * @return the most entities a page of a collection can contain
+     */
+    public int getRestPageMaxLimit() {
+        return settings.getRestPageMaxLimit();
+    }
+
+    /**
+     * @param upstream is a service called by the connector
+     * @return how many calls to the service can be in progress at the same time
+     */
+    public int getMaxConcurrentCalls(Upstream upstream) {
+        return settings.getMaxConcurrentCalls().get(upstream);
+    }
+
+    /**
+     * @return how long a call can wait for another one to finish when the upstream service has too many calls in
+     *         progress
+     */
+    public long getBulkheadMaxWaitMillis() {
+        return settings.getBulkheadMaxWaitMillis();
+    }
+
+    public int getCircuitBreakerWindowSize() {
+        return settings.getCircuitBreakerWindowSize();
+    }
+
+    public int getCircuitBreakerMinimumCalls() {
+        return settings.getCircuitBreakerMinimumCalls();
+    }
+
+    public int getCircuitBreakerFailureRateThreshold() {
+        return settings.getCircuitBreakerFailureRateThreshold();
+    }
+
+    public int getCircuitBreakerSlowCallRateThreshold() {
+        return settings.getCircuitBreakerSlowCallRateThreshold();
+    }
+
+    public long getCircuitBreakerSlowCallDurationMillis() {
+        return settings.getCircuitBreakerSlowCallDurationMillis();
+    }
+
+    public long getCircuitBreakerOpenDurationMillis() {
+        return settings.getCircuitBreakerOpenDurationMillis();
+    }
+
+    public int getCircuitBreakerHalfOpenCalls() {
+        return settings.getCircuitBreakerHalfOpenCalls();
+    }
+
+    public int getRetryMaxAttempts() {
+        return settings.getRetryMaxAttempts();
+    }
+
+    public long getRetryBaseDelayMillis() {
+        return settings.getRetryBaseDelayMillis();
+    }
+
+    public long getRetryMaxDelayMillis() {
+        return settings.getRetryMaxDelayMillis();
+    }
+
+    public int getRetryBudgetPercent() {
+        return settings.getRetryBudgetPercent();
+    }
+
+    public int getRetryBudgetMaxTokens() {
+        return settings.getRetryBudgetMaxTokens();
+    }
+
+    public boolean isHedgingEnabled() {
+        return settings.isHedgingEnabled();
+    }
+
+    public int getVariablesBatchParallelism() {
+        return settings.getVariablesBatchParallelism();
+    }
+
+    public int getMixinResolutionParallelism() {
+        return settings.getMixinResolutionParallelism();
+    }
+
+    /**
+     * @return how many locks serialise the changes of the mixin and entity references
+     */
+    public int getMixinLockStripes() {
+        return settings.getMixinLockStripes();
+    }
+
+    public long getMixinCacheMaxSize() {
+        return settings.getMixinCacheMaxSize();
+    }
+
+    /**
+     * @return how long a cached mixin definition is used, zero if it is used until it is changed
+     */
+    public long getMixinCacheTtlMillis() {
+        return settings.getMixinCacheTtlMillis();
+    }
+
+    public List<String> getInstanceIndexVariables() {
+        return settings.getInstanceIndexVariables();
+    }
+
+    public long getInstanceIndexRefreshAfterMillis() {
+        return settings.getInstanceIndexRefreshAfterMillis();
+    }
+
+    public long getInstanceIndexMaxStalenessMillis() {
+        return settings.getInstanceIndexMaxStalenessMillis();
+    }
+
+    private static Properties readConfigurationFile() {
+        Properties properties = new Properties();
+        try (InputStream input = ConnectorConfiguration.class.getClassLoader().getResourceAsStream(CONFIGURATION_FILE)) {
+            if (input == null) {
+                throw new IllegalStateException(CONFIGURATION_FILE + " is not in the classpath");
+            }
+            properties.load(input);
+            return properties;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unable to read " + CONFIGURATION_FILE, ex);
+        }
+    }
+
+    /**
+     * Validated and immutable values of the configuration file
+     */
+    @Getter
+    private static class Settings {
+
+        private final String instancesEndpoint;
+
+        private final String variablesEndpoint;
+
+        private final String schedulerLoginEndpoint;
+
+        private final String loginName;
+
+        private final String loginPassword;
+
+        private final long sessionTtlMillis;
+
+        private final long sessionRefreshMarginMillis;
+
+        private final int poolMaxTotal;
+
+        private final int poolMaxPerRoute;
+
+        private final long poolKeepAliveMillis;
+
+        private final long poolIdleTimeoutMillis;
+
+        private final long connectTimeoutMillis;
+
+        private final long socketTimeoutMillis;
+
+        private final long poolAcquireTimeoutMillis;
+
+        private final long requestDeadlineMillis;
+
+        private final int restHandlerThreads;
+
+        private final int restHandlerQueueCapacity;
+
+        private final int restStreamThreads;
+
+        private final int restStreamBatchSize;
+
+        private final int restPageDefaultLimit;
+
+        private final int restPageMaxLimit;
+
+        private final Map<Upstream, Integer> maxConcurrentCalls;
+
+        private final long bulkheadMaxWaitMillis;
+
+        private final int circuitBreakerWindowSize;
+
+        private final int circuitBreakerMinimumCalls;
+
+        private final int circuitBreakerFailureRateThreshold;
+
+        private final int circuitBreakerSlowCallRateThreshold;
+
+        private final long circuitBreakerSlowCallDurationMillis;
+
+        private final long circuitBreakerOpenDurationMillis;
+
+        private final int circuitBreakerHalfOpenCalls;
+
+        private final int retryMaxAttempts;
+
+        private final long retryBaseDelayMillis;
+
+        private final long retryMaxDelayMillis;
+
+        private final int retryBudgetPercent;
+
+        private final int retryBudgetMaxTokens;
+
+        private final boolean hedgingEnabled;
+
+        private final int variablesBatchParallelism;
+
+        private final int mixinResolutionParallelism;
+
+        private final int mixinLockStripes;
+
+        private final long mixinCacheMaxSize;
+
+        private final long mixinCacheTtlMillis;
+
+        private final List<String> instanceIndexVariables;
+
+        private final long instanceIndexRefreshAfterMillis;
+
+        private final long instanceIndexMaxStalenessMillis;
+
+        private Settings(Properties properties) {
+            this.instancesEndpoint = readUrl(properties, INSTANCES_ENDPOINT);
+            this.variablesEndpoint = readUrl(properties, VARIABLES_ENDPOINT);
+            this.schedulerLoginEndpoint = readUrl(properties, SCHEDULER_LOGIN_ENDPOINT);
+            this.loginName = readString(properties, LOGIN_NAME);
+            this.loginPassword = readString(properties, LOGIN_PASSWORD);
+            this.sessionTtlMillis = readPositiveNumber(properties, SESSION_TTL, 1800000);
+            this.sessionRefreshMarginMillis = readPositiveNumber(properties, SESSION_REFRESH_MARGIN, 60000);
+            this.poolMaxTotal = (int) readPositiveNumber(properties, POOL_MAX_TOTAL, 100);
+            this.poolMaxPerRoute = (int) readPositiveNumber(properties, POOL_MAX_PER_ROUTE, 50);
+            this.poolKeepAliveMillis = readPositiveNumber(properties, POOL_KEEP_ALIVE, 30000);
+            this.poolIdleTimeoutMillis = readPositiveNumber(properties, POOL_IDLE_TIMEOUT, 60000);
+            this.connectTimeoutMillis = readPositiveNumber(properties, CONNECT_TIMEOUT, 5000);
+            this.socketTimeoutMillis = readPositiveNumber(properties, SOCKET_TIMEOUT, 30000);
+            this.poolAcquireTimeoutMillis = readPositiveNumber(properties, POOL_ACQUIRE_TIMEOUT, 5000);
+            this.requestDeadlineMillis = readPositiveNumber(properties, REQUEST_DEADLINE, 60000);
+            this.restHandlerThreads = (int) readPositiveNumber(properties, REST_HANDLER_THREADS, 32);
+            this.restHandlerQueueCapacity = (int) readPositiveNumber(properties, REST_HANDLER_QUEUE_CAPACITY, 200);
+            this.restStreamThreads = (int) readPositiveNumber(properties, REST_STREAM_THREADS, 8);
+            this.restStreamBatchSize = (int) readPositiveNumber(properties, REST_STREAM_BATCH_SIZE, 100);
+            this.restPageDefaultLimit = (int) readPositiveNumber(properties, REST_PAGE_DEFAULT_LIMIT, 100);
+            this.restPageMaxLimit = (int) readPositiveNumber(properties, REST_PAGE_MAX_LIMIT, 1000);
+            this.maxConcurrentCalls = new EnumMap<>(Upstream.class);
+            maxConcurrentCalls.put(Upstream.INSTANCES, readMaxConcurrentCalls(properties, Upstream.INSTANCES, 24));
+            maxConcurrentCalls.put(Upstream.VARIABLES, readMaxConcurrentCalls(properties, Upstream.VARIABLES, 24));
+            maxConcurrentCalls.put(Upstream.SCHEDULER_LOGIN,
+                                   readMaxConcurrentCalls(properties, Upstream.SCHEDULER_LOGIN, 2));
+            this.bulkheadMaxWaitMillis = readPositiveNumber(properties, BULKHEAD_MAX_WAIT, 500);
+            this.circuitBreakerWindowSize = (int) readPositiveNumber(properties, BREAKER_WINDOW_SIZE, 20);
+            this.circuitBreakerMinimumCalls = (int) readPositiveNumber(properties, BREAKER_MINIMUM_CALLS, 10);
+            this.circuitBreakerFailureRateThreshold = (int) readPositiveNumber(properties, BREAKER_FAILURE_RATE, 50);
+            this.circuitBreakerSlowCallRateThreshold = (int) readPositiveNumber(properties, BREAKER_SLOW_CALL_RATE, 80);
+            this.circuitBreakerSlowCallDurationMillis = readPositiveNumber(properties, BREAKER_SLOW_CALL_DURATION, 10000);
+            this.circuitBreakerOpenDurationMillis = readPositiveNumber(properties, BREAKER_OPEN_DURATION, 30000);
+            this.circuitBreakerHalfOpenCalls = (int) readPositiveNumber(properties, BREAKER_HALF_OPEN_CALLS, 3);
+            this.retryMaxAttempts = (int) readPositiveNumber(properties, RETRY_MAX_ATTEMPTS, 3);
+            this.retryBaseDelayMillis = readPositiveNumber(properties, RETRY_BASE_DELAY, 100);
+            this.retryMaxDelayMillis = readPositiveNumber(properties, RETRY_MAX_DELAY, 2000);
+            this.retryBudgetPercent = (int) readPositiveNumber(properties, RETRY_BUDGET_PERCENT, 20);
+            this.retryBudgetMaxTokens = (int) readPositiveNumber(properties, RETRY_BUDGET_MAX_TOKENS, 10);
+            this.hedgingEnabled = readBoolean(properties, HEDGING_ENABLED, false);
+            this.variablesBatchParallelism = (int) readPositiveNumber(properties, VARIABLES_BATCH_PARALLELISM, 4);
+            this.mixinResolutionParallelism = (int) readPositiveNumber(properties, MIXIN_RESOLUTION_PARALLELISM, 4);
+            this.mixinLockStripes = (int) readPositiveNumber(properties, MIXIN_LOCK_STRIPES, 64);
+            this.mixinCacheMaxSize = readPositiveNumber(properties, MIXIN_CACHE_MAX_SIZE, 1000);
+            this.mixinCacheTtlMillis = readPositiveNumber(properties, MIXIN_CACHE_TTL, 0);
+            this.instanceIndexVariables = readList(properties, INSTANCE_INDEX_VARIABLES, ID_NAME);
+            this.instanceIndexRefreshAfterMillis = readPositiveNumber(properties, INSTANCE_INDEX_REFRESH_AFTER, 5000);
+            this.instanceIndexMaxStalenessMillis = readPositiveNumber(properties, INSTANCE_INDEX_MAX_STALENESS, 30000);
+
+            if (sessionRefreshMarginMillis >= sessionTtlMillis) {
+                throw new IllegalStateException(SESSION_REFRESH_MARGIN + " must be lower than " + SESSION_TTL);
+            }
+            if (poolMaxPerRoute > poolMaxTotal) {
+                throw new IllegalStateException(POOL_MAX_PER_ROUTE + " must not be greater than " + POOL_MAX_TOTAL);
+            }
+            for (Map.Entry<Upstream, Integer> limit : maxConcurrentCalls.entrySet()) {
+                if (limit.getValue() > poolMaxPerRoute) {
+                    throw new IllegalStateException(upstreamKey(limit.getKey()) + " must not be greater than " +
+                                                    POOL_MAX_PER_ROUTE);
+                }
+            }
+            if (circuitBreakerMinimumCalls > circuitBreakerWindowSize) {
+                throw new IllegalStateException(BREAKER_MINIMUM_CALLS + " must not be greater than " +
+                                                BREAKER_WINDOW_SIZE);
+            }
+            if (circuitBreakerFailureRateThreshold > 100 || circuitBreakerSlowCallRateThreshold > 100) {
+                throw new IllegalStateException("the circuit breaker thresholds are percentages");
+            }
+            if (retryBaseDelayMillis > retryMaxDelayMillis) {
+                throw new IllegalStateException(RETRY_BASE_DELAY + " must not be greater than " + RETRY_MAX_DELAY);
+            }
+            if (retryBudgetPercent > 100) {
+                throw new IllegalStateException(RETRY_BUDGET_PERCENT + " is a percentage");
+            }
+            //the variable batches and the mixin resolutions run side by side, each of them must leave room to the other
+            if (variablesBatchParallelism + mixinResolutionParallelism > maxConcurrentCalls.get(Upstream.VARIABLES)) {
+                throw new IllegalStateException(VARIABLES_BATCH_PARALLELISM + " plus " + MIXIN_RESOLUTION_PARALLELISM +
+                                                " must not be greater than " + upstreamKey(Upstream.VARIABLES));
+            }
+            if (instanceIndexRefreshAfterMillis > instanceIndexMaxStalenessMillis) {
+                throw new IllegalStateException(INSTANCE_INDEX_REFRESH_AFTER + " must not be greater than " +
+                                                INSTANCE_INDEX_MAX_STALENESS);
+            }
+        }
+
+        private static String readString(Properties properties, String key) {
+            String value = properties.getProperty(key);
+            if (value == null || value.trim().isEmpty()) {
+                throw new IllegalStateException(key + " is missing in " + CONFIGURATION_FILE);
+            }
+            return value.trim();
+        }
+
+        private static int readMaxConcurrentCalls(Properties properties, Upstream upstream, int defaultValue) {
+            return (int) readPositiveNumber(properties, upstreamKey(upstream), defaultValue);
+        }
+
+        private static String upstreamKey(Upstream upstream) {
+            return String.format(MAX_CONCURRENT_CALLS, upstream.name().toLowerCase().replace('_', '-'));
+        }
+
+        private static List<String> readList(Properties properties, String key, String defaultValue) {
+            String value = properties.getProperty(key, defaultValue);
+            List<String> values = Splitter.on(',').trimResults().omitEmptyStrings().splitToList(value);
+            if (values.isEmpty()) {
+                throw new IllegalStateException(key + " is empty in " + CONFIGURATION_FILE);
+            }
+            return values;
+        }
+
+        private static String readUrl(Properties properties, String key) {
+            String value = readString(properties, key);
+            try {
+                URI uri = new URI(value);
+                if ((!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme())) || uri.getHost() == null) {
+                    throw new IllegalStateException(key + " is not an http url : " + value);
+                }
+                return value;
+            } catch (URISyntaxException ex) {
+                throw new IllegalStateException(key + " is not a valid url : " + value, ex);
+            }
+        }
+
+        private static boolean readBoolean(Properties properties, String key, boolean defaultValue) {
+            String value = properties.getProperty(key);
+            if (value == null || value.trim().isEmpty()) {
+                return defaultValue;
+            }
+            if (!"true".equalsIgnoreCase(value.trim()) && !"false".equalsIgnoreCase(value.trim())) {
+                throw new IllegalStateException(key + " must be true or false : " + value);
+            }
+            return Boolean.parseBoolean(value.trim());
+        }
+
+        private static long readPositiveNumber(Properties properties, String key, long defaultValue) {
+            String value = properties.getProperty(key);
+            if (value == null || value.trim().isEmpty()) {
+                return defaultValue;
+            }
+            try {
+                long number = Long.parseLong(value.trim());
+                if (number <= 0) {
+                    throw new IllegalStateException(key + " must be positive : " + value);
+                }
+                return number;
+            } catch (NumberFormatException ex) {
+                throw new IllegalStateException(key + " is not a number : " + value, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import org.ow2.proactive.procci.model.cloud.automation.Model;
+import org.ow2.proactive.procci.model.exception.SyntaxException;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+
+/**
+ * Conditions on the variables of the cloud automation instances and on the mixins of the entities, an instance
+ * matches the filter when it meets all of them
+ * <p>
+ * A condition is written {@code name=value}, {@code name=prefix*} or {@code name>value} with one of {@code >},
+ * {@code >=}, {@code <} and {@code <=} for a range. A range with a number as bound only matches the values which
+ * are numbers and compares them as numbers, the other ranges compare the values as strings. The condition
+ * {@code mixin=title} keeps the entities carrying the mixin.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class InstanceFilter {
+
+    public static final String MIXIN = "mixin";
+
+    private static final InstanceFilter EMPTY = new InstanceFilter(Collections.emptyList(), Collections.emptySet());
+
+    private final List<Condition> conditions;
+
+    private final Set<String> mixins;
+
+    private InstanceFilter(List<Condition> conditions, Set<String> mixins) {
+        this.conditions = Collections.unmodifiableList(conditions);
+        this.mixins = Collections.unmodifiableSet(mixins);
+    }
+
+    /**
+     * @return a filter matching every instance
+     */
+    public static InstanceFilter empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param filters are the conditions written as in the description of the class, or null for no condition
+     * @return the filter meeting all the conditions
+     * @throws SyntaxException if a condition can not be read
+     */
+    public static InstanceFilter parse(List<String> filters) {
+        if (filters == null || filters.isEmpty()) {
+            return EMPTY;
+        }
+        List<Condition> conditions = new ArrayList<>();
+        Set<String> mixins = new LinkedHashSet<>();
+        for (String filter : filters) {
+            Condition condition = Condition.parse(filter);
+            if (!MIXIN.equals(condition.getVariable())) {
+                conditions.add(condition);
+            } else if (condition.getOperator() == Operator.EQUAL) {
+                mixins.add(condition.getValue());
+            } else {
+                throw new SyntaxException(filter, MIXIN + "=title");
+            }
+        }
+        return new InstanceFilter(conditions, mixins);
+    }
+
+    public boolean isEmpty() {
+        return conditions.isEmpty() && mixins.isEmpty();
+    }
+
+    /**
+     * Give the number written in a value
+     *
+     * @param value is a variable value
+     * @return the number or an empty optional if the value is not a number
+     */
+    static Optional<BigDecimal> toNumber(String value) {
+        try {
+            return Optional.of(new BigDecimal(value));
+        } catch (NumberFormatException ex) {
+            return Optional.empty();
+        }
+    }
+
+    public enum Operator {
+        EQUAL(comparison -> comparison == 0),
+        PREFIX(comparison -> comparison == 0),
+        GREATER(comparison -> comparison > 0),
+        GREATER_OR_EQUAL(comparison -> comparison >= 0),
+        LESS(comparison -> comparison < 0),
+        LESS_OR_EQUAL(comparison -> comparison <= 0);
+
+        //whether a value compared to the value of the condition meets the condition
+        private final IntPredicate accepted;
+
+        Operator(IntPredicate accepted) {
+            this.accepted = accepted;
+        }
+
+        boolean accepts(int comparison) {
+            return accepted.test(comparison);
+        }
+    }
+
+    /**
+     * A condition on one variable
+     */
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    public static class Condition {
+
+        private final String variable;
+
+        private final Operator operator;
+
+        private final String value;
+
+        public Condition(String variable, Operator operator, String value) {
+            this.variable = variable;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        private static Condition parse(String filter) {
+            int position = 0;
+            while (position < filter.length() && "=<>".indexOf(filter.charAt(position)) < 0) {
+                position++;
+            }
+            boolean orEqual = filter.startsWith("=", position + 1) && filter.charAt(position) != '=';
+            String value = filter.substring(Math.min(filter.length(), position + (orEqual ? 2 : 1)));
+            if (position == 0 || value.isEmpty()) {
+                throw new SyntaxException(filter, "a condition like name=value, name=prefix* or name>=value");
+            }
+            String variable = filter.substring(0, position);
+            switch (filter.charAt(position)) {
+                case '>':
+                    return new Condition(variable, orEqual ? Operator.GREATER_OR_EQUAL : Operator.GREATER, value);
+                case '<':
+                    return new Condition(variable, orEqual ? Operator.LESS_OR_EQUAL : Operator.LESS, value);
+                default:
+                    return value.endsWith("*") ? new Condition(variable,
+                                                               Operator.PREFIX,
+                                                               value.substring(0, value.length() - 1))
+                                               : new Condition(variable, Operator.EQUAL, value);
+            }
+        }
+
+        /**
+         * @return the bound of a range when it is a number
+         */
+        Optional<BigDecimal> getNumericBound() {
+            return operator == Operator.EQUAL || operator == Operator.PREFIX ? Optional.empty() : toNumber(value);
+        }
+
+        /**
+         * @param model is a cloud automation instance
+         * @return true if the variable of the instance meets the condition
+         */
+        public boolean matches(Model model) {
+            String actual = model.getVariables().get(variable);
+            if (actual == null) {
+                return false;
+            }
+            switch (operator) {
+                case EQUAL:
+                    return actual.equals(value);
+                case PREFIX:
+                    return actual.startsWith(value);
+                default:
+                    Optional<BigDecimal> bound = getNumericBound();
+                    if (!bound.isPresent()) {
+                        return operator.accepts(actual.compareTo(value));
+                    }
+                    return toNumber(actual).map(number -> operator.accepts(number.compareTo(bound.get())))
+                                           .orElse(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,514 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.ow2.proactive.procci.model.cloud.automation.Model;
+import org.ow2.proactive.procci.service.InstanceFilter.Condition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.AllArgsConstructor;
+
+
+/**
+ * Local copy of the cloud automation instances, indexed by the values of some of their variables
+ * <p>
+ * A lookup on an indexed variable is a map access on the last loaded snapshot. The snapshot is trusted for
+ * {@code refreshAfterMillis}, after that the next lookup still answers from it but starts a reload in background.
+ * A snapshot older than {@code maxStalenessMillis} is never used, the lookup waits for the reload instead.
+ * The instances created by the connector are added to the index at once and kept until a reload contains them.
+ * The values of an indexed variable are kept sorted, so that a page of instances ordered by this variable starts
+ * where the previous one stopped without going through the instances before it. The conditions on the other
+ * variables are evaluated with secondary indexes built on demand.
+ */
+class InstanceIndex {
+
+    private final Logger logger = LoggerFactory.getLogger(InstanceIndex.class);
+
+    private final Supplier<CompletableFuture<List<Model>>> loader;
+
+    private final Collection<String> indexedVariables;
+
+    private final long refreshAfterMillis;
+
+    private final long maxStalenessMillis;
+
+    private final LongSupplier clock;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private final AtomicLong failedRefreshes = new AtomicLong();
+
+    private final Object updateLock = new Object();
+
+    private final List<Write> recentWrites = new ArrayList<>();
+
+    private volatile Snapshot snapshot;
+
+    private CompletableFuture<Snapshot> pendingRefresh;
+
+    /**
+     * @param loader             downloads every instance from cloud automation
+     * @param indexedVariables   are the variables whose values are indexed
+     * @param refreshAfterMillis is the age from which a snapshot is reloaded in background
+     * @param maxStalenessMillis is the age from which a snapshot is not used anymore
+     */
+    InstanceIndex(Supplier<CompletableFuture<List<Model>>> loader, Collection<String> indexedVariables,
+            long refreshAfterMillis, long maxStalenessMillis) {
+        this(loader, indexedVariables, refreshAfterMillis, maxStalenessMillis, System::currentTimeMillis);
+    }
+
+    InstanceIndex(Supplier<CompletableFuture<List<Model>>> loader, Collection<String> indexedVariables,
+            long refreshAfterMillis, long maxStalenessMillis, LongSupplier clock) {
+        this.loader = loader;
+        this.indexedVariables = indexedVariables;
+        this.refreshAfterMillis = refreshAfterMillis;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Give the first instance whose variable has the given value
+     *
+     * @param variableName  is a key in the instance variables
+     * @param variableValue is the value to look for
+     * @return the future matching instance or an empty optional
+     */
+    CompletableFuture<Optional<Model>> find(String variableName, String variableValue) {
+        return getSnapshot().thenApply(current -> {
+            Optional<Model> model = current.find(variableName, variableValue);
+            (model.isPresent() ? hits : misses).incrementAndGet();
+            return model;
+        });
+    }
+
+    /**
+     * Give the instances whose variable has one of the given values, all looked up in the same snapshot
+     *
+     * @param variableName   is a key in the instance variables
+     * @param variableValues are the values to look for
+     * @return the future first matching instance of each value, the values without instance are not in the map
+     */
+    CompletableFuture<Map<String, Model>> findAll(String variableName, Collection<String> variableValues) {
+        return getSnapshot().thenApply(current -> {
+            Map<String, Model> models = new HashMap<>();
+            for (String variableValue : variableValues) {
+                Optional<Model> model = current.find(variableName, variableValue);
+                (model.isPresent() ? hits : misses).incrementAndGet();
+                model.ifPresent(found -> models.put(variableValue, found));
+            }
+            return models;
+        });
+    }
+
+    /**
+     * Give a page of the instances having a variable, ordered by the value of the variable
+     *
+     * @param variableName is a key in the instance variables
+     * @param serviceModel restricts the page to the instances of a cloud automation model, or empty for all
+     * @param after is the value of the last instance of the previous page, or empty for the first page
+     * @param limit is the maximum number of instances in the page
+     * @return the future instances whose value follows after, at most limit of them
+     */
+    CompletableFuture<List<Model>> page(String variableName, Optional<String> serviceModel, Optional<String> after,
+            int limit) {
+        return query(variableName, serviceModel, Collections.emptyList(), Optional.empty(), after, limit);
+    }
+
+    /**
+     * Give a page of the instances having a variable and meeting conditions, ordered by the value of the variable
+     * <p>
+     * The candidates are taken from the most selective of the conditions, the values and the page itself, then
+     * checked against all of them. A condition is evaluated with a secondary index on its variable, built once per
+     * snapshot the first time a condition needs it.
+     *
+     * @param variableName is a key in the instance variables, the page is ordered by its value
+     * @param serviceModel restricts the page to the instances of a cloud automation model, or empty for all
+     * @param conditions are conditions on the instance variables
+     * @param values restricts the page to the instances whose variable has one of these values, or empty
+     * @param after is the value of the last instance of the previous page, or empty for the first page
+     * @param limit is the maximum number of instances in the page
+     * @return the future instances meeting everything whose value follows after, at most limit of them
+     */
+    CompletableFuture<List<Model>> query(String variableName, Optional<String> serviceModel,
+            List<Condition> conditions, Optional<Set<String>> values, Optional<String> after, int limit) {
+        return getSnapshot().thenApply(current -> current.query(variableName,
+                                                                serviceModel,
+                                                                conditions,
+                                                                values,
+                                                                after,
+                                                                limit));
+    }
+
+    /**
+     * Download every instance and index them
+     *
+     * @return the future downloaded instances
+     */
+    CompletableFuture<List<Model>> load() {
+        long startedAt = clock.getAsLong();
+        return loader.get().thenApply(models -> {
+            update(models, startedAt);
+            return models;
+        });
+    }
+
+    /**
+     * Download the instances again, concurrent callers share the same download
+     *
+     * @return a future completed when the index is up to date
+     */
+    CompletableFuture<Void> refresh() {
+        return refreshSnapshot().thenApply(loaded -> null);
+    }
+
+    private CompletableFuture<Snapshot> refreshSnapshot() {
+        synchronized (updateLock) {
+            if (pendingRefresh != null) {
+                return pendingRefresh;
+            }
+            long startedAt = clock.getAsLong();
+            CompletableFuture<Snapshot> attempt = loader.get().thenApply(models -> update(models, startedAt));
+            pendingRefresh = attempt;
+            attempt.whenComplete((loaded, ex) -> {
+                synchronized (updateLock) {
+                    if (pendingRefresh == attempt) {
+                        pendingRefresh = null;
+                    }
+                }
+                if (ex != null) {
+                    failedRefreshes.incrementAndGet();
+                    logger.warn("Unable to refresh the instance index : " + ex.getMessage());
+                }
+            });
+            return attempt;
+        }
+    }
+
+    /**
+     * Replace the indexed instances by a complete list downloaded from the given time
+     * <p>
+     * The recently created instances which are missing from the list are kept
+     *
+     * @param models    are all the instances of cloud automation
+     * @param startedAt is when the download started
+     * @return the new snapshot
+     */
+    private Snapshot update(List<Model> models, long startedAt) {
+        synchronized (updateLock) {
+            Snapshot current = snapshot;
+            if (current != null && current.loadedAt > startedAt) {
+                return current;
+            }
+            //a shared download may have started before startedAt, so a write is only dropped once it is
+            //downloaded or once it is older than the staleness bound
+            Snapshot downloaded = new Snapshot(models, startedAt);
+            recentWrites.removeIf(write -> downloaded.contains(write.model) ||
+                                           write.time < startedAt - maxStalenessMillis);
+            List<Model> missing = new ArrayList<>();
+            for (int i = recentWrites.size() - 1; i >= 0; i--) {
+                missing.add(recentWrites.get(i).model);
+            }
+            if (missing.isEmpty()) {
+                snapshot = downloaded;
+            } else {
+                missing.addAll(models);
+                snapshot = new Snapshot(missing, startedAt);
+            }
+            refreshes.incrementAndGet();
+            return snapshot;
+        }
+    }
+
+    /**
+     * Add an instance which has just been created in cloud automation
+     *
+     * @param model is the created instance
+     */
+    void put(Model model) {
+        synchronized (updateLock) {
+            recentWrites.add(new Write(model, clock.getAsLong()));
+            Snapshot current = snapshot;
+            if (current != null) {
+                snapshot = current.with(model);
+            }
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getRefreshes() {
+        return refreshes.get();
+    }
+
+    long getFailedRefreshes() {
+        return failedRefreshes.get();
+    }
+
+    int getSize() {
+        Snapshot current = snapshot;
+        return current == null ? 0 : current.models.size();
+    }
+
+    /**
+     * @return the age of the current snapshot in milliseconds or -1 if nothing is loaded
+     */
+    long getAgeMillis() {
+        Snapshot current = snapshot;
+        return current == null ? -1 : clock.getAsLong() - current.loadedAt;
+    }
+
+    private CompletableFuture<Snapshot> getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return refreshSnapshot();
+        }
+        long age = clock.getAsLong() - current.loadedAt;
+        if (age >= maxStalenessMillis) {
+            return refreshSnapshot();
+        }
+        if (age >= refreshAfterMillis) {
+            refreshSnapshot();
+        }
+        return CompletableFuture.completedFuture(current);
+    }
+
+    @AllArgsConstructor
+    private static class Write {
+
+        private final Model model;
+
+        private final long time;
+    }
+
+    /**
+     * Immutable state of the index, the first instance wins when several have the same value
+     */
+    private class Snapshot {
+
+        private final List<Model> models;
+
+        private final long loadedAt;
+
+        private final Map<String, NavigableMap<String, Model>> byVariable;
+
+        //the same indexes restricted to each cloud automation model
+        private final Map<String, Map<String, NavigableMap<String, Model>>> byServiceModel;
+
+        private final Map<String, SecondaryIndex> secondaryIndexes = new ConcurrentHashMap<>();
+
+        private Snapshot(List<Model> models, long loadedAt) {
+            this.models = Collections.unmodifiableList(models);
+            this.loadedAt = loadedAt;
+            this.byVariable = new HashMap<>();
+            this.byServiceModel = new HashMap<>();
+            for (String variableName : indexedVariables) {
+                NavigableMap<String, Model> byValue = new TreeMap<>();
+                Map<String, NavigableMap<String, Model>> byModel = new HashMap<>();
+                for (Model model : models) {
+                    String value = model.getVariables().get(variableName);
+                    if (value != null && byValue.putIfAbsent(value, model) == null) {
+                        byModel.computeIfAbsent(model.getServiceModel(), key -> new TreeMap<>()).put(value, model);
+                    }
+                }
+                byVariable.put(variableName, byValue);
+                byServiceModel.put(variableName, byModel);
+            }
+        }
+
+        private Snapshot(List<Model> models, long loadedAt, Map<String, NavigableMap<String, Model>> byVariable,
+                Map<String, Map<String, NavigableMap<String, Model>>> byServiceModel) {
+            this.models = Collections.unmodifiableList(models);
+            this.loadedAt = loadedAt;
+            this.byVariable = byVariable;
+            this.byServiceModel = byServiceModel;
+        }
+
+        /**
+         * Give a copy of this snapshot where the model comes first
+         * <p>
+         * Only the sorted maps holding a value of the model are copied, the others are shared with this snapshot
+         */
+        private Snapshot with(Model model) {
+            List<Model> indexed = new ArrayList<>(models.size() + 1);
+            indexed.add(model);
+            indexed.addAll(models);
+            Map<String, NavigableMap<String, Model>> newByVariable = new HashMap<>(byVariable);
+            Map<String, Map<String, NavigableMap<String, Model>>> newByServiceModel = new HashMap<>(byServiceModel);
+            for (String variableName : indexedVariables) {
+                String value = model.getVariables().get(variableName);
+                if (value == null) {
+                    continue;
+                }
+                NavigableMap<String, Model> byValue = new TreeMap<>(byVariable.get(variableName));
+                Model replaced = byValue.put(value, model);
+                newByVariable.put(variableName, byValue);
+
+                Map<String, NavigableMap<String, Model>> byModel = new HashMap<>(byServiceModel.get(variableName));
+                if (replaced != null && !Objects.equals(replaced.getServiceModel(), model.getServiceModel())) {
+                    NavigableMap<String, Model> previousModel = new TreeMap<>(byModel.get(replaced.getServiceModel()));
+                    previousModel.remove(value);
+                    byModel.put(replaced.getServiceModel(), previousModel);
+                }
+                NavigableMap<String, Model> sameModel = new TreeMap<>();
+                Optional.ofNullable(byModel.get(model.getServiceModel())).ifPresent(sameModel::putAll);
+                sameModel.put(value, model);
+                byModel.put(model.getServiceModel(), sameModel);
+                newByServiceModel.put(variableName, byModel);
+            }
+            return new Snapshot(indexed, loadedAt, newByVariable, newByServiceModel);
+        }
+
+        private Optional<Model> find(String variableName, String variableValue) {
+            Map<String, Model> byValue = byVariable.get(variableName);
+            if (byValue != null) {
+                return Optional.ofNullable(byValue.get(variableValue));
+            }
+            return models.stream()
+                         .filter(model -> variableValue.equals(model.getVariables().get(variableName)))
+                         .findFirst();
+        }
+
+        private NavigableMap<String, Model> sorted(String variableName, Optional<String> serviceModel) {
+            if (byVariable.containsKey(variableName)) {
+                return serviceModel.isPresent() ? byServiceModel.get(variableName)
+                                                                .getOrDefault(serviceModel.get(),
+                                                                              Collections.emptyNavigableMap())
+                                                : byVariable.get(variableName);
+            }
+            //a variable which is not indexed is sorted for this page only
+            NavigableMap<String, Model> byValue = new TreeMap<>();
+            for (Model model : models) {
+                String value = model.getVariables().get(variableName);
+                if (value != null && (!serviceModel.isPresent() || serviceModel.get().equals(model.getServiceModel()))) {
+                    byValue.putIfAbsent(value, model);
+                }
+            }
+            return byValue;
+        }
+
+        private List<Model> query(String variableName, Optional<String> serviceModel, List<Condition> conditions,
+                Optional<Set<String>> values, Optional<String> after, int limit) {
+            NavigableMap<String, Model> sorted = sorted(variableName, serviceModel);
+
+            //the sorted instances are the candidates unless something is more selective
+            long selected = sorted.size();
+            Iterable<Model> candidates = null;
+            if (values.isPresent() && values.get().size() < selected) {
+                selected = values.get().size();
+                candidates = values.get()
+                                   .stream()
+                                   .map(sorted::get)
+                                   .filter(Objects::nonNull)
+                                   .collect(Collectors.toList());
+            }
+            for (Condition condition : conditions) {
+                Collection<List<Model>> selection = secondaryIndexes.computeIfAbsent(condition.getVariable(),
+                                                                                     key -> new SecondaryIndex(key,
+                                                                                                               models))
+                                                                    .select(condition);
+                long count = SecondaryIndex.count(selection, selected);
+                if (count < selected) {
+                    selected = count;
+                    candidates = () -> selection.stream().flatMap(List::stream).iterator();
+                }
+            }
+
+            Predicate<Model> matches = model -> {
+                String value = model.getVariables().get(variableName);
+                //the instance is the one sorted under its value, of the right model and after the previous page
+                return value != null && sorted.get(value) == model &&
+                       (!after.isPresent() || value.compareTo(after.get()) > 0) &&
+                       (!values.isPresent() || values.get().contains(value)) &&
+                       conditions.stream().allMatch(condition -> condition.matches(model));
+            };
+
+            if (candidates == null) {
+                //already in order, the page ends with its last instance
+                NavigableMap<String, Model> following = after.isPresent() ? sorted.tailMap(after.get(), false)
+                                                                          : sorted;
+                return following.values()
+                                .stream()
+                                .filter(matches)
+                                .limit(limit)
+                                .collect(Collectors.toList());
+            }
+            NavigableMap<String, Model> page = new TreeMap<>();
+            for (Model candidate : candidates) {
+                if (matches.test(candidate)) {
+                    page.put(candidate.getVariables().get(variableName), candidate);
+                    if (page.size() > limit) {
+                        page.pollLastEntry();
+                    }
+                }
+            }
+            return new ArrayList<>(page.values());
+        }
+
+        private boolean contains(Model model) {
+            boolean indexed = false;
+            for (Map.Entry<String, NavigableMap<String, Model>> index : byVariable.entrySet()) {
+                String value = model.getVariables().get(index.getKey());
+                if (value != null) {
+                    if (index.getValue().containsKey(value)) {
+                        return true;
+                    }
+                    indexed = true;
+                }
+            }
+            return !indexed && models.contains(model);
+        }
+    }
+}
@@ -27,25 +27,32 @@ package org.ow2.proactive.procci.service;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.Properties;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.PostConstruct;
 
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import org.ow2.proactive.procci.model.exception.CloudAutomationClientException;
 import org.ow2.proactive.procci.model.exception.CloudAutomationServerException;
 import org.ow2.proactive.procci.model.exception.ServerException;
+import org.ow2.proactive.procci.service.http.Deadline;
+import org.ow2.proactive.procci.service.http.DecodedEntity;
+import org.ow2.proactive.procci.service.http.HttpTransport;
+import org.ow2.proactive.procci.service.http.ResponseDecoder;
+import org.ow2.proactive.procci.service.http.Upstream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 
@@ -57,30 +64,78 @@ public class RequestUtils {
 
     private final Logger logger = LoggerFactory.getLogger(RequestUtils.class);
 
+    @Autowired
+    private HttpTransport httpTransport;
+
+    @Autowired
+    private ConnectorConfiguration configuration;
+
+    private SchedulerSessionManager sessionManager;
+
+    @PostConstruct
+    public void init() {
+        sessionManager = new SchedulerSessionManager(this::login,
+                                                     configuration.getSessionTtlMillis(),
+                                                     configuration.getSessionRefreshMarginMillis());
+    }
+
     /**
      * Send a service to pca service with a header containing the session id and sending content
+     * <p>
+     * If the scheduler rejects the session id, the connector logs in again and sends the request one more time
      *
      * @param content is which is send to the cloud automation service
      * @return the information about gathered from cloud automation service
      */
     public JSONObject postRequest(JSONObject content, String url) {
+        return Deadline.join(postRequestAsync(content, url));
+    }
+
+    /**
+     * Send a service to pca service without waiting for the answer
+     *
+     * @param content is which is send to the cloud automation service
+     * @return the future information gathered from cloud automation service
+     */
+    public CompletableFuture<JSONObject> postRequestAsync(JSONObject content, String url) {
+        Optional<Deadline> deadline = Deadline.current();
+        return sessionManager.getSessionIdAsync()
+                             .thenCompose(sessionId -> sendAuthenticatedPost(content,
+                                                                             url,
+                                                                             sessionId,
+                                                                             true,
+                                                                             deadline))
+                             .thenApply(this::parseJSON);
+    }
+
+    private CompletableFuture<String> sendAuthenticatedPost(JSONObject content, String url, String sessionId,
+            boolean renewRejectedSession, Optional<Deadline> deadline) {
 
         final String PCA_SERVICE_SESSIONID = "sessionid";
-        try (CloseableHttpClient httpClient = HttpClientBuilder.create().build()) {
-            HttpPost postRequest = new HttpPost(url);
-            postRequest.addHeader(PCA_SERVICE_SESSIONID, getSessionId());
-            StringEntity input = new StringEntity(content.toJSONString());
-            input.setContentType("application/json");
-            postRequest.setEntity(input);
+        HttpPost postRequest = new HttpPost(url);
+        postRequest.addHeader(PCA_SERVICE_SESSIONID, sessionId);
+        StringEntity input = new StringEntity(content.toJSONString(), ContentType.APPLICATION_JSON);
+        postRequest.setEntity(input);
 
-            HttpResponse response = httpClient.execute(postRequest);
+        return httpTransport.execute(Upstream.INSTANCES, postRequest, deadline).thenCompose(response -> {
+            if (!renewRejectedSession || !isSessionRejected(response)) {
+                return CompletableFuture.completedFuture(readHttpResponse(response,
+                                                                          url,
+                                                                          "POST " + content.toJSONString()));
+            }
+            logger.debug("the session has been rejected by " + url + ", log in again");
+            return sessionManager.renew(sessionId)
+                                 .thenCompose(newSessionId -> sendAuthenticatedPost(content,
+                                                                                    url,
+                                                                                    newSessionId,
+                                                                                    false,
+                                                                                    deadline));
+        });
+    }
 
-            String serverOutput = readHttpResponse(response, url, "POST " + content.toJSONString());
-            return parseJSON(serverOutput);
-        } catch (IOException ex) {
-            logger.error(" IO exception in CloudAutomationInstanceClient::postRequest ", ex);
-            throw new ServerException();
-        }
+    private boolean isSessionRejected(HttpResponse response) {
+        int status = response.getStatusLine().getStatusCode();
+        return status == HttpStatus.SC_UNAUTHORIZED || status == HttpStatus.SC_FORBIDDEN;
     }
 
     /**
@@ -89,15 +144,34 @@ public class RequestUtils {
      * @return a json object containing the service results
      */
     public JSONObject getRequest(String url) {
-        try (CloseableHttpClient httpClient = HttpClientBuilder.create().build()) {
-            HttpGet getRequest = new HttpGet(url);
-            HttpResponse response = httpClient.execute(getRequest);
-            String serverOutput = readHttpResponse(response, url, "GET");
-            return parseJSON(serverOutput);
-        } catch (IOException ex) {
-            logger.error(" IO exception in CloudAutomationInstanceClient::getRequest ", ex);
-            throw new ServerException();
-        }
+        return Deadline.join(getRequestAsync(url));
+    }
+
+    /**
+     * Get the deployed instances from Cloud Automation Model without waiting for the answer
+     * <p>
+     * The request is sent again after a transient failure
+     *
+     * @return the future json object containing the service results
+     */
+    public CompletableFuture<JSONObject> getRequestAsync(String url) {
+        return httpTransport.executeWithRetry(Upstream.INSTANCES, () -> new HttpGet(url))
+                            .thenApply(response -> parseJSON(readHttpResponse(response, url, "GET")));
+    }
+
+    /**
+     * Send a get request and decode the response body while it is received, without buffering it
+     * <p>
+     * The decoder reads the body from the connection through a buffer of fixed size, so the memory used by the
+     * response does not grow with its size
+     *
+     * @param url is where the request is sent
+     * @param decoder converts the response body
+     * @return the future decoded response
+     */
+    public <T> CompletableFuture<T> getRequestAsync(String url, ResponseDecoder<T> decoder) {
+        return httpTransport.executeWithRetry(Upstream.INSTANCES, () -> new HttpGet(url), decoder)
+                            .thenCompose(response -> readDecodedResponse(response, url, "GET"));
     }
 
     /**
@@ -107,61 +181,46 @@ public class RequestUtils {
      * @return a string containing the information from response
      */
     private String getResponseString(HttpResponse response) throws IOException {
-        StringBuffer serverOutput = new StringBuffer();
+        StringBuilder serverOutput = new StringBuilder();
 
-        BufferedReader br = new BufferedReader(new InputStreamReader((response.getEntity().getContent())));
-
-        String output;
-        while ((output = br.readLine()) != null) {
-            serverOutput.append(output);
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(response.getEntity().getContent()))) {
+            String output;
+            while ((output = br.readLine()) != null) {
+                serverOutput.append(output);
+            }
         }
         return serverOutput.toString();
     }
 
     /**
-     * Get the property from the configuration file config.properties
+     * Give the scheduler session id, the connector logs in only when the cached session is about to expire
      *
-     * @param propertyKey is the key of the variable
-     * @return the value of the variable
+     * @return the session id
      */
-    public String getProperty(String propertyKey) {
-        Properties prop = new Properties();
-        try {
-            prop.load(getClass().getClassLoader().getResourceAsStream("config.properties"));
-            return prop.getProperty(propertyKey);
-
-        } catch (IOException ex) {
-            logger.error("Unable to get the cloud automation service url from config.properties", ex);
-            throw new ServerException();
-        }
+    public String getSessionId() {
+        return sessionManager.getSessionId();
     }
 
     /**
      * Send a service to the scheduler with the name and the password from the configuration file in order to get the
      * session id
+     * <p>
+     * The session is shared by all the requests, so the login is only bounded by the configured timeouts and not
+     * by the deadline of the request which triggered it
      *
-     * @return the session id
+     * @return the future session id
      */
-    public String getSessionId() {
-        final String SCHEDULER_LOGIN_URL = getProperty("scheduler.login.endpoint");
-        final String SCHEDULER_REQUEST = "username=" + getProperty("login.name") + "&password=" +
-                                         getProperty("login.password");
+    private CompletableFuture<String> login() {
+        final String SCHEDULER_LOGIN_URL = configuration.getSchedulerLoginEndpoint();
+        final String SCHEDULER_REQUEST = "username=" + configuration.getLoginName() + "&password=" +
+                                         configuration.getLoginPassword();
 
-        try {
-            CloseableHttpClient httpClient = HttpClientBuilder.create().build();
-            HttpPost postRequest = new HttpPost(SCHEDULER_LOGIN_URL);
-            StringEntity input = new StringEntity(SCHEDULER_REQUEST, ContentType.APPLICATION_FORM_URLENCODED);
-            postRequest.setEntity(input);
-
-            HttpResponse response = httpClient.execute(postRequest);
-
-            return readHttpResponse(response, SCHEDULER_LOGIN_URL, SCHEDULER_REQUEST);
-        } catch (IOException ex) {
-            logger.error("Unable to get the session id", ex);
-            logError(SCHEDULER_LOGIN_URL, SCHEDULER_REQUEST);
-            throw new ServerException();
-        }
+        HttpPost postRequest = new HttpPost(SCHEDULER_LOGIN_URL);
+        StringEntity input = new StringEntity(SCHEDULER_REQUEST, ContentType.APPLICATION_FORM_URLENCODED);
+        postRequest.setEntity(input);
 
+        return httpTransport.execute(Upstream.SCHEDULER_LOGIN, postRequest, Optional.empty())
+                            .thenApply(response -> readHttpResponse(response, SCHEDULER_LOGIN_URL, SCHEDULER_REQUEST));
     }
 
     /**
@@ -187,7 +246,7 @@ public class RequestUtils {
         if (status >= 400 && status < 500) {
             logger.error("client error : " + responseOutput);
             logError(url, request);
-            throw new CloudAutomationClientException(response.getStatusLine().getReasonPhrase());
+            throw new CloudAutomationClientException(response.getStatusLine().getReasonPhrase(), status);
         }
         if (status >= 300) {
             logger.error("server error: " + responseOutput);
@@ -197,6 +256,32 @@ public class RequestUtils {
         return responseOutput;
     }
 
+    /**
+     * Give the body of a server response decoded by the transport
+     * if the response is valid it gives the decoded body
+     * if the response is not valid it throws the same exceptions as {@link #readHttpResponse(HttpResponse, String, String)}
+     *
+     * @param response is an HttpResponse whose valid body is a {@link DecodedEntity}
+     * @param url is where the request was sent
+     * @param request is the string request sent to the server
+     * @return the future decoded server response
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> readDecodedResponse(HttpResponse response, String url, String request) {
+        if (response.getStatusLine().getStatusCode() >= 300) {
+            //the error body is read as a string for the logs and the matching exception is thrown
+            readHttpResponse(response, url, request);
+        }
+        return ((DecodedEntity<T>) response.getEntity()).getDecoded().handle((decoded, ex) -> {
+            if (ex != null) {
+                logger.error("Unable to decode the http response in RequestUtils::readDecodedResponse", ex);
+                logError(url, request);
+                throw new ServerException();
+            }
+            return decoded;
+        });
+    }
+
     private void logError(String url, String request) {
         logger.error("url : " + url);
         logger.error("request : " + request);
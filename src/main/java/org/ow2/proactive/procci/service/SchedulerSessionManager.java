@@ -0,0 +1,155 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.ow2.proactive.procci.service.http.Deadline;
+
+import lombok.AllArgsConstructor;
+
+
+/**
+ * Keep the scheduler session id between the requests
+ * <p>
+ * The session id is reused until it comes close to its expiration, then the next caller logs in again.
+ * Concurrent callers which need a new session share the pending login instead of each sending its own.
+ */
+public class SchedulerSessionManager {
+
+    private final Supplier<CompletableFuture<String>> login;
+
+    private final long ttlMillis;
+
+    private final long refreshMarginMillis;
+
+    private final LongSupplier clock;
+
+    private final Object loginLock = new Object();
+
+    private volatile Session session;
+
+    private CompletableFuture<String> pendingLogin;
+
+    /**
+     * @param login               sends the login request to the scheduler and gives the future new session id
+     * @param ttlMillis           is how long a session id is trusted after the login
+     * @param refreshMarginMillis is how long before the expiration the session id is refreshed
+     */
+    public SchedulerSessionManager(Supplier<CompletableFuture<String>> login, long ttlMillis,
+            long refreshMarginMillis) {
+        this(login, ttlMillis, refreshMarginMillis, System::currentTimeMillis);
+    }
+
+    SchedulerSessionManager(Supplier<CompletableFuture<String>> login, long ttlMillis, long refreshMarginMillis,
+            LongSupplier clock) {
+        this.login = login;
+        this.ttlMillis = ttlMillis;
+        this.refreshMarginMillis = refreshMarginMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Give a valid session id, log in only if there is no session or if the session is about to expire
+     *
+     * @return the session id
+     */
+    public String getSessionId() {
+        return Deadline.join(getSessionIdAsync());
+    }
+
+    /**
+     * Give a valid session id without waiting for the login
+     *
+     * @return the future session id, already completed when the cached session is still fresh
+     */
+    public CompletableFuture<String> getSessionIdAsync() {
+        Session current = session;
+        if (current != null && current.isFreshAt(clock.getAsLong())) {
+            return CompletableFuture.completedFuture(current.id);
+        }
+        return login(current);
+    }
+
+    /**
+     * Log in again because the scheduler has rejected the session id
+     * <p>
+     * If another caller has already replaced the rejected session, its session id is returned without login
+     *
+     * @param rejectedSessionId is the session id refused by the server
+     * @return the future new session id
+     */
+    public CompletableFuture<String> renew(String rejectedSessionId) {
+        synchronized (loginLock) {
+            Session current = session;
+            if (current != null && current.id.equals(rejectedSessionId)) {
+                session = null;
+            }
+        }
+        return getSessionIdAsync();
+    }
+
+    private CompletableFuture<String> login(Session staleSession) {
+        synchronized (loginLock) {
+            Session current = session;
+            if (current != null && current != staleSession && current.isFreshAt(clock.getAsLong())) {
+                return CompletableFuture.completedFuture(current.id);
+            }
+            if (pendingLogin != null) {
+                return pendingLogin;
+            }
+            CompletableFuture<String> attempt = login.get().thenApply(sessionId -> {
+                synchronized (loginLock) {
+                    session = new Session(sessionId, clock.getAsLong() + ttlMillis - refreshMarginMillis);
+                }
+                return sessionId;
+            });
+            pendingLogin = attempt;
+            attempt.whenComplete((sessionId, ex) -> {
+                synchronized (loginLock) {
+                    if (pendingLogin == attempt) {
+                        pendingLogin = null;
+                    }
+                }
+            });
+            return attempt;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Session {
+
+        private final String id;
+
+        private final long refreshAt;
+
+        private boolean isFreshAt(long time) {
+            return time < refreshAt;
+        }
+    }
+}
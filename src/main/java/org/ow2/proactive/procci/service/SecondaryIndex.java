@@ -0,0 +1,131 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import org.ow2.proactive.procci.model.cloud.automation.Model;
+import org.ow2.proactive.procci.service.InstanceFilter.Condition;
+
+
+/**
+ * The instances of a snapshot sorted by the value of one of their variables, as strings and, for the values which
+ * are numbers, as numbers
+ * <p>
+ * The instances meeting a condition on the variable are the ones of a range of values, they are given without
+ * being copied. A selection can be wider than the condition, the caller checks each selected instance.
+ */
+class SecondaryIndex {
+
+    private final NavigableMap<String, List<Model>> byText = new TreeMap<>();
+
+    private final NavigableMap<BigDecimal, List<Model>> byNumber = new TreeMap<>();
+
+    SecondaryIndex(String variableName, Collection<Model> models) {
+        for (Model model : models) {
+            String value = model.getVariables().get(variableName);
+            if (value != null) {
+                byText.computeIfAbsent(value, key -> new ArrayList<>()).add(model);
+                InstanceFilter.toNumber(value)
+                              .ifPresent(number -> byNumber.computeIfAbsent(number, key -> new ArrayList<>())
+                                                           .add(model));
+            }
+        }
+    }
+
+    /**
+     * @param condition is a condition on the variable of the index
+     * @return the instances meeting the condition, grouped by value
+     */
+    Collection<List<Model>> select(Condition condition) {
+        String value = condition.getValue();
+        switch (condition.getOperator()) {
+            case EQUAL:
+                return Optional.ofNullable(byText.get(value))
+                               .map(Collections::singletonList)
+                               .orElse(Collections.emptyList());
+            case PREFIX:
+                return prefixed(value).values();
+            default:
+                Optional<BigDecimal> bound = condition.getNumericBound();
+                return bound.isPresent() ? range(byNumber, bound.get(), condition).values()
+                                         : range(byText, value, condition).values();
+        }
+    }
+
+    /**
+     * Count the instances of a selection, the counting stops once the limit is passed
+     *
+     * @param selection are instances grouped by value
+     * @param limit is the count from which the exact count is not needed
+     * @return the number of instances, or a number greater than the limit
+     */
+    static long count(Collection<List<Model>> selection, long limit) {
+        long count = 0;
+        for (List<Model> models : selection) {
+            count += models.size();
+            if (count > limit) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private NavigableMap<String, List<Model>> prefixed(String prefix) {
+        if (prefix.isEmpty()) {
+            return byText;
+        }
+        char last = prefix.charAt(prefix.length() - 1);
+        if (last == Character.MAX_VALUE) {
+            //wider than needed, the selected instances are checked against the condition anyway
+            return byText.tailMap(prefix, true);
+        }
+        //the values starting with the prefix are the values before the prefix with its last character incremented
+        String end = prefix.substring(0, prefix.length() - 1) + (char) (last + 1);
+        return byText.subMap(prefix, true, end, false);
+    }
+
+    private static <K> NavigableMap<K, List<Model>> range(NavigableMap<K, List<Model>> sorted, K bound,
+            Condition condition) {
+        switch (condition.getOperator()) {
+            case GREATER:
+                return sorted.tailMap(bound, false);
+            case GREATER_OR_EQUAL:
+                return sorted.tailMap(bound, true);
+            case LESS:
+                return sorted.headMap(bound, false);
+            default:
+                return sorted.headMap(bound, true);
+        }
+    }
+}
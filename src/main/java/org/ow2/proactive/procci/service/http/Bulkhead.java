@@ -0,0 +1,127 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.http;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Limit the number of concurrent calls to an upstream service
+ * <p>
+ * A call over the limit waits for a bounded time that another call finishes, then it is refused, so a slow service
+ * can not hold the connections and the request threads needed by the other ones. No thread is blocked while the
+ * call waits, the permit is given by the call which finishes.
+ */
+public class Bulkhead {
+
+    private final int maxConcurrentCalls;
+
+    private int availablePermits;
+
+    //the calls waiting for a permit, in arrival order
+    private final Deque<CompletableFuture<Boolean>> waitingCalls = new ArrayDeque<>();
+
+    private final AtomicLong rejectedCalls = new AtomicLong();
+
+    public Bulkhead(int maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.availablePermits = maxConcurrentCalls;
+    }
+
+    /**
+     * Wait for a permit, at most for the given time
+     *
+     * @param maxWaitMillis is how long the call can wait for another one to finish
+     * @param scheduler refuses the call once the wait is over
+     * @return a future which is true if the call can start, it must then call {@link #release()} once finished, and
+     *         false if the call is refused
+     */
+    public CompletableFuture<Boolean> acquire(long maxWaitMillis, ScheduledExecutorService scheduler) {
+        CompletableFuture<Boolean> permit = new CompletableFuture<>();
+        synchronized (this) {
+            if (availablePermits > 0) {
+                availablePermits--;
+                permit.complete(true);
+                return permit;
+            }
+            if (maxWaitMillis > 0) {
+                waitingCalls.add(permit);
+            }
+        }
+        if (maxWaitMillis <= 0) {
+            rejectedCalls.incrementAndGet();
+            permit.complete(false);
+            return permit;
+        }
+        scheduler.schedule(() -> {
+            boolean expired;
+            synchronized (this) {
+                expired = waitingCalls.remove(permit);
+            }
+            if (expired) {
+                rejectedCalls.incrementAndGet();
+                permit.complete(false);
+            }
+        }, maxWaitMillis, TimeUnit.MILLISECONDS);
+        return permit;
+    }
+
+    /**
+     * Give the permit of a finished call to the first waiting call, or back to the bulkhead
+     */
+    public void release() {
+        CompletableFuture<Boolean> next;
+        synchronized (this) {
+            next = waitingCalls.poll();
+            if (next == null) {
+                availablePermits++;
+                return;
+            }
+        }
+        next.complete(true);
+    }
+
+    public synchronized int getActiveCalls() {
+        return maxConcurrentCalls - availablePermits;
+    }
+
+    public synchronized int getWaitingCalls() {
+        return waitingCalls.size();
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public long getRejectedCalls() {
+        return rejectedCalls.get();
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Stop calling an upstream service while it fails
+ * <p>
+ * The breaker is closed while the service is healthy. It records the outcome of the last calls and opens when the
+ * rate of failed calls or the rate of slow calls reaches its threshold. While it is open every call is refused at
+ * once. After the open duration it becomes half-open and lets a few trial calls through: the breaker closes if they
+ * all succeed in time and opens again otherwise.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private final String name;
+
+    private final int minimumCalls;
+
+    private final int failureRateThreshold;
+
+    private final int slowCallRateThreshold;
+
+    private final long slowCallDurationMillis;
+
+    private final long openDurationMillis;
+
+    private final int halfOpenCalls;
+
+    private final LongSupplier clock;
+
+    private final boolean[] failedOutcomes;
+
+    private final boolean[] slowOutcomes;
+
+    private final AtomicLong successfulCalls = new AtomicLong();
+
+    private final AtomicLong failedCalls = new AtomicLong();
+
+    private final AtomicLong slowCalls = new AtomicLong();
+
+    private final AtomicLong notPermittedCalls = new AtomicLong();
+
+    private State state = State.CLOSED;
+
+    private int nextOutcome;
+
+    private int recordedOutcomes;
+
+    private int failedInWindow;
+
+    private int slowInWindow;
+
+    private long openedAt;
+
+    private int halfOpenPermits;
+
+    private int halfOpenSuccesses;
+
+    private CircuitBreaker(Builder builder) {
+        this.name = builder.name;
+        this.minimumCalls = builder.minimumCalls;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDurationMillis = builder.slowCallDurationMillis;
+        this.openDurationMillis = builder.openDurationMillis;
+        this.halfOpenCalls = builder.halfOpenCalls;
+        this.clock = builder.clock;
+        this.failedOutcomes = new boolean[builder.windowSize];
+        this.slowOutcomes = new boolean[builder.windowSize];
+    }
+
+    /**
+     * Ask whether a call can be sent, a permitted call must then report its outcome with {@link #onSuccess(long)},
+     * {@link #onError(long)} or {@link #onIgnored()}
+     *
+     * @return true if the call can be sent
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openDurationMillis) {
+                notPermittedCalls.incrementAndGet();
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits >= halfOpenCalls) {
+                notPermittedCalls.incrementAndGet();
+                return false;
+            }
+            halfOpenPermits++;
+        }
+        return true;
+    }
+
+    /**
+     * Record a call which has succeeded
+     *
+     * @param durationMillis is how long the call took
+     */
+    public synchronized void onSuccess(long durationMillis) {
+        successfulCalls.incrementAndGet();
+        record(false, durationMillis);
+    }
+
+    /**
+     * Record a call which has failed
+     *
+     * @param durationMillis is how long the call took
+     */
+    public synchronized void onError(long durationMillis) {
+        failedCalls.incrementAndGet();
+        record(true, durationMillis);
+    }
+
+    /**
+     * Give back the permission of a call which has been abandoned by its caller without outcome
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+            halfOpenPermits--;
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openDurationMillis) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * @return the percentage of failed calls among the recorded ones, -1 while there are too few of them
+     */
+    public synchronized float getFailureRate() {
+        return rate(failedInWindow);
+    }
+
+    /**
+     * @return the percentage of slow calls among the recorded ones, -1 while there are too few of them
+     */
+    public synchronized float getSlowCallRate() {
+        return rate(slowInWindow);
+    }
+
+    public long getSuccessfulCalls() {
+        return successfulCalls.get();
+    }
+
+    public long getFailedCalls() {
+        return failedCalls.get();
+    }
+
+    public long getSlowCalls() {
+        return slowCalls.get();
+    }
+
+    public long getNotPermittedCalls() {
+        return notPermittedCalls.get();
+    }
+
+    private void record(boolean failed, long durationMillis) {
+        boolean slow = durationMillis >= slowCallDurationMillis;
+        if (slow) {
+            slowCalls.incrementAndGet();
+        }
+        if (state == State.HALF_OPEN) {
+            if (failed || slow) {
+                transitionTo(State.OPEN);
+            } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            //outcome of a call sent before the breaker opened
+            return;
+        }
+
+        if (recordedOutcomes == failedOutcomes.length) {
+            failedInWindow -= failedOutcomes[nextOutcome] ? 1 : 0;
+            slowInWindow -= slowOutcomes[nextOutcome] ? 1 : 0;
+        } else {
+            recordedOutcomes++;
+        }
+        failedOutcomes[nextOutcome] = failed;
+        slowOutcomes[nextOutcome] = slow;
+        failedInWindow += failed ? 1 : 0;
+        slowInWindow += slow ? 1 : 0;
+        nextOutcome = (nextOutcome + 1) % failedOutcomes.length;
+
+        if (rate(failedInWindow) >= failureRateThreshold || rate(slowInWindow) >= slowCallRateThreshold) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private float rate(int count) {
+        if (recordedOutcomes < minimumCalls) {
+            return -1;
+        }
+        return count * 100f / recordedOutcomes;
+    }
+
+    private void transitionTo(State newState) {
+        logger.warn("circuit breaker " + name + " goes from " + state + " to " + newState);
+        state = newState;
+        halfOpenPermits = 0;
+        halfOpenSuccesses = 0;
+        if (newState == State.OPEN) {
+            openedAt = clock.getAsLong();
+        }
+        if (newState == State.CLOSED) {
+            nextOutcome = 0;
+            recordedOutcomes = 0;
+            failedInWindow = 0;
+            slowInWindow = 0;
+        }
+    }
+
+    public static class Builder {
+
+        private final String name;
+
+        private int windowSize = 20;
+
+        private int minimumCalls = 10;
+
+        private int failureRateThreshold = 50;
+
+        private int slowCallRateThreshold = 100;
+
+        private long slowCallDurationMillis = 10000;
+
+        private long openDurationMillis = 30000;
+
+        private int halfOpenCalls = 3;
+
+        private LongSupplier clock = System::currentTimeMillis;
+
+        public Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder windowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        public Builder minimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        public Builder failureRateThreshold(int failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        public Builder slowCallRateThreshold(int slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        public Builder slowCallDurationMillis(long slowCallDurationMillis) {
+            this.slowCallDurationMillis = slowCallDurationMillis;
+            return this;
+        }
+
+        public Builder openDurationMillis(long openDurationMillis) {
+            this.openDurationMillis = openDurationMillis;
+            return this;
+        }
+
+        public Builder halfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+            return this;
+        }
+
+        Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.http;
+
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.ow2.proactive.procci.model.exception.DeadlineExceededException;
+import org.ow2.proactive.procci.model.exception.ServerException;
+import org.ow2.proactive.procci.model.utils.FutureUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Point in time after which a request is not worth answering anymore
+ * <p>
+ * The REST layer sets the deadline of the request on the servlet thread, the services and the clients read it
+ * with {@link #current()} and give each upstream call only the remaining time. An asynchronous call capturing the
+ * deadline on the calling thread keeps it on the thread which completes it.
+ */
+public class Deadline {
+
+    private static final Logger logger = LoggerFactory.getLogger(Deadline.class);
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * @param millis is the time budget from now
+     * @return a deadline expiring after the budget
+     */
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * @return the deadline of the request handled by the current thread, if any
+     */
+    public static Optional<Deadline> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Run an action with a deadline as the current one, the previous deadline is restored afterwards
+     *
+     * @param deadline is the deadline of the action, or null to run it without deadline
+     * @param action is the action to run
+     * @return the result of the action
+     */
+    public static <T> T within(Deadline deadline, Supplier<T> action) {
+        Deadline previous = CURRENT.get();
+        set(deadline);
+        try {
+            return action.get();
+        } finally {
+            set(previous);
+        }
+    }
+
+    /**
+     * Wait for the result of an asynchronous call, at most until the deadline of the current request
+     * <p>
+     * The failures are thrown as by {@link FutureUtils#join(CompletableFuture)}
+     *
+     * @param future is the asynchronous call
+     * @return the result of the call
+     * @throws DeadlineExceededException if the deadline of the current request passes first
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        Optional<Deadline> deadline = current();
+        if (!deadline.isPresent()) {
+            return FutureUtils.join(future);
+        }
+        try {
+            return future.get(Math.max(0, deadline.get().remainingMillis()), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | CancellationException ex) {
+            throw FutureUtils.unwrap(ex);
+        } catch (TimeoutException ex) {
+            throw new DeadlineExceededException("waiting for an upstream call");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for an asynchronous call", ex);
+            throw new ServerException();
+        }
+    }
+
+    /**
+     * Set the deadline of the request handled by the current thread
+     *
+     * @param deadline is the new deadline, or null to remove it
+     */
+    public static void set(Deadline deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+
+    /**
+     * @return the time left before the deadline in milliseconds, zero or negative once it has passed
+     */
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Fail fast if the deadline has passed
+     *
+     * @param operation describes what was about to be done
+     * @throws DeadlineExceededException if the deadline has passed
+     */
+    public void check(String operation) {
+        if (isExpired()) {
+            throw new DeadlineExceededException(operation);
+        }
+    }
+}
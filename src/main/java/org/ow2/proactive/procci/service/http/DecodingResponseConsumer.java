@@ -0,0 +1,136 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentBufferEntity;
+import org.apache.http.nio.entity.ContentInputStream;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.nio.util.SimpleInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+
+/**
+ * Decode the body of a successful response while it is received, instead of buffering it whole first
+ * <p>
+ * The body goes through a buffer of fixed size to a decoder running on another thread, the connection stops reading
+ * while the buffer is full, so the memory used does not grow with the size of the body. The response is given with
+ * a {@link DecodedEntity} once the body is received. The body of the other responses is buffered, to be read as a
+ * string for the logs.
+ *
+ * @param <T> is the type of the decoded body
+ */
+class DecodingResponseConsumer<T> extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+    private static final int ERROR_BUFFER_BYTES = 4096;
+
+    private final ResponseDecoder<T> decoder;
+
+    private final Executor decodeExecutor;
+
+    private final int bufferBytes;
+
+    private final CompletableFuture<T> decoded = new CompletableFuture<>();
+
+    private HttpResponse response;
+
+    private SharedInputBuffer streamedBody;
+
+    private SimpleInputBuffer bufferedBody;
+
+    DecodingResponseConsumer(ResponseDecoder<T> decoder, Executor decodeExecutor, int bufferBytes) {
+        this.decoder = decoder;
+        this.decodeExecutor = decodeExecutor;
+        this.bufferBytes = bufferBytes;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+        this.response = response;
+        if (response.getStatusLine().getStatusCode() < 300) {
+            streamedBody = new SharedInputBuffer(bufferBytes, HeapByteBufferAllocator.INSTANCE);
+            decodeExecutor.execute(this::decode);
+        }
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+        if (streamedBody == null) {
+            long length = entity.getContentLength();
+            bufferedBody = new SimpleInputBuffer(length > 0 && length < ERROR_BUFFER_BYTES ? (int) length
+                                                                                           : ERROR_BUFFER_BYTES,
+                                                 HeapByteBufferAllocator.INSTANCE);
+        }
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder contentDecoder, IOControl ioControl) throws IOException {
+        if (streamedBody != null) {
+            streamedBody.consumeContent(contentDecoder, ioControl);
+        } else {
+            bufferedBody.consumeContent(contentDecoder);
+        }
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) {
+        if (streamedBody != null) {
+            //a response without body ends the stream of the decoder too
+            streamedBody.close();
+            response.setEntity(new DecodedEntity<>(decoded));
+        } else if (bufferedBody != null) {
+            response.setEntity(new ContentBufferEntity(response.getEntity(), bufferedBody));
+        }
+        return response;
+    }
+
+    @Override
+    protected void releaseResources() {
+        //the decoder keeps reading the end of a received body, it is only stopped when the exchange fails
+        if (getResult() == null && streamedBody != null) {
+            streamedBody.shutdown();
+        }
+    }
+
+    private void decode() {
+        try (InputStream content = new ContentInputStream(streamedBody)) {
+            decoded.complete(decoder.decode(content));
+        } catch (IOException | RuntimeException ex) {
+            decoded.completeExceptionally(ex);
+        }
+    }
+}
@@ -0,0 +1,603 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.http;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.ow2.proactive.procci.model.exception.DeadlineExceededException;
+import org.ow2.proactive.procci.model.exception.ServerException;
+import org.ow2.proactive.procci.model.exception.UpstreamUnavailableException;
+import org.ow2.proactive.procci.model.utils.FutureUtils;
+import org.ow2.proactive.procci.service.ConnectorConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+/**
+ * Shared HTTP transport for every call to cloud-automation-service and to the scheduler
+ * <p>
+ * The requests are sent by a non-blocking client, so no thread waits for the upstream answer. The connections
+ * are pooled and kept alive between the requests, the idle and expired ones are evicted in background.
+ * Every request is bounded by the configured timeouts and by the deadline of the REST request it serves.
+ * Each upstream service has its own circuit breaker and bulkhead, so a failing or slow service does not take the
+ * connections and the threads needed to call the other ones.
+ * The idempotent requests can be sent again after a transient failure, and the reads can be hedged by a second
+ * request when the first one is slower than usual.
+ */
+@Service
+@ManagedResource(objectName = "org.ow2.proactive.procci:name=HttpTransport", description = "upstream http calls")
+public class HttpTransport {
+
+    private final Logger logger = LoggerFactory.getLogger(HttpTransport.class);
+
+    @Autowired
+    private ConnectorConfiguration configuration;
+
+    private PoolingNHttpClientConnectionManager connectionManager;
+
+    private CloseableHttpAsyncClient httpClient;
+
+    private ScheduledExecutorService scheduler;
+
+    private RequestConfig defaultRequestConfig;
+
+    private final Map<Upstream, CircuitBreaker> circuitBreakers = new EnumMap<>(Upstream.class);
+
+    private final Map<Upstream, Bulkhead> bulkheads = new EnumMap<>(Upstream.class);
+
+    private final Map<Upstream, RetryBudget> retryBudgets = new EnumMap<>(Upstream.class);
+
+    private final Map<Upstream, LatencyTracker> latencies = new EnumMap<>(Upstream.class);
+
+    private final Map<Upstream, AtomicLong> hedgedCalls = new EnumMap<>(Upstream.class);
+
+    private RetryPolicy retryPolicy;
+
+    private ExecutorService decodeExecutor;
+
+    private static final int LATENCY_SAMPLES = 100;
+
+    private static final int DECODE_BUFFER_BYTES = 64 * 1024;
+
+    private static final int HEDGING_PERCENTILE = 95;
+
+    @PostConstruct
+    public void init() throws IOReactorException {
+        connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(IOReactorConfig.DEFAULT));
+        connectionManager.setMaxTotal(configuration.getPoolMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(configuration.getPoolMaxPerRoute());
+
+        defaultRequestConfig = RequestConfig.custom()
+                                            .setConnectTimeout((int) configuration.getConnectTimeoutMillis())
+                                            .setSocketTimeout((int) configuration.getSocketTimeoutMillis())
+                                            .setConnectionRequestTimeout((int) configuration.getPoolAcquireTimeoutMillis())
+                                            .build();
+
+        httpClient = HttpAsyncClients.custom()
+                                     .setConnectionManager(connectionManager)
+                                     .setKeepAliveStrategy(keepAliveStrategy())
+                                     .setDefaultRequestConfig(defaultRequestConfig)
+                                     .build();
+        httpClient.start();
+
+        long idleTimeoutMillis = configuration.getPoolIdleTimeoutMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("http-transport-scheduler")
+                                                                                         .setDaemon(true)
+                                                                                         .build());
+        scheduler.scheduleWithFixedDelay(() -> {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+        }, idleTimeoutMillis, idleTimeoutMillis, TimeUnit.MILLISECONDS);
+
+        for (Upstream upstream : Upstream.values()) {
+            circuitBreakers.put(upstream,
+                                new CircuitBreaker.Builder(upstream.name()).windowSize(configuration.getCircuitBreakerWindowSize())
+                                                                           .minimumCalls(configuration.getCircuitBreakerMinimumCalls())
+                                                                           .failureRateThreshold(configuration.getCircuitBreakerFailureRateThreshold())
+                                                                           .slowCallRateThreshold(configuration.getCircuitBreakerSlowCallRateThreshold())
+                                                                           .slowCallDurationMillis(configuration.getCircuitBreakerSlowCallDurationMillis())
+                                                                           .openDurationMillis(configuration.getCircuitBreakerOpenDurationMillis())
+                                                                           .halfOpenCalls(configuration.getCircuitBreakerHalfOpenCalls())
+                                                                           .build());
+            bulkheads.put(upstream, new Bulkhead(configuration.getMaxConcurrentCalls(upstream)));
+            retryBudgets.put(upstream,
+                             new RetryBudget(configuration.getRetryBudgetPercent(),
+                                             configuration.getRetryBudgetMaxTokens()));
+            latencies.put(upstream, new LatencyTracker(LATENCY_SAMPLES));
+            hedgedCalls.put(upstream, new AtomicLong());
+        }
+        retryPolicy = new RetryPolicy(configuration.getRetryMaxAttempts(),
+                                      configuration.getRetryBaseDelayMillis(),
+                                      configuration.getRetryMaxDelayMillis());
+        //a decoder reads the body of a call holding a bulkhead permit, so there is at most one per permit
+        int maxConcurrentCalls = 0;
+        for (Upstream upstream : Upstream.values()) {
+            maxConcurrentCalls += configuration.getMaxConcurrentCalls(upstream);
+        }
+        decodeExecutor = Executors.newFixedThreadPool(maxConcurrentCalls,
+                                                      new ThreadFactoryBuilder().setNameFormat("http-decoder-%d")
+                                                                                .setDaemon(true)
+                                                                                .build());
+
+        logger.info("http connection pool started with " + configuration.getPoolMaxTotal() + " connections, " +
+                    configuration.getPoolMaxPerRoute() + " per route");
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (decodeExecutor != null) {
+            decodeExecutor.shutdownNow();
+        }
+        if (httpClient != null) {
+            httpClient.close();
+        }
+    }
+
+    /**
+     * Send the request on a pooled connection without blocking the calling thread, within the deadline of the
+     * request handled by the calling thread
+     *
+     * @param upstream is the service which receives the request
+     * @param request is the request to send
+     * @return the future response of the server
+     * @see #execute(Upstream, HttpUriRequest, Optional)
+     */
+    public CompletableFuture<HttpResponse> execute(Upstream upstream, HttpUriRequest request) {
+        return execute(upstream, request, Deadline.current());
+    }
+
+    /**
+     * Send the request on a pooled connection without blocking the calling thread
+     * <p>
+     * The response body is fully read before the future completes and the connection is given back to the pool,
+     * so the response does not need to be closed. Cancelling the future aborts the request.
+     * The connect, socket and pool timeouts are reduced to the time left before the deadline, and the request is
+     * aborted when the deadline passes.
+     * When the bulkhead of the service is full, the request waits that another one finishes, at most for the
+     * configured time and until the deadline. It is refused without being sent when the wait is over or when the
+     * circuit breaker of the service is open. The failures, the 5xx responses and the slow calls are reported to the
+     * circuit breaker.
+     *
+     * @param upstream is the service which receives the request
+     * @param request is the request to send
+     * @param deadline is when the response is not needed anymore
+     * @return the future response of the server, it fails with a ServerException if the request can not be sent or
+     *         the response can not be read, with a DeadlineExceededException if the deadline passes first and with
+     *         an UpstreamUnavailableException if the request is refused
+     */
+    public CompletableFuture<HttpResponse> execute(Upstream upstream, HttpUriRequest request,
+            Optional<Deadline> deadline) {
+        return execute(upstream, request, deadline, HttpAsyncMethods::createConsumer);
+    }
+
+    private CompletableFuture<HttpResponse> execute(Upstream upstream, HttpUriRequest request,
+            Optional<Deadline> deadline, Supplier<HttpAsyncResponseConsumer<HttpResponse>> consumerFactory) {
+        String operation = request.getMethod() + " " + request.getURI();
+        CompletableFuture<HttpResponse> refused = new CompletableFuture<>();
+        if (deadline.isPresent() && deadline.get().isExpired()) {
+            logger.warn("Deadline exceeded before " + operation);
+            refused.completeExceptionally(new DeadlineExceededException(operation));
+            return refused;
+        }
+
+        Bulkhead bulkhead = bulkheads.get(upstream);
+        long maxWaitMillis = deadline.map(limit -> Math.min(limit.remainingMillis(),
+                                                            configuration.getBulkheadMaxWaitMillis()))
+                                     .orElse(configuration.getBulkheadMaxWaitMillis());
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        bulkhead.acquire(maxWaitMillis, scheduler).thenAccept(granted -> {
+            if (!granted) {
+                logger.warn("Too many calls in progress to " + upstream + ", " + operation + " is refused");
+                result.completeExceptionally(new UpstreamUnavailableException(upstream.name(), "bulkhead full"));
+            } else if (result.isDone()) {
+                //cancelled while waiting
+                bulkhead.release();
+            } else {
+                try {
+                    send(upstream, request, operation, deadline, consumerFactory, bulkhead, result);
+                } catch (RuntimeException ex) {
+                    //the exchange has not started, nothing else gives the permit back
+                    logger.error("Unable to send " + operation + " : " + ex.getMessage());
+                    bulkhead.release();
+                    result.completeExceptionally(new ServerException());
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Send the request once the bulkhead has given a permit, the permit is released when the exchange finishes
+     * <p>
+     * If the exchange can not be started, the exception is thrown and the permit is left to the caller
+     */
+    private void send(Upstream upstream, HttpUriRequest request, String operation, Optional<Deadline> deadline,
+            Supplier<HttpAsyncResponseConsumer<HttpResponse>> consumerFactory, Bulkhead bulkhead,
+            CompletableFuture<HttpResponse> result) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(upstream);
+        if (!circuitBreaker.tryAcquirePermission()) {
+            bulkhead.release();
+            logger.warn("The circuit breaker of " + upstream + " is open, " + operation + " is refused");
+            result.completeExceptionally(new UpstreamUnavailableException(upstream.name(), "circuit breaker open"));
+            return;
+        }
+        long start = System.nanoTime();
+
+        CompletableFuture<HttpResponse> exchangeResult = new CompletableFuture<>();
+        HttpClientContext context = HttpClientContext.create();
+        deadline.ifPresent(limit -> context.setRequestConfig(requestConfigWithin(limit.remainingMillis())));
+        FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                exchangeResult.complete(response);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                logger.error("Unable to send " + operation + " : " + ex.getMessage());
+                exchangeResult.completeExceptionally(new ServerException());
+            }
+
+            @Override
+            public void cancelled() {
+                exchangeResult.cancel(false);
+            }
+        };
+        Future<HttpResponse> exchange = null;
+        Optional<ScheduledFuture<?>> timeout;
+        try {
+            exchange = httpClient.execute(HttpAsyncMethods.create(request), consumerFactory.get(), context, callback);
+            timeout = deadline.map(limit -> scheduler.schedule(() -> {
+                if (exchangeResult.completeExceptionally(new DeadlineExceededException(operation))) {
+                    logger.warn("Deadline exceeded during " + operation);
+                }
+            }, limit.remainingMillis(), TimeUnit.MILLISECONDS));
+        } catch (RuntimeException ex) {
+            circuitBreaker.onIgnored();
+            if (exchange != null) {
+                exchange.cancel(true);
+            }
+            throw ex;
+        }
+        Future<HttpResponse> startedExchange = exchange;
+
+        //the outcome is recorded before the caller and the next waiting call see it, so the guards are up to date
+        exchangeResult.whenComplete((response, ex) -> {
+            timeout.ifPresent(scheduled -> scheduled.cancel(false));
+            if (!startedExchange.isDone()) {
+                startedExchange.cancel(true);
+            }
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (exchangeResult.isCancelled() || ex instanceof DeadlineExceededException) {
+                //the caller gave up, it tells nothing about the health of the upstream
+                circuitBreaker.onIgnored();
+            } else if (ex != null || response.getStatusLine().getStatusCode() >= 500) {
+                circuitBreaker.onError(durationMillis);
+            } else {
+                circuitBreaker.onSuccess(durationMillis);
+                latencies.get(upstream).record(durationMillis);
+            }
+            bulkhead.release();
+            if (exchangeResult.isCancelled()) {
+                result.cancel(false);
+            } else if (ex != null) {
+                result.completeExceptionally(ex);
+            } else {
+                result.complete(response);
+            }
+        });
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                exchangeResult.cancel(false);
+            }
+        });
+    }
+
+    /**
+     * Send an idempotent request, within the deadline of the request handled by the calling thread, and send it
+     * again if it fails on the way or if the server answers with a 5xx status
+     * <p>
+     * The attempts are spaced by an exponential backoff with jitter, they stop when the retry budget of the service
+     * is spent or when the next one would start after the deadline. The requests refused by the circuit breaker or
+     * the bulkhead are not sent again. When hedging is enabled, a GET which is still running after the usual
+     * latency of the service is sent a second time and the first response is kept.
+     *
+     * @param upstream is the service which receives the request
+     * @param requestFactory creates the request for each attempt, it must be a GET, a PUT or a DELETE
+     * @return the future response of the last attempt, see {@link #execute(Upstream, HttpUriRequest, Optional)}
+     */
+    public CompletableFuture<HttpResponse> executeWithRetry(Upstream upstream,
+            Supplier<HttpUriRequest> requestFactory) {
+        return retry(upstream, requestFactory, HttpAsyncMethods::createConsumer);
+    }
+
+    /**
+     * Send an idempotent request like {@link #executeWithRetry(Upstream, Supplier)} and decode the body of a
+     * successful response while it is received
+     * <p>
+     * The body is given to the decoder through a buffer of fixed size, the connection stops reading while the decoder
+     * is behind, so the whole body is never held in memory. The entity of a successful response is a
+     * {@link DecodedEntity}, the body of the other responses is buffered as usual.
+     *
+     * @param upstream is the service which receives the request
+     * @param requestFactory creates the request for each attempt, it must be a GET, a PUT or a DELETE
+     * @param decoder reads the body of a successful response on a decoder thread
+     * @return the future response of the last attempt
+     */
+    public <T> CompletableFuture<HttpResponse> executeWithRetry(Upstream upstream,
+            Supplier<HttpUriRequest> requestFactory, ResponseDecoder<T> decoder) {
+        return retry(upstream,
+                     requestFactory,
+                     () -> new DecodingResponseConsumer<>(decoder, decodeExecutor, DECODE_BUFFER_BYTES));
+    }
+
+    private CompletableFuture<HttpResponse> retry(Upstream upstream, Supplier<HttpUriRequest> requestFactory,
+            Supplier<HttpAsyncResponseConsumer<HttpResponse>> consumerFactory) {
+        Optional<Deadline> deadline = Deadline.current();
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        retryBudgets.get(upstream).onCall();
+        attempt(upstream, requestFactory, consumerFactory, deadline, 1, result);
+        return result;
+    }
+
+    private void attempt(Upstream upstream, Supplier<HttpUriRequest> requestFactory,
+            Supplier<HttpAsyncResponseConsumer<HttpResponse>> consumerFactory, Optional<Deadline> deadline,
+            int attempt, CompletableFuture<HttpResponse> result) {
+        if (result.isDone()) {
+            return;
+        }
+        HttpUriRequest request = requestFactory.get();
+        CompletableFuture<HttpResponse> call = HttpGet.METHOD_NAME.equals(request.getMethod()) &&
+                                               configuration.isHedgingEnabled() ? executeHedged(upstream,
+                                                                                                request,
+                                                                                                requestFactory,
+                                                                                                consumerFactory,
+                                                                                                deadline)
+                                                                                : execute(upstream,
+                                                                                          request,
+                                                                                          deadline,
+                                                                                          consumerFactory);
+        result.whenComplete((response, ex) -> call.cancel(true));
+        call.whenComplete((response, ex) -> {
+            boolean transientFailure = ex != null ? isTransient(FutureUtils.unwrap(ex))
+                                                  : response.getStatusLine()
+                                                            .getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+            long backoffMillis = retryPolicy.backoffMillis(attempt);
+            if (!transientFailure || !retryPolicy.canRetry(attempt) ||
+                deadline.map(limit -> limit.remainingMillis() <= backoffMillis).orElse(false) ||
+                !retryBudgets.get(upstream).tryRetry()) {
+                complete(result, response, ex);
+                return;
+            }
+            logger.warn("Attempt " + attempt + " of " + request.getMethod() + " " + request.getURI() +
+                        " failed, sending it again in " + backoffMillis + " ms");
+            scheduler.schedule(() -> attempt(upstream, requestFactory, consumerFactory, deadline, attempt + 1, result),
+                               backoffMillis,
+                               TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Send the request and, if it has not been answered after the usual latency of the service, send it a second
+     * time; the first successful response is kept and the other request is cancelled
+     */
+    private CompletableFuture<HttpResponse> executeHedged(Upstream upstream, HttpUriRequest request,
+            Supplier<HttpUriRequest> requestFactory, Supplier<HttpAsyncResponseConsumer<HttpResponse>> consumerFactory,
+            Optional<Deadline> deadline) {
+        CompletableFuture<HttpResponse> primary = execute(upstream, request, deadline, consumerFactory);
+        OptionalLong hedgeDelayMillis = latencies.get(upstream).percentile(HEDGING_PERCENTILE);
+        if (!hedgeDelayMillis.isPresent()) {
+            return primary;
+        }
+
+        HedgedCall hedgedCall = new HedgedCall(primary);
+        ScheduledFuture<?> hedge = scheduler.schedule(() -> {
+            if (hedgedCall.canHedge() && retryBudgets.get(upstream).tryRetry()) {
+                hedgedCalls.get(upstream).incrementAndGet();
+                logger.debug(request.getMethod() + " " + request.getURI() + " is slower than " +
+                             hedgeDelayMillis.getAsLong() + " ms, sending it a second time");
+                hedgedCall.add(execute(upstream, requestFactory.get(), deadline, consumerFactory));
+            }
+        }, hedgeDelayMillis.getAsLong(), TimeUnit.MILLISECONDS);
+        hedgedCall.result.whenComplete((response, ex) -> hedge.cancel(false));
+        return hedgedCall.result;
+    }
+
+    /**
+     * The calls sent for the same hedged request, the result is the first successful response or the last failure
+     */
+    private static class HedgedCall {
+
+        private final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+
+        private int pendingCalls;
+
+        HedgedCall(CompletableFuture<HttpResponse> primary) {
+            add(primary);
+        }
+
+        synchronized boolean canHedge() {
+            return !result.isDone() && pendingCalls > 0;
+        }
+
+        synchronized void add(CompletableFuture<HttpResponse> call) {
+            pendingCalls++;
+            result.whenComplete((response, ex) -> call.cancel(true));
+            call.whenComplete(this::onCallComplete);
+        }
+
+        private void onCallComplete(HttpResponse response, Throwable ex) {
+            boolean last;
+            synchronized (this) {
+                last = --pendingCalls == 0;
+            }
+            if (ex == null && response.getStatusLine().getStatusCode() < HttpStatus.SC_INTERNAL_SERVER_ERROR ||
+                last) {
+                complete(result, response, ex);
+            }
+        }
+    }
+
+    private static void complete(CompletableFuture<HttpResponse> result, HttpResponse response, Throwable ex) {
+        if (ex != null) {
+            result.completeExceptionally(FutureUtils.unwrap(ex));
+        } else {
+            result.complete(response);
+        }
+    }
+
+    /**
+     * @return true if the request failed on the way, not because it has been refused or because of the deadline
+     */
+    private static boolean isTransient(RuntimeException ex) {
+        return ex instanceof ServerException && !(ex instanceof DeadlineExceededException) &&
+               !(ex instanceof UpstreamUnavailableException);
+    }
+
+    public CircuitBreaker getCircuitBreaker(Upstream upstream) {
+        return circuitBreakers.get(upstream);
+    }
+
+    public Bulkhead getBulkhead(Upstream upstream) {
+        return bulkheads.get(upstream);
+    }
+
+    @ManagedAttribute(description = "State of the circuit breaker of each upstream service")
+    public Map<String, String> getCircuitBreakerStates() {
+        return describe(circuitBreakers, breaker -> breaker.getState() + ", failure rate " +
+                                                    breaker.getFailureRate() + "%, slow call rate " +
+                                                    breaker.getSlowCallRate() + "%, " +
+                                                    breaker.getNotPermittedCalls() + " calls not permitted");
+    }
+
+    @ManagedAttribute(description = "Calls in progress, waiting and refused calls of each upstream service")
+    public Map<String, String> getBulkheadStates() {
+        return describe(bulkheads, bulkhead -> bulkhead.getActiveCalls() + "/" + bulkhead.getMaxConcurrentCalls() +
+                                               " calls in progress, " + bulkhead.getWaitingCalls() +
+                                               " calls waiting, " + bulkhead.getRejectedCalls() +
+                                               " calls refused");
+    }
+
+    @ManagedAttribute(description = "Retries and hedged requests of each upstream service")
+    public Map<String, String> getRetryStates() {
+        return describe(retryBudgets, budget -> budget.getRetries() + " retries, " + budget.getExhausted() +
+                                                " retries refused by the budget");
+    }
+
+    @ManagedAttribute(description = "Requests sent a second time because the first one was slow")
+    public Map<String, Long> getHedgedCalls() {
+        Map<String, Long> calls = new LinkedHashMap<>();
+        hedgedCalls.forEach((upstream, count) -> calls.put(upstream.name(), count.get()));
+        return calls;
+    }
+
+    public RetryBudget getRetryBudget(Upstream upstream) {
+        return retryBudgets.get(upstream);
+    }
+
+    private <T> Map<String, String> describe(Map<Upstream, T> guards, Function<T, String> description) {
+        Map<String, String> states = new LinkedHashMap<>();
+        guards.forEach((upstream, guard) -> states.put(upstream.name(), description.apply(guard)));
+        return states;
+    }
+
+    /**
+     * Give the state of the connection pool
+     *
+     * @return the number of leased, pending, available connections and the pool limit
+     */
+    @ManagedAttribute(description = "Leased, pending and available connections of the pool")
+    public PoolStats getPoolStatistics() {
+        return connectionManager.getTotalStats();
+    }
+
+    private RequestConfig requestConfigWithin(long remainingMillis) {
+        int budget = (int) Math.max(1, Math.min(Integer.MAX_VALUE, remainingMillis));
+        return RequestConfig.copy(defaultRequestConfig)
+                            .setConnectTimeout(Math.min(defaultRequestConfig.getConnectTimeout(), budget))
+                            .setSocketTimeout(Math.min(defaultRequestConfig.getSocketTimeout(), budget))
+                            .setConnectionRequestTimeout(Math.min(defaultRequestConfig.getConnectionRequestTimeout(),
+                                                                  budget))
+                            .build();
+    }
+
+    /**
+     * Keep a connection alive as long as the server allows it, bounded by the configured duration
+     */
+    private ConnectionKeepAliveStrategy keepAliveStrategy() {
+        long keepAliveMillis = configuration.getPoolKeepAliveMillis();
+        return (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response,
+                                                                                                    context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+        };
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.http;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+
+/**
+ * Keep the duration of the last successful calls to an upstream service in order to know its usual latency
+ */
+public class LatencyTracker {
+
+    private final long[] durations;
+
+    private int next;
+
+    private int size;
+
+    /**
+     * @param capacity is the number of durations kept
+     */
+    public LatencyTracker(int capacity) {
+        this.durations = new long[capacity];
+    }
+
+    public synchronized void record(long durationMillis) {
+        durations[next] = durationMillis;
+        next = (next + 1) % durations.length;
+        size = Math.min(size + 1, durations.length);
+    }
+
+    /**
+     * @param percentile is between 1 and 100
+     * @return the duration under which the given percentage of the recorded calls have completed, empty until the
+     *         buffer is full
+     */
+    public OptionalLong percentile(int percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (size < durations.length) {
+                return OptionalLong.empty();
+            }
+            sorted = durations.clone();
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return OptionalLong.of(sorted[Math.max(0, rank)]);
+    }
+}
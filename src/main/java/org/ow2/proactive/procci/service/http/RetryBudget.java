@@ -0,0 +1,89 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Limit the extra load the retries and the hedged requests put on an upstream service
+ * <p>
+ * Each call earns a fraction of a token and each retry spends a whole one, so in the long run the retries are at
+ * most the given percentage of the calls. A few tokens are available at start and they can not pile up beyond
+ * that, so a service which is down gets at most a short burst of retries.
+ */
+public class RetryBudget {
+
+    private final double tokensPerCall;
+
+    private final double maxTokens;
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private final AtomicLong exhausted = new AtomicLong();
+
+    private double tokens;
+
+    /**
+     * @param percent   is the share of retries allowed relatively to the calls
+     * @param maxTokens is the number of retries which can be made in a row
+     */
+    public RetryBudget(int percent, int maxTokens) {
+        this.tokensPerCall = percent / 100.0;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+    }
+
+    public synchronized void onCall() {
+        tokens = Math.min(maxTokens, tokens + tokensPerCall);
+    }
+
+    /**
+     * @return true if a retry can be made, the retry is then counted
+     */
+    public boolean tryRetry() {
+        synchronized (this) {
+            if (tokens >= 1) {
+                tokens -= 1;
+                retries.incrementAndGet();
+                return true;
+            }
+        }
+        exhausted.incrementAndGet();
+        return false;
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return the number of retries refused because the budget was spent
+     */
+    public long getExhausted() {
+        return exhausted.get();
+    }
+}
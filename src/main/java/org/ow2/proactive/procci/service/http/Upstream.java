@@ -23,20 +23,13 @@
  * If needed, contact us to obtain a release under GPL Version 2 or 3
  * or a different license than the AGPL.
  */
-package org.ow2.proactive.procci.service;
-
-import static com.google.common.truth.Truth.assertThat;
-
-import org.junit.Test;
-
+package org.ow2.proactive.procci.service.http;
 
 /**
- * Created by the Activeeon team  on 23/06/16.
+ * The services called by the connector, each one has its own circuit breaker and bulkhead
  */
-public class RequestUtilsTest {
-
-    @Test
-    public void getPropertyTest() {
-        assertThat(new RequestUtils().getProperty("scheduler.login.endpoint")).isNotEmpty();
-    }
+public enum Upstream {
+    INSTANCES,
+    VARIABLES,
+    SCHEDULER_LOGIN
 }
@@ -27,8 +27,15 @@ package org.ow2.proactive.procci.service.occi;
 
 import static org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelAttributes.ID_NAME;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import org.ow2.proactive.procci.model.cloud.automation.Model;
@@ -36,13 +43,19 @@ import org.ow2.proactive.procci.model.exception.ClientException;
 import org.ow2.proactive.procci.model.occi.infrastructure.ComputeBuilder;
 import org.ow2.proactive.procci.model.occi.infrastructure.constants.InfrastructureIdentifiers;
 import org.ow2.proactive.procci.model.occi.metamodel.Entity;
+import org.ow2.proactive.procci.model.occi.metamodel.Mixin;
 import org.ow2.proactive.procci.model.occi.metamodel.Resource;
 import org.ow2.proactive.procci.model.occi.metamodel.ResourceBuilder;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.EntityRendering;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.RenderingFields;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.ResourceRendering;
 import org.ow2.proactive.procci.model.occi.platform.bigdata.SwarmBuilder;
 import org.ow2.proactive.procci.model.occi.platform.bigdata.constants.BigDataIdentifiers;
 import org.ow2.proactive.procci.model.utils.ConvertUtils;
+import org.ow2.proactive.procci.model.utils.FutureUtils;
 import org.ow2.proactive.procci.service.CloudAutomationInstanceClient;
+import org.ow2.proactive.procci.service.InstanceFilter;
+import org.ow2.proactive.procci.service.http.Deadline;
 import org.ow2.proactive.procci.service.transformer.TransformerProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -54,6 +67,8 @@ import org.springframework.stereotype.Component;
 @Component
 public class InstanceService {
 
+    private static final String MIXINS_FREE_ENTITY = "mixins free entity";
+
     @Autowired
     private CloudAutomationInstanceClient cloudAutomationInstanceClient;
 
@@ -79,26 +94,206 @@ public class InstanceService {
      * @throws ClientException
      */
     public Optional<Entity> getMixinsFreeEntity(String id) {
-        return cloudAutomationInstanceClient.getInstanceByVariable(ID_NAME, ConvertUtils.formatURL(id))
-                                            .map(model -> new ComputeBuilder(model).build());
+        return Optional.ofNullable(getMixinsFreeEntities(Collections.singleton(id)).get(id));
+    }
+
+    /**
+     * Get several entities without mixins, all the entities are looked up in the same list of instances
+     * <p>
+     * The entities already loaded by the current request are given again without lookup
+     *
+     * @param ids are the ids of the entities
+     * @return the entities by id, the ids without instance are not in the map
+     * @throws ClientException
+     */
+    public Map<String, Entity> getMixinsFreeEntities(Set<String> ids) {
+        return RequestIdentityMap.getAll(MIXINS_FREE_ENTITY, ids, this::loadMixinsFreeEntities);
+    }
+
+    private Map<String, Entity> loadMixinsFreeEntities(Set<String> ids) {
+        Map<String, String> urls = new HashMap<>();
+        ids.forEach(id -> urls.put(id, ConvertUtils.formatURL(id)));
+        Map<String, Model> models = cloudAutomationInstanceClient.getInstancesByVariable(ID_NAME, urls.values());
+
+        Map<String, Entity> entities = new HashMap<>();
+        urls.forEach((id, url) -> Optional.ofNullable(models.get(url))
+                                          .ifPresent(model -> entities.put(id, new ComputeBuilder(model).build())));
+        return entities;
     }
 
     /**
      * Get the list of entity rendering from all the entities created
+     * <p>
+     * The mixins of all the entities are resolved together, each mixin is read once
      *
      * @return a list of entity rendering
      * @throws ClientException
      */
     public List<EntityRendering> getInstancesRendering(MixinService mixinService) {
+        return Deadline.join(getInstancesRenderingAsync(mixinService));
+    }
+
+    /**
+     * Get the list of entity rendering from all the entities created without waiting for cloud automation
+     *
+     * @return the future list of entity rendering
+     */
+    public CompletableFuture<List<EntityRendering>> getInstancesRenderingAsync(MixinService mixinService) {
+        RequestContext context = RequestContext.current();
+        return getInstancesBuildersAsync().thenCompose(resourceBuilders -> context.run(() -> getRenderingsAsync(resourceBuilders,
+                                                                                                                  mixinService,
+                                                                                                                  RenderingFields.all())));
+    }
+
+    /**
+     * Get the builders of all the entities created, without their mixins
+     *
+     * @return a list of resource builders
+     */
+    public List<ResourceBuilder> getInstancesBuilders() {
+        return Deadline.join(getInstancesBuildersAsync());
+    }
+
+    /**
+     * Get the builders of all the entities created, without their mixins and without waiting for cloud automation
+     *
+     * @return the future list of resource builders
+     */
+    public CompletableFuture<List<ResourceBuilder>> getInstancesBuildersAsync() {
+        return cloudAutomationInstanceClient.getModelsAsync()
+                                            .thenApply(models -> models.stream()
+                                                                       .filter(model -> model.getVariables()
+                                                                                             .containsKey(ID_NAME))
+                                                                       .map(model -> getResourceBuilder(model))
+                                                                       .collect(Collectors.toList()));
+    }
+
+    /**
+     * Get a page of the entities created which match a filter, ordered by id and without their mixins
+     * <p>
+     * The variable conditions are evaluated on the local instance index, the entities carrying the mixins of the
+     * filter are read from the mixin references
+     *
+     * @param serviceModel restricts the page to the entities of a cloud automation model, or empty for all of them
+     * @param filter gives the conditions the entities meet
+     * @param afterId is the id of the last entity of the previous page, or empty for the first page
+     * @param limit is the maximum number of entities in the page
+     * @param mixinService gives the entities carrying a mixin
+     * @return the builders of at most limit matching entities whose id follows afterId
+     */
+    public List<ResourceBuilder> getInstancesBuilders(Optional<String> serviceModel, InstanceFilter filter,
+            Optional<String> afterId, int limit, MixinService mixinService) {
+        return Deadline.join(getInstancesBuildersAsync(serviceModel, filter, afterId, limit, mixinService));
+    }
+
+    /**
+     * Get a page of the entities created which match a filter without waiting for cloud automation, the entities
+     * carrying the mixins of the filter are read in parallel
+     *
+     * @return the future builders of at most limit matching entities whose id follows afterId
+     * @see #getInstancesBuilders(Optional, InstanceFilter, Optional, int, MixinService)
+     */
+    public CompletableFuture<List<ResourceBuilder>> getInstancesBuildersAsync(Optional<String> serviceModel,
+            InstanceFilter filter, Optional<String> afterId, int limit, MixinService mixinService) {
+        RequestContext context = RequestContext.current();
+        return FutureUtils.allOf(filter.getMixins(),
+                                 Math.max(1, filter.getMixins().size()),
+                                 title -> context.run(() -> mixinService.getEntitiesIdByMixinTitleAsync(title)))
+                          .thenCompose(carryingByTitle -> context.run(() -> {
+                              Optional<Set<String>> entitiesId = Optional.empty();
+                              for (Set<String> carryingTitle : carryingByTitle.values()) {
+                                  Set<String> carrying = new HashSet<>(carryingTitle);
+                                  entitiesId.ifPresent(carrying::retainAll);
+                                  entitiesId = Optional.of(carrying);
+                              }
+                              return cloudAutomationInstanceClient.queryModelsAsync(ID_NAME,
+                                                                                    serviceModel,
+                                                                                    filter.getConditions(),
+                                                                                    entitiesId,
+                                                                                    afterId,
+                                                                                    limit);
+                          }))
+                          .thenApply(models -> models.stream()
+                                                     .map(model -> getResourceBuilder(model))
+                                                     .collect(Collectors.toList()));
+    }
+
+    /**
+     * Add their mixins to entity builders and render them
+     * <p>
+     * The mixins of all the entities are resolved together, each mixin is read once
+     *
+     * @param resourceBuilders are the builders of the entities
+     * @param mixinService gives the mixins of the entities
+     * @return the renderings in the order of the builders
+     */
+    public List<EntityRendering> getRenderings(List<ResourceBuilder> resourceBuilders, MixinService mixinService) {
+        return getRenderings(resourceBuilders, mixinService, RenderingFields.all());
+    }
+
+    /**
+     * Add their mixins to entity builders and render the fields asked
+     * <p>
+     * The mixins are only resolved when they are asked
+     *
+     * @param resourceBuilders are the builders of the entities
+     * @param mixinService gives the mixins of the entities
+     * @param fields are the members and the attributes asked
+     * @return the renderings in the order of the builders
+     */
+    public List<EntityRendering> getRenderings(List<ResourceBuilder> resourceBuilders, MixinService mixinService,
+            RenderingFields fields) {
+        return Deadline.join(getRenderingsAsync(resourceBuilders, mixinService, fields));
+    }
+
+    /**
+     * Add their mixins to entity builders and render the fields asked without waiting for cloud automation
+     *
+     * @return the future renderings in the order of the builders
+     * @see #getRenderings(List, MixinService, RenderingFields)
+     */
+    public CompletableFuture<List<EntityRendering>> getRenderingsAsync(List<ResourceBuilder> resourceBuilders,
+            MixinService mixinService, RenderingFields fields) {
+        return renderAsync(resourceBuilders, mixinService, fields).thenApply(renderings -> new ArrayList<EntityRendering>(renderings));
+    }
 
-        return cloudAutomationInstanceClient.getModels()
-                                            .stream()
-                                            .filter(model -> model.getVariables().containsKey(ID_NAME))
-                                            .map(model -> getResourceBuilder(model))
-                                            .map(resourceBuilder -> (resourceBuilder).addMixins(mixinService.getMixinsByEntityId((resourceBuilder).getUrl()
-                                                                                                                                                  .orElse(""))))
-                                            .map(resourceBuilder -> (resourceBuilder).build().getRendering())
-                                            .collect(Collectors.toList());
+    /**
+     * Render the fields asked of an entity
+     * <p>
+     * The instance is converted by the transformer provider as in {@link #getEntity(String, TransformerProvider)},
+     * whatever its cloud automation model. The mixins of the entity are only resolved when they are asked
+     *
+     * @param id is the id of the entity
+     * @param transformerProvider the transformer provider for an entity inherited type
+     * @param mixinService gives the mixins of the entity
+     * @param fields are the members and the attributes asked
+     * @return the rendering of the entity or an empty optional if there is no such entity of this type
+     */
+    public Optional<ResourceRendering> getRendering(String id, TransformerProvider transformerProvider,
+            MixinService mixinService, RenderingFields fields) {
+        return Deadline.join(getRenderingAsync(id, transformerProvider, mixinService, fields));
+    }
+
+    /**
+     * Render the fields asked of an entity without waiting for cloud automation
+     *
+     * @return the future rendering of the entity or an empty optional if there is no such entity of this type
+     * @see #getRendering(String, TransformerProvider, MixinService, RenderingFields)
+     */
+    public CompletableFuture<Optional<ResourceRendering>> getRenderingAsync(String id,
+            TransformerProvider transformerProvider, MixinService mixinService, RenderingFields fields) {
+        RequestContext context = RequestContext.current();
+        return cloudAutomationInstanceClient.getInstanceByVariableAsync(ID_NAME, ConvertUtils.formatURL(id))
+                                            .thenCompose(model -> context.run(() -> {
+                                                Optional<ResourceBuilder> resourceBuilder = model.map(transformerProvider::toResourceBuilder)
+                                                                                                 .filter(builder -> transformerProvider.isInstanceOfType(builder.build()));
+                                                if (!resourceBuilder.isPresent()) {
+                                                    return CompletableFuture.completedFuture(Optional.<ResourceRendering> empty());
+                                                }
+                                                return renderAsync(Collections.singletonList(resourceBuilder.get()),
+                                                                   mixinService,
+                                                                   fields).thenApply(renderings -> Optional.of(renderings.get(0)));
+                                            }));
     }
 
     /**
@@ -121,6 +316,29 @@ public class InstanceService {
                                                                           transformerProvider);
     }
 
+    private CompletableFuture<List<ResourceRendering>> renderAsync(List<ResourceBuilder> resourceBuilders,
+            MixinService mixinService, RenderingFields fields) {
+        return getMixinsAsync(resourceBuilders, mixinService, fields).thenApply(entitiesMixins -> resourceBuilders.stream()
+                                                                                                          .map(resourceBuilder -> resourceBuilder.addMixins(entitiesMixins.getOrDefault(getEntityId(resourceBuilder),
+                                                                                                                                                                                        Collections.emptyList())))
+                                                                                                          .map(resourceBuilder -> resourceBuilder.build()
+                                                                                                                                                 .getRendering(fields))
+                                                                                                          .collect(Collectors.toList()));
+    }
+
+    private CompletableFuture<Map<String, List<Mixin>>> getMixinsAsync(List<ResourceBuilder> resourceBuilders,
+            MixinService mixinService, RenderingFields fields) {
+        if (!fields.includes(RenderingFields.MIXINS)) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+        Set<String> entitiesId = resourceBuilders.stream().map(this::getEntityId).collect(Collectors.toSet());
+        return mixinService.getMixinsByEntityIdsAsync(entitiesId);
+    }
+
+    private String getEntityId(ResourceBuilder resourceBuilder) {
+        return resourceBuilder.getUrl().orElse("");
+    }
+
     private ResourceBuilder getResourceBuilder(Model model) {
 
         switch (model.getServiceModel()) {
@@ -0,0 +1,272 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.occi;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+
+/**
+ * The references between the mixins and the entities, kept in both directions
+ * <p>
+ * The index does not know every reference, the references of an entity or of a mixin are loaded from cloud
+ * automation the first time they are needed. A change is applied to both directions at once and it is recorded
+ * as references added and removed, so that it can be written back later on top of the changes made by other
+ * connectors.
+ */
+class MixinReferenceIndex {
+
+    private final Map<String, Set<String>> entitiesMixins = new HashMap<>();
+
+    private final Map<String, Set<String>> mixinsEntities = new HashMap<>();
+
+    private final Map<String, Delta> entitiesChanges = new HashMap<>();
+
+    private final Map<String, Delta> mixinsChanges = new HashMap<>();
+
+    /**
+     * @return the mixin titles of the entity if its references are loaded
+     */
+    synchronized Optional<Set<String>> getEntityMixins(String entityId) {
+        return Optional.ofNullable(entitiesMixins.get(entityId)).map(HashSet::new);
+    }
+
+    /**
+     * @return the entity ids of the mixin if its references are loaded
+     */
+    synchronized Optional<Set<String>> getMixinEntities(String title) {
+        return Optional.ofNullable(mixinsEntities.get(title)).map(HashSet::new);
+    }
+
+    /**
+     * @return the entities among the given ones whose references are not loaded
+     */
+    synchronized Set<String> getUnloadedEntities(Collection<String> entitiesId) {
+        return entitiesId.stream().filter(entityId -> !entitiesMixins.containsKey(entityId)).collect(Collectors.toSet());
+    }
+
+    /**
+     * Keep the references of an entity read from cloud automation, unless they are already loaded
+     */
+    synchronized void loadEntity(String entityId, Set<String> titles) {
+        entitiesMixins.putIfAbsent(entityId, new HashSet<>(titles));
+    }
+
+    /**
+     * Keep the references of a mixin read from cloud automation, unless they are already loaded
+     */
+    synchronized void loadMixin(String title, Set<String> entitiesId) {
+        mixinsEntities.putIfAbsent(title, new HashSet<>(entitiesId));
+    }
+
+    /**
+     * Replace the loaded references of an entity by the ones written in cloud automation, the changes which are
+     * not written yet are kept
+     */
+    synchronized void refreshEntity(String entityId, Set<String> titles) {
+        if (entitiesMixins.containsKey(entityId)) {
+            entitiesMixins.put(entityId, getDelta(entitiesChanges, entityId).applyTo(titles));
+        }
+    }
+
+    /**
+     * Replace the loaded references of a mixin by the ones written in cloud automation, the changes which are not
+     * written yet are kept
+     */
+    synchronized void refreshMixin(String title, Set<String> entitiesId) {
+        if (mixinsEntities.containsKey(title)) {
+            mixinsEntities.put(title, getDelta(mixinsChanges, title).applyTo(entitiesId));
+        }
+    }
+
+    /**
+     * Reference a new entity from its mixins
+     *
+     * @param entityId is the new entity
+     * @param titles are the mixins of the entity
+     */
+    synchronized void addEntity(String entityId, Set<String> titles) {
+        entitiesMixins.put(entityId, new HashSet<>(titles));
+        titles.forEach(title -> {
+            changeDelta(entitiesChanges, entityId).add(title);
+            Optional.ofNullable(mixinsEntities.get(title)).ifPresent(entitiesId -> entitiesId.add(entityId));
+            changeDelta(mixinsChanges, title).add(entityId);
+        });
+    }
+
+    /**
+     * Reference a new mixin from its entities, the mixin itself is already written with its entities
+     *
+     * @param title is the new mixin
+     * @param entitiesId are the entities of the mixin
+     */
+    synchronized void addMixin(String title, Set<String> entitiesId) {
+        mixinsEntities.put(title, new HashSet<>(entitiesId));
+        entitiesId.forEach(entityId -> {
+            Optional.ofNullable(entitiesMixins.get(entityId)).ifPresent(titles -> titles.add(title));
+            changeDelta(entitiesChanges, entityId).add(title);
+        });
+    }
+
+    /**
+     * Remove the references to a deleted mixin
+     *
+     * @param title is the deleted mixin
+     * @param entitiesId are the entities of the mixin
+     */
+    synchronized void removeMixin(String title, Set<String> entitiesId) {
+        mixinsEntities.remove(title);
+        mixinsChanges.remove(title);
+        entitiesId.forEach(entityId -> {
+            Optional.ofNullable(entitiesMixins.get(entityId)).ifPresent(titles -> titles.remove(title));
+            changeDelta(entitiesChanges, entityId).remove(title);
+        });
+    }
+
+    /**
+     * Give the changes which are not written yet and forget them
+     *
+     * @return the changes to write in cloud automation
+     */
+    synchronized Changes takeChanges() {
+        Changes changes = new Changes(new HashMap<>(entitiesChanges), new HashMap<>(mixinsChanges));
+        entitiesChanges.clear();
+        mixinsChanges.clear();
+        return changes;
+    }
+
+    /**
+     * Give back changes which could not be written, they are written with the next changes
+     */
+    synchronized void restoreChanges(Changes changes) {
+        changes.getEntities().forEach((entityId, delta) -> entitiesChanges.put(entityId,
+                                                                               delta.then(getDelta(entitiesChanges,
+                                                                                                   entityId))));
+        changes.getMixins()
+               .entrySet()
+               .stream()
+               .filter(change -> mixinsEntities.containsKey(change.getKey()))
+               .forEach(change -> mixinsChanges.put(change.getKey(),
+                                                    change.getValue().then(getDelta(mixinsChanges,
+                                                                                    change.getKey()))));
+    }
+
+    synchronized int getEntitiesCount() {
+        return entitiesMixins.size();
+    }
+
+    synchronized int getMixinsCount() {
+        return mixinsEntities.size();
+    }
+
+    synchronized int getChangesCount() {
+        return entitiesChanges.size() + mixinsChanges.size();
+    }
+
+    private static Delta changeDelta(Map<String, Delta> changes, String key) {
+        return changes.computeIfAbsent(key, any -> new Delta());
+    }
+
+    private static Delta getDelta(Map<String, Delta> changes, String key) {
+        return changes.getOrDefault(key, new Delta());
+    }
+
+    /**
+     * The references added to and removed from a set of references
+     */
+    static class Delta {
+
+        private final Set<String> added = new HashSet<>();
+
+        private final Set<String> removed = new HashSet<>();
+
+        void add(String reference) {
+            removed.remove(reference);
+            added.add(reference);
+        }
+
+        void remove(String reference) {
+            added.remove(reference);
+            removed.add(reference);
+        }
+
+        boolean hasAdditions() {
+            return !added.isEmpty();
+        }
+
+        /**
+         * @return the given references changed by this delta
+         */
+        Set<String> applyTo(Set<String> references) {
+            Set<String> result = new HashSet<>(references);
+            result.removeAll(removed);
+            result.addAll(added);
+            return result;
+        }
+
+        /**
+         * @return a delta doing this one then the later one
+         */
+        Delta then(Delta later) {
+            Delta delta = new Delta();
+            added.forEach(delta::add);
+            removed.forEach(delta::remove);
+            later.added.forEach(delta::add);
+            later.removed.forEach(delta::remove);
+            return delta;
+        }
+    }
+
+    /**
+     * The changes which are not written yet
+     */
+    @Getter
+    @AllArgsConstructor
+    static class Changes {
+
+        /**
+         * The changes of the references of each entity
+         */
+        private final Map<String, Delta> entities;
+
+        /**
+         * The changes of the entities of each mixin
+         */
+        private final Map<String, Delta> mixins;
+
+        boolean isEmpty() {
+            return entities.isEmpty() && mixins.isEmpty();
+        }
+    }
+}
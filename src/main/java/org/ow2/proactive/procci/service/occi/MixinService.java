@@ -28,17 +28,31 @@ package org.ow2.proactive.procci.service.occi;
 import static org.ow2.proactive.procci.model.utils.ConvertUtils.mapObject;
 import static org.ow2.proactive.procci.model.utils.ConvertUtils.readMappedObject;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.codehaus.jackson.type.TypeReference;
 import org.ow2.proactive.procci.model.exception.ClientException;
-import org.ow2.proactive.procci.model.exception.CloudAutomationClientException;
 import org.ow2.proactive.procci.model.exception.CloudAutomationServerException;
+import org.ow2.proactive.procci.model.exception.MixinResolutionException;
+import org.ow2.proactive.procci.model.exception.ServerException;
 import org.ow2.proactive.procci.model.occi.infrastructure.constants.InfrastructureIdentifiers;
 import org.ow2.proactive.procci.model.occi.infrastructure.mixin.Contextualization;
 import org.ow2.proactive.procci.model.occi.infrastructure.mixin.VMImage;
@@ -46,12 +60,22 @@ import org.ow2.proactive.procci.model.occi.metamodel.Entity;
 import org.ow2.proactive.procci.model.occi.metamodel.Mixin;
 import org.ow2.proactive.procci.model.occi.metamodel.MixinBuilder;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.MixinRendering;
+import org.ow2.proactive.procci.model.utils.FutureUtils;
 import org.ow2.proactive.procci.service.CloudAutomationVariablesClient;
+import org.ow2.proactive.procci.service.ConnectorConfiguration;
+import org.ow2.proactive.procci.service.http.Deadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Component;
 
 import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 
 /**
@@ -60,10 +84,28 @@ import com.google.common.collect.ImmutableMap;
 
 /**
  * This class manage the mixins, it give access to the mixin references and enables to access to the provider defined mixin
+ * <p>
+ * The mixin definitions are cached, the cache is updated by the changes made through this connector.
+ * The references between the mixins and the entities are kept in memory, they are read from cloud automation the
+ * first time they are needed and the changes are written back in the background. The references added and removed
+ * are applied on top of the ones read just before the write. The changes of the same mixin or entity made through
+ * this connector, the writes of its references included, are serialised by striped locks. Cloud automation has no
+ * conditional write, so a reference written at the same moment by another connector can still be overwritten.
  */
 @Component
+@ManagedResource(objectName = "org.ow2.proactive.procci:name=MixinService", description = "mixin definitions")
 public class MixinService {
 
+    private final Logger logger = LoggerFactory.getLogger(MixinService.class);
+
+    private static final long PERSISTENCE_SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private static final int MOST_WAITED_MIXINS = 10;
+
+    private static final String MIXIN = "mixin";
+
+    private static final String ENTITIES_FREE_MIXIN = "entities free mixin";
+
     private final Map<String, Supplier<MixinBuilder>> providerMixin;
 
     @Autowired
@@ -72,6 +114,19 @@ public class MixinService {
     @Autowired
     private CloudAutomationVariablesClient cloudAutomationVariablesClient;
 
+    @Autowired
+    private ConnectorConfiguration configuration;
+
+    private ExecutorService resolutionExecutor;
+
+    private Cache<String, MixinRendering> mixinCache;
+
+    private MixinReferenceIndex referenceIndex;
+
+    private ReferenceLocks referenceLocks;
+
+    private ExecutorService persistenceExecutor;
+
     public MixinService() {
         providerMixin = new ImmutableMap.Builder<String, Supplier<MixinBuilder>>().put(InfrastructureIdentifiers.VM_IMAGE,
                                                                                        (() -> new VMImage.Builder()))
@@ -80,6 +135,103 @@ public class MixinService {
                                                                                   .build();
     }
 
+    @PostConstruct
+    public void init() {
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder()
+                                                                .maximumSize(configuration.getMixinCacheMaxSize())
+                                                                .recordStats();
+        if (configuration.getMixinCacheTtlMillis() > 0) {
+            //the mixins changed by the other connectors are seen after this delay
+            cacheBuilder.expireAfterWrite(configuration.getMixinCacheTtlMillis(), TimeUnit.MILLISECONDS);
+        }
+        mixinCache = cacheBuilder.build();
+        referenceIndex = new MixinReferenceIndex();
+        referenceLocks = new ReferenceLocks(configuration.getMixinLockStripes());
+        //a single thread writes the references so that the changes of a reference are written in order, and never
+        //by two writes at once
+        persistenceExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("mixin-references-%d")
+                                                                                          .setDaemon(true)
+                                                                                          .build());
+        resolutionExecutor = Executors.newFixedThreadPool(configuration.getMixinResolutionParallelism(),
+                                                          new ThreadFactoryBuilder().setNameFormat("mixin-resolution-%d")
+                                                                                    .setDaemon(true)
+                                                                                    .build());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (resolutionExecutor != null) {
+            resolutionExecutor.shutdownNow();
+        }
+        if (persistenceExecutor != null) {
+            //the pending references are written before stopping
+            persistenceExecutor.execute(this::persistReferences);
+            persistenceExecutor.shutdown();
+            try {
+                if (!persistenceExecutor.awaitTermination(PERSISTENCE_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    logger.warn("the mixin references are not all written");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @ManagedAttribute(description = "Share of the mixin definitions read from the cache")
+    public double getMixinCacheHitRate() {
+        return mixinCache.stats().hitRate();
+    }
+
+    @ManagedAttribute(description = "Mixin definitions read from the cache")
+    public long getMixinCacheHits() {
+        return mixinCache.stats().hitCount();
+    }
+
+    @ManagedAttribute(description = "Mixin definitions read from cloud automation")
+    public long getMixinCacheMisses() {
+        return mixinCache.stats().missCount();
+    }
+
+    @ManagedAttribute(description = "Mixin definitions in the cache")
+    public long getMixinCacheSize() {
+        return mixinCache.size();
+    }
+
+    @ManagedAttribute(description = "Entities whose mixin references are in memory")
+    public int getIndexedEntities() {
+        return referenceIndex.getEntitiesCount();
+    }
+
+    @ManagedAttribute(description = "Mixins whose entity references are in memory")
+    public int getIndexedMixins() {
+        return referenceIndex.getMixinsCount();
+    }
+
+    @ManagedAttribute(description = "References changed in memory and not written yet")
+    public int getPendingReferenceChanges() {
+        return referenceIndex.getChangesCount();
+    }
+
+    @ManagedAttribute(description = "Locks taken to change mixin or entity references")
+    public long getReferenceLockAcquisitions() {
+        return referenceLocks.getAcquisitions();
+    }
+
+    @ManagedAttribute(description = "Locks taken after waiting for another change of the same references")
+    public long getReferenceLockContentions() {
+        return referenceLocks.getContentions();
+    }
+
+    @ManagedAttribute(description = "Time spent waiting for the reference locks in milliseconds")
+    public long getReferenceLockWaitMillis() {
+        return referenceLocks.getWaitMillis();
+    }
+
+    @ManagedAttribute(description = "Mixins whose changes waited the most for the reference locks, in milliseconds")
+    public Map<String, Long> getMostWaitedMixins() {
+        return referenceLocks.getMostWaitedMixins(MOST_WAITED_MIXINS);
+    }
+
     /**
      * Give a mixin created by the provider
      *
@@ -98,9 +250,57 @@ public class MixinService {
      * @throws ClientException if there is an error in the cloud automation service response
      */
     public Mixin getMixinByTitle(String title) {
+        return RequestIdentityMap.get(MIXIN, title, () -> {
+            MixinRendering mixinRendering = getMixinRenderingByTitle(title);
+            return new MixinBuilder(this, instanceService, mixinRendering).build();
+        });
+    }
+
+    /**
+     * Give several mixins from their titles
+     * <p>
+     * The mixins are resolved concurrently on a bounded pool, within the deadline of the current request, and a
+     * title given several times is resolved once
+     *
+     * @param titles are the mixin titles
+     * @return the mixins in the order of the titles
+     * @throws ClientException if a mixin can not be resolved, a MixinResolutionException if several can not be
+     * @throws ServerException if there is an error with cloud automation service
+     */
+    public List<Mixin> getMixinsByTitles(List<String> titles) {
+        Deadline deadline = Deadline.current().orElse(null);
+        Map<String, CompletableFuture<Mixin>> resolutions = new LinkedHashMap<>();
+        titles.forEach(title -> resolutions.computeIfAbsent(title, key -> resolveAsync(key, deadline)));
+
+        Map<String, Mixin> mixins = new HashMap<>();
+        Map<String, ClientException> errors = new LinkedHashMap<>();
+        try {
+            resolutions.forEach((title, resolution) -> {
+                try {
+                    mixins.put(title, Deadline.join(resolution));
+                } catch (ClientException ex) {
+                    errors.put(title, ex);
+                }
+            });
+        } finally {
+            resolutions.values().forEach(resolution -> resolution.cancel(true));
+        }
+
+        if (errors.size() == 1) {
+            throw errors.values().iterator().next();
+        }
+        if (!errors.isEmpty()) {
+            throw new MixinResolutionException(errors);
+        }
+        return titles.stream().map(mixins::get).collect(Collectors.toList());
+    }
 
-        MixinRendering mixinRendering = getMixinRenderingByTitle(title);
-        return new MixinBuilder(this, instanceService, mixinRendering).build();
+    private CompletableFuture<Mixin> resolveAsync(String title, Deadline deadline) {
+        RequestIdentityMap identityMap = RequestIdentityMap.current().orElse(null);
+        return CompletableFuture.supplyAsync(() -> RequestIdentityMap.within(identityMap,
+                                                                             () -> Deadline.within(deadline,
+                                                                                                   () -> getMixinByTitle(title))),
+                                             resolutionExecutor);
     }
 
     /**
@@ -111,9 +311,39 @@ public class MixinService {
      * @throws ClientException if there is an error in the cloud automation service response
      */
     public Mixin getEntitiesFreeMixinByTitle(String title) throws ClientException {
+        return RequestIdentityMap.get(ENTITIES_FREE_MIXIN, title, () -> {
+            MixinRendering mixinRendering = getMixinRenderingByTitle(title);
+            return new MixinBuilder(this, instanceService, mixinRendering).entitiesFreeMixinBuild();
+        });
+    }
 
-        MixinRendering mixinRendering = getMixinRenderingByTitle(title);
-        return new MixinBuilder(this, instanceService, mixinRendering).entitiesFreeMixinBuild();
+    /**
+     * Give the ids of the entities carrying a mixin, the entities themselves are not read
+     *
+     * @param title is the mixin title
+     * @return the ids of the entities, none if the mixin does not exist
+     */
+    public Set<String> getEntitiesIdByMixinTitle(String title) {
+        return findMixinRenderingByTitle(title).map(MixinRendering::getEntities).orElseGet(HashSet::new);
+    }
+
+    /**
+     * Give the ids of the entities carrying a mixin without waiting for cloud automation
+     *
+     * @param title is the mixin title
+     * @return the future ids of the entities, none if the mixin does not exist
+     */
+    public CompletableFuture<Set<String>> getEntitiesIdByMixinTitleAsync(String title) {
+        MixinRendering mixinRendering = mixinCache.getIfPresent(title);
+        if (mixinRendering != null) {
+            return CompletableFuture.completedFuture(withIndexedEntities(title, mixinRendering.copy()).getEntities());
+        }
+        return cloudAutomationVariablesClient.findAsync(title)
+                                             .thenApply(rendering -> rendering.map(MixinRendering::convertMixinFromString)
+                                                                              .map(readMixinRendering -> cacheReadMixinRendering(title,
+                                                                                                                                 readMixinRendering))
+                                                                              .map(MixinRendering::getEntities)
+                                                                              .orElseGet(HashSet::new));
     }
 
     /**
@@ -131,7 +361,63 @@ public class MixinService {
     }
 
     /**
-     * Add the entity to the database and update the mixins references
+     * Give the mixins of several entities
+     * <p>
+     * The references which are not in memory are read in parallel, then each distinct mixin is read once for all
+     * the entities, also in parallel. The references to a mixin which does not exist anymore are ignored.
+     *
+     * @param entitiesId are the ids of the entities
+     * @return the mixins without entities of each entity, the entities without references have no mixins
+     */
+    public Map<String, List<Mixin>> getMixinsByEntityIds(Set<String> entitiesId) {
+        return Deadline.join(getMixinsByEntityIdsAsync(entitiesId));
+    }
+
+    /**
+     * Give the mixins of several entities without waiting for cloud automation
+     * <p>
+     * The mixins are built on the resolution pool once their definitions are read, since the mixins they depend on
+     * can still be read from cloud automation
+     *
+     * @param entitiesId are the ids of the entities
+     * @return the future mixins without entities of each entity
+     */
+    public CompletableFuture<Map<String, List<Mixin>>> getMixinsByEntityIdsAsync(Set<String> entitiesId) {
+        RequestContext context = RequestContext.current();
+        return loadEntitiesReferencesAsync(entitiesId).thenCompose(loaded -> context.run(() -> {
+            Map<String, Set<String>> entitiesMixinTitles = new HashMap<>();
+            entitiesId.forEach(entityId -> referenceIndex.getEntityMixins(entityId)
+                                                         .ifPresent(titles -> entitiesMixinTitles.put(entityId,
+                                                                                                      titles)));
+
+            Set<String> mixinTitles = entitiesMixinTitles.values()
+                                                         .stream()
+                                                         .flatMap(Set::stream)
+                                                         .collect(Collectors.toSet());
+            return getMixinRenderingsByTitlesAsync(mixinTitles).thenApplyAsync(mixinRenderings -> context.run(() -> {
+                Map<String, Mixin> mixins = new HashMap<>();
+                mixinRenderings.forEach((title, rendering) -> {
+                    mixins.put(title,
+                               RequestIdentityMap.get(ENTITIES_FREE_MIXIN, title, () -> getEntitiesFreeMixin(rendering)));
+                });
+
+                Map<String, List<Mixin>> entitiesMixins = new HashMap<>();
+                entitiesMixinTitles.forEach((entityId, titles) -> {
+                    entitiesMixins.put(entityId,
+                                       titles.stream()
+                                             .map(mixins::get)
+                                             .filter(Objects::nonNull)
+                                             .collect(Collectors.toList()));
+                });
+                return entitiesMixins;
+            }), resolutionExecutor);
+        }));
+    }
+
+    /**
+     * Add the entity references and update the mixins references
+     * <p>
+     * The mixins which are not defined yet are created, the references are written in the background
      *
      * @param entity is an occi entity
      * @throws ClientException if there is issue with cloud automation service response
@@ -142,48 +428,53 @@ public class MixinService {
                                               .stream()
                                               .map(mixin -> mixin.getTitle())
                                               .collect(Collectors.toSet());
-        //add entity references
-        cloudAutomationVariablesClient.post(entity.getId(), mapObject(entityMixinsTitle));
-
-        //add entity to mixin references
-        entity.getMixins().forEach(mixin -> setMixinReferences(mixin.getRendering()));
-
+        referenceLocks.withLocks(entityMixinsTitle, Collections.singleton(entity.getId()), () -> {
+            entity.getMixins().forEach(mixin -> loadOrCreateMixin(mixin.getRendering()));
+            referenceIndex.addEntity(entity.getId(), entityMixinsTitle);
+        });
+        entityMixinsTitle.forEach(title -> RequestIdentityMap.evict(MIXIN, title));
+        persistReferencesLater();
     }
 
     /**
-     * Add a mixin in the database and update the references
+     * Add a mixin in the database and update the references, the entity references are written in the background
      * @param mixin
      */
     public void addMixin(Mixin mixin) {
-        //add the new entity references
-        cloudAutomationVariablesClient.post(mixin.getTitle(), mapObject(mixin.getRendering()));
-
-        //add mixin to entity references
-        for (String entityId : mixin.getEntities().stream().map(entity -> entity.getId()).collect(Collectors.toSet())) {
-            addEntityReferences(entityId, mixin.getTitle());
-        }
+        Set<String> entitiesId = mixin.getEntities().stream().map(entity -> entity.getId()).collect(Collectors.toSet());
+        referenceLocks.withLocks(Collections.singleton(mixin.getTitle()), entitiesId, () -> {
+            cloudAutomationVariablesClient.post(mixin.getTitle(), mapObject(mixin.getRendering()));
+            cacheMixinRendering(mixin.getRendering());
+            //add mixin to entity references
+            referenceIndex.addMixin(mixin.getTitle(), entitiesId);
+        });
+        evictMixin(mixin.getTitle());
+        persistReferencesLater();
     }
 
     /**
-     * Remove a mixin from the database and update the references
+     * Remove a mixin from the database and update the references, the entity references are written in the
+     * background
      * @param mixinTitle the title of the mixin to remove
      */
     public void removeMixin(String mixinTitle) {
-        Mixin mixinToRemove = getMixinByTitle(mixinTitle);
-        List<Entity> entities = mixinToRemove.getEntities();
-
-        cloudAutomationVariablesClient.delete(mixinTitle);
-
-        entities.forEach(entity -> {
-            getMixinNamesFromEntity(entity.getId()).remove(mixinTitle);
-        });
-
-        entities.forEach(entity -> {
-            Set<String> entityMixins = getMixinNamesFromEntity(entity.getId());
-            entityMixins.remove(mixinTitle);
-            cloudAutomationVariablesClient.update(entity.getId(), mapObject(entityMixins));
+        //the entities are only known once the mixin is read, the lock of the mixin is enough since the entity
+        //references are changed in memory at once
+        referenceLocks.withLocks(Collections.singleton(mixinTitle), Collections.emptySet(), () -> {
+            Set<String> entitiesId = getMixinRenderingByTitle(mixinTitle).getEntities();
+            cloudAutomationVariablesClient.delete(mixinTitle);
+            mixinCache.invalidate(mixinTitle);
+            referenceIndex.removeMixin(mixinTitle, entitiesId);
         });
+        evictMixin(mixinTitle);
+        persistReferencesLater();
+    }
 
+    /**
+     * Write the references changed so far, the method returns once they are written
+     */
+    void flushReferences() {
+        Deadline.join(CompletableFuture.runAsync(this::persistReferences, persistenceExecutor));
     }
 
     /**
@@ -203,52 +494,192 @@ public class MixinService {
      * @throws CloudAutomationServerException if there is an error in the cloud automation service response
      */
     Set<String> getMixinNamesFromEntity(String entityId) {
-        String references = cloudAutomationVariablesClient.get(entityId);
+        return referenceIndex.getEntityMixins(entityId).orElseGet(() -> {
+            referenceIndex.loadEntity(entityId, readReferences(cloudAutomationVariablesClient.get(entityId)));
+            return referenceIndex.getEntityMixins(entityId).orElseGet(HashSet::new);
+        });
+    }
 
+    private Set<String> readReferences(String references) {
         TypeReference<Set<String>> mapType = new TypeReference<Set<String>>() {
         };
         return readMappedObject(references, mapType);
     }
 
+    private void evictMixin(String title) {
+        RequestIdentityMap.evict(MIXIN, title);
+        RequestIdentityMap.evict(ENTITIES_FREE_MIXIN, title);
+    }
+
+    private Mixin getEntitiesFreeMixin(MixinRendering mixinRendering) {
+        //the entities are not part of the result, they are not resolved
+        Optional.ofNullable(mixinRendering.getEntities()).ifPresent(Set::clear);
+        return new MixinBuilder(this, instanceService, mixinRendering).entitiesFreeMixinBuild();
+    }
+
+    /**
+     * Give the definition of a mixin from the cache, or read it from cloud automation and cache it
+     * <p>
+     * The entities of the definition are the ones in memory, which can be more recent than the written ones
+     *
+     * @param title is the mixin title
+     * @return a copy of the definition which can be changed
+     */
     private MixinRendering getMixinRenderingByTitle(String title) throws ClientException {
-        return MixinRendering.convertMixinFromString(cloudAutomationVariablesClient.get(title));
+        return findMixinRenderingByTitle(title, key -> Optional.of(cloudAutomationVariablesClient.get(key))).get();
+    }
+
+    private Optional<MixinRendering> findMixinRenderingByTitle(String title) {
+        return findMixinRenderingByTitle(title, cloudAutomationVariablesClient::find);
+    }
+
+    private Optional<MixinRendering> findMixinRenderingByTitle(String title,
+            Function<String, Optional<String>> reader) {
+        MixinRendering mixinRendering = mixinCache.getIfPresent(title);
+        if (mixinRendering == null) {
+            return reader.apply(title)
+                         .map(MixinRendering::convertMixinFromString)
+                         .map(readMixinRendering -> cacheReadMixinRendering(title, readMixinRendering));
+        }
+        return Optional.of(withIndexedEntities(title, mixinRendering.copy()));
+    }
+
+    private MixinRendering cacheReadMixinRendering(String title, MixinRendering mixinRendering) {
+        mixinCache.put(title, mixinRendering);
+        //the entities added by the other connectors are seen when the definition is read again
+        referenceIndex.refreshMixin(title, Optional.ofNullable(mixinRendering.getEntities()).orElseGet(HashSet::new));
+        return withIndexedEntities(title, mixinRendering.copy());
     }
 
     /**
-     * if the mixin is already defined update the references however catch the not found excpetion thrown
-     * and create the mixin references
+     * Give the definitions of several mixins, the ones which are not cached are read in parallel
      *
-     * @param mixinRendering the mixin to add references
+     * @param titles are the mixin titles
+     * @return the future copy of the definition of each existing mixin by title
+     */
+    private CompletableFuture<Map<String, MixinRendering>> getMixinRenderingsByTitlesAsync(Set<String> titles) {
+        Map<String, MixinRendering> mixinRenderings = new HashMap<>(mixinCache.getAllPresent(titles));
+        Set<String> missingTitles = new HashSet<>(titles);
+        missingTitles.removeAll(mixinRenderings.keySet());
+        return cloudAutomationVariablesClient.getAllAsync(missingTitles).thenApply(readRenderings -> {
+            readRenderings.forEach((title, rendering) -> {
+                MixinRendering mixinRendering = MixinRendering.convertMixinFromString(rendering);
+                mixinCache.put(title, mixinRendering);
+                mixinRenderings.put(title, mixinRendering);
+            });
+            mixinRenderings.replaceAll((title, mixinRendering) -> withIndexedEntities(title, mixinRendering.copy()));
+            return mixinRenderings;
+        });
+    }
+
+    private void cacheMixinRendering(MixinRendering mixinRendering) {
+        mixinCache.put(mixinRendering.getTitle(), mixinRendering.copy());
+    }
+
+    private MixinRendering withIndexedEntities(String title, MixinRendering mixinRendering) {
+        referenceIndex.loadMixin(title, Optional.ofNullable(mixinRendering.getEntities()).orElse(Collections.emptySet()));
+        mixinRendering.setEntities(referenceIndex.getMixinEntities(title).orElseGet(HashSet::new));
+        return mixinRendering;
+    }
+
+    /**
+     * Load the references of the mixin, if the mixin is not defined yet it is created
+     *
+     * @param mixinRendering the mixin of a new entity
      * @throws ClientException
      */
-    private void setMixinReferences(MixinRendering mixinRendering) {
-        try {
-            Set<String> entitiesId = getMixinRenderingByTitle(mixinRendering.getTitle()).getEntities();
-            mixinRendering.getEntities().addAll(entitiesId);
-            cloudAutomationVariablesClient.update(mixinRendering.getTitle(), mapObject(mixinRendering));
-        } catch (CloudAutomationClientException ex) {
+    private void loadOrCreateMixin(MixinRendering mixinRendering) {
+        if (!findMixinRenderingByTitle(mixinRendering.getTitle()).isPresent()) {
             cloudAutomationVariablesClient.post(mixinRendering.getTitle(), mapObject(mixinRendering));
+            cacheMixinRendering(mixinRendering);
+            withIndexedEntities(mixinRendering.getTitle(), mixinRendering.copy());
         }
     }
 
     /**
-     * if the entity id is already defined update the references however catch the not found excpetion thrown
-     * and create the mixin references
+     * Read in parallel the references of the entities which are not in memory, the entities without references
+     * are not loaded
      *
-     * @param entityId is the entity to change the references
-     * @param mixinsId is the reference to add
-     * @throws ClientException
+     * @param entitiesId are the entities whose references are needed
+     * @return a future completed once the references are loaded
      */
-    private void addEntityReferences(String entityId, String mixinsId) {
+    private CompletableFuture<Void> loadEntitiesReferencesAsync(Set<String> entitiesId) {
+        Set<String> unloadedEntities = referenceIndex.getUnloadedEntities(entitiesId);
+        if (unloadedEntities.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return cloudAutomationVariablesClient.getAllAsync(unloadedEntities)
+                                             .thenAccept(references -> references.forEach((entityId,
+                                                     entityReferences) -> referenceIndex.loadEntity(entityId,
+                                                                                                    readReferences(entityReferences))));
+    }
+
+    private void persistReferencesLater() {
+        persistenceExecutor.execute(this::persistReferences);
+    }
 
-        Set<String> entityReferences = new HashSet<>();
-        entityReferences.add(mixinsId);
+    /**
+     * Write the changed references in cloud automation, the ones which can not be written are written with the
+     * next changes
+     * <p>
+     * The changes of each mixin or entity are applied to the value read just before writing it, the requests are
+     * chained without holding a thread. Cloud automation has no conditional write, so a change written by another
+     * connector between this read and this write is still lost.
+     */
+    private void persistReferences() {
+        MixinReferenceIndex.Changes changes = referenceIndex.takeChanges();
+        if (changes.isEmpty()) {
+            return;
+        }
         try {
-            entityReferences.addAll(getMixinNamesFromEntity(entityId));
-            cloudAutomationVariablesClient.update(entityId, mapObject(entityReferences));
-        } catch (CloudAutomationServerException ex) {
-            cloudAutomationVariablesClient.post(entityId, mapObject(entityReferences));
+            int parallelism = configuration.getVariablesBatchParallelism();
+            Deadline.join(FutureUtils.allOf(changes.getEntities().keySet(),
+                                            parallelism,
+                                            entityId -> persistEntityReferencesAsync(entityId,
+                                                                                     changes.getEntities()
+                                                                                            .get(entityId))));
+            Deadline.join(FutureUtils.allOf(changes.getMixins().keySet(),
+                                            parallelism,
+                                            title -> persistMixinEntitiesAsync(title, changes.getMixins().get(title))));
+        } catch (RuntimeException ex) {
+            //the changes are idempotent, the ones already written can be written again
+            logger.error("Unable to write the mixin references, they are written with the next changes", ex);
+            referenceIndex.restoreChanges(changes);
         }
     }
 
+    /**
+     * Apply the changes to the references of an entity written in cloud automation, the references of a missing
+     * entity are only created if references are added
+     */
+    private CompletableFuture<Void> persistEntityReferencesAsync(String entityId, MixinReferenceIndex.Delta delta) {
+        Function<Optional<String>, Optional<String>> modification = references -> {
+            if (!references.isPresent() && !delta.hasAdditions()) {
+                return Optional.empty();
+            }
+            Set<String> titles = delta.applyTo(references.map(this::readReferences).orElseGet(HashSet::new));
+            //the references are sorted so that the same references are always written the same way
+            return Optional.of(mapObject(new TreeSet<>(titles)));
+        };
+        return cloudAutomationVariablesClient.modifyAsync(entityId, modification)
+                                             .thenAccept(references -> references.ifPresent(value -> referenceIndex.refreshEntity(entityId,
+                                                                                                                                  readReferences(value))));
+    }
+
+    /**
+     * Apply the changes to the entities of a mixin written in cloud automation, a removed mixin is left as is
+     */
+    private CompletableFuture<Void> persistMixinEntitiesAsync(String title, MixinReferenceIndex.Delta delta) {
+        return cloudAutomationVariablesClient.modifyAsync(title, rendering -> rendering.map(value -> {
+            MixinRendering mixinRendering = MixinRendering.convertMixinFromString(value);
+            Set<String> entitiesId = Optional.ofNullable(mixinRendering.getEntities()).orElseGet(HashSet::new);
+            mixinRendering.setEntities(new TreeSet<>(delta.applyTo(entitiesId)));
+            return MixinRendering.convertStringFromMixin(mixinRendering);
+        })).thenAccept(rendering -> rendering.ifPresent(value -> {
+            MixinRendering mixinRendering = MixinRendering.convertMixinFromString(value);
+            mixinCache.put(title, mixinRendering);
+            referenceIndex.refreshMixin(title, mixinRendering.getEntities());
+        }));
+    }
+
 }
@@ -0,0 +1,168 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.occi;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.ow2.proactive.procci.model.exception.DeadlineExceededException;
+import org.ow2.proactive.procci.model.exception.ServerException;
+import org.ow2.proactive.procci.service.http.Deadline;
+
+import com.google.common.util.concurrent.Striped;
+
+
+/**
+ * Locks serialising the changes of the references of the same mixins and entities
+ * <p>
+ * The keys are spread over a fixed number of locks, so the changes of different keys run in parallel unless their
+ * keys share a lock. The locks of an operation are taken in the order of the stripes, which is the same for every
+ * operation, so two operations can not wait for each other. The time spent waiting is recorded by mixin to find
+ * the mixins changed concurrently the most.
+ */
+class ReferenceLocks {
+
+    private static final String MIXIN_KEY = "mixin ";
+
+    private static final String ENTITY_KEY = "entity ";
+
+    private final Striped<Lock> locks;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+
+    private final AtomicLong contentions = new AtomicLong();
+
+    private final LongAdder waitNanos = new LongAdder();
+
+    private final Map<String, LongAdder> mixinsWaitNanos = new ConcurrentHashMap<>();
+
+    ReferenceLocks(int stripes) {
+        locks = Striped.lock(stripes);
+    }
+
+    /**
+     * Run an action holding the locks of mixins and entities, within the deadline of the current request
+     *
+     * @param titles are the mixins changed by the action
+     * @param entitiesId are the entities changed by the action
+     * @param action is the change of the references
+     * @return the result of the action
+     * @throws DeadlineExceededException if the locks are not free before the deadline
+     */
+    <T> T withLocks(Collection<String> titles, Collection<String> entitiesId, Supplier<T> action) {
+        Map<Lock, List<String>> titlesByLock = new IdentityHashMap<>();
+        titles.forEach(title -> titlesByLock.computeIfAbsent(locks.get(MIXIN_KEY + title), lock -> new ArrayList<>())
+                                            .add(title));
+        List<String> keys = new ArrayList<>();
+        titles.forEach(title -> keys.add(MIXIN_KEY + title));
+        entitiesId.forEach(entityId -> keys.add(ENTITY_KEY + entityId));
+
+        List<Lock> heldLocks = new ArrayList<>();
+        try {
+            for (Lock lock : locks.bulkGet(keys)) {
+                //the keys sharing a stripe give the same lock several times in a row
+                if (heldLocks.isEmpty() || heldLocks.get(heldLocks.size() - 1) != lock) {
+                    acquire(lock, titlesByLock.getOrDefault(lock, new ArrayList<>()));
+                    heldLocks.add(lock);
+                }
+            }
+            return action.get();
+        } finally {
+            heldLocks.forEach(Lock::unlock);
+        }
+    }
+
+    void withLocks(Collection<String> titles, Collection<String> entitiesId, Runnable action) {
+        withLocks(titles, entitiesId, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void acquire(Lock lock, List<String> titles) {
+        acquisitions.incrementAndGet();
+        if (lock.tryLock()) {
+            return;
+        }
+        contentions.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            Optional<Deadline> deadline = Deadline.current();
+            if (!deadline.isPresent()) {
+                lock.lockInterruptibly();
+            } else if (!lock.tryLock(deadline.get().remainingMillis(), TimeUnit.MILLISECONDS)) {
+                throw new DeadlineExceededException("lock the references of " + titles);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServerException();
+        } finally {
+            long waited = System.nanoTime() - start;
+            waitNanos.add(waited);
+            titles.forEach(title -> mixinsWaitNanos.computeIfAbsent(title, key -> new LongAdder()).add(waited));
+        }
+    }
+
+    long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    long getContentions() {
+        return contentions.get();
+    }
+
+    long getWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+    }
+
+    /**
+     * @return the time spent waiting for the locks of the mixins waited for the most, in milliseconds
+     */
+    Map<String, Long> getMostWaitedMixins(int count) {
+        return mixinsWaitNanos.entrySet()
+                              .stream()
+                              .sorted((first, second) -> Long.compare(second.getValue().sum(),
+                                                                      first.getValue().sum()))
+                              .limit(count)
+                              .collect(Collectors.toMap(Map.Entry::getKey,
+                                                        entry -> TimeUnit.NANOSECONDS.toMillis(entry.getValue()
+                                                                                                    .sum()),
+                                                        (first, second) -> first,
+                                                        LinkedHashMap::new));
+    }
+}
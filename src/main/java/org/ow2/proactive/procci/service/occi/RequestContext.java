@@ -0,0 +1,73 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.occi;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import org.ow2.proactive.procci.service.http.Deadline;
+
+
+/**
+ * The deadline and the identity map of a REST request, captured on the thread handling the request so that the work
+ * continued on other threads, like the completions of the calls to cloud automation, still sees them
+ */
+public final class RequestContext {
+
+    private final Deadline deadline;
+
+    private final RequestIdentityMap identityMap;
+
+    private RequestContext(Deadline deadline, RequestIdentityMap identityMap) {
+        this.deadline = deadline;
+        this.identityMap = identityMap;
+    }
+
+    /**
+     * @return the context of the request handled by the current thread, it is empty when there is no such request
+     */
+    public static RequestContext current() {
+        return new RequestContext(Deadline.current().orElse(null), RequestIdentityMap.current().orElse(null));
+    }
+
+    /**
+     * @return the deadline of the request, if any
+     */
+    public Optional<Deadline> getDeadline() {
+        return Optional.ofNullable(deadline);
+    }
+
+    /**
+     * Run an action with the deadline and the identity map of the request, the previous ones are restored
+     * afterwards
+     *
+     * @param action is the action to run
+     * @return the result of the action
+     */
+    public <T> T run(Supplier<T> action) {
+        return RequestIdentityMap.within(identityMap, () -> Deadline.within(deadline, action));
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.occi;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.ow2.proactive.procci.model.exception.ReferenceCycleException;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+
+
+/**
+ * The objects loaded while handling one REST request, so that an object asked several times is loaded once and
+ * the same instance is given each time
+ * <p>
+ * The map of the request is attached to the thread handling it and it has to be given explicitly to the threads
+ * working for the request. Without map, every lookup loads the object again.
+ * An object is loaded outside of any lock, so a loader can look up other objects. A loader asking for the object
+ * it is loading is a dependency cycle, it is refused instead of looping.
+ */
+public class RequestIdentityMap {
+
+    private static final ThreadLocal<RequestIdentityMap> CURRENT = new ThreadLocal<>();
+
+    private static final ThreadLocal<Set<Key>> LOADING = ThreadLocal.withInitial(HashSet::new);
+
+    private final Map<Key, Object> objects = new ConcurrentHashMap<>();
+
+    /**
+     * Attach a new map to the current thread
+     */
+    public static void open() {
+        CURRENT.set(new RequestIdentityMap());
+    }
+
+    /**
+     * Detach the map from the current thread, its objects are released
+     */
+    public static void close() {
+        CURRENT.remove();
+        LOADING.remove();
+    }
+
+    /**
+     * @return the map of the request handled by the current thread, if any
+     */
+    public static Optional<RequestIdentityMap> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Run an action with a map as the current one, the previous map is restored afterwards
+     *
+     * @param identityMap is the map of the request, or null to run the action without map
+     * @param action is the action to run
+     * @return the result of the action
+     */
+    public static <T> T within(RequestIdentityMap identityMap, Supplier<T> action) {
+        RequestIdentityMap previous = CURRENT.get();
+        set(identityMap);
+        try {
+            return action.get();
+        } finally {
+            set(previous);
+        }
+    }
+
+    /**
+     * Give the object of the current request or load it
+     *
+     * @param type is the kind of object, the ids of different kinds do not collide
+     * @param id is the id of the object
+     * @param loader loads the object, it must not return null
+     * @return the object already loaded by the request or the loaded one
+     * @throws ReferenceCycleException if the loader asks for the object it is loading
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T get(String type, String id, Supplier<T> loader) {
+        RequestIdentityMap identityMap = CURRENT.get();
+        if (identityMap == null) {
+            return loader.get();
+        }
+        Key key = new Key(type, id);
+        Object loaded = identityMap.objects.get(key);
+        if (loaded != null) {
+            return (T) loaded;
+        }
+        if (!LOADING.get().add(key)) {
+            throw new ReferenceCycleException(type, id);
+        }
+        try {
+            T object = loader.get();
+            Object previous = identityMap.objects.putIfAbsent(key, object);
+            return previous != null ? (T) previous : object;
+        } finally {
+            LOADING.get().remove(key);
+        }
+    }
+
+    /**
+     * Give several objects of the current request, the missing ones are loaded together
+     *
+     * @param type is the kind of object
+     * @param ids are the ids of the objects
+     * @param loader loads the objects missing from the map by id, an object it does not find is not in its result
+     * @return the objects by id, the ids without object are not in the map
+     * @throws ReferenceCycleException if the loader asks for one of the objects it is loading
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Map<String, T> getAll(String type, Set<String> ids, Function<Set<String>, Map<String, T>> loader) {
+        RequestIdentityMap identityMap = CURRENT.get();
+        if (identityMap == null) {
+            return loader.apply(ids);
+        }
+        Map<String, T> objects = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (String id : ids) {
+            Object loaded = identityMap.objects.get(new Key(type, id));
+            if (loaded != null) {
+                objects.put(id, (T) loaded);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return objects;
+        }
+        Set<Key> loading = new HashSet<>();
+        try {
+            for (String id : missing) {
+                Key key = new Key(type, id);
+                if (!LOADING.get().add(key)) {
+                    throw new ReferenceCycleException(type, id);
+                }
+                loading.add(key);
+            }
+            loader.apply(missing).forEach((id, object) -> {
+                Object previous = identityMap.objects.putIfAbsent(new Key(type, id), object);
+                objects.put(id, (T) (previous != null ? previous : object));
+            });
+        } finally {
+            LOADING.get().removeAll(loading);
+        }
+        return objects;
+    }
+
+    /**
+     * Remove an object from the map of the current request after it has been changed
+     *
+     * @param type is the kind of object
+     * @param id is the id of the object
+     */
+    public static void evict(String type, String id) {
+        current().ifPresent(identityMap -> identityMap.objects.remove(new Key(type, id)));
+    }
+
+    public int size() {
+        return objects.size();
+    }
+
+    private static void set(RequestIdentityMap identityMap) {
+        if (identityMap == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(identityMap);
+        }
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static class Key {
+
+        private final String type;
+
+        private final String id;
+    }
+}
@@ -25,9 +25,13 @@
  */
 package org.ow2.proactive.procci.service.transformer;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.ow2.proactive.procci.model.InstanceModel;
 import org.ow2.proactive.procci.model.cloud.automation.Model;
 import org.ow2.proactive.procci.model.exception.ServerException;
+import org.ow2.proactive.procci.model.occi.metamodel.ResourceBuilder;
+import org.ow2.proactive.procci.service.http.Deadline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -69,7 +73,24 @@ public abstract class TransformerProvider {
      * @param model is the cloud automation model that is converted
      * @return a instance model converted from cloud automation model
      */
-    public abstract InstanceModel toInstanceModel(Model model);
+    public InstanceModel toInstanceModel(Model model) {
+        return Deadline.join(toInstanceModelAsync(model));
+    }
+
+    /**
+     *  Convert the model from cloud automation to an instance model without waiting for its mixins
+     *  The mixins are read without blocking and the instance model is built on the mixin resolution pool
+     * @param model is the cloud automation model that is converted
+     * @return the future instance model converted from cloud automation model
+     */
+    public abstract CompletableFuture<InstanceModel> toInstanceModelAsync(Model model);
+
+    /**
+     *  Give a builder of the instance model converted from the cloud automation model, the mixins are left to the caller
+     * @param model is the cloud automation model that is converted
+     * @return a builder of the instance model converted from cloud automation model
+     */
+    public abstract ResourceBuilder toResourceBuilder(Model model);
 
     /**
      *  Check if instance model is an applicable instance for the transformer
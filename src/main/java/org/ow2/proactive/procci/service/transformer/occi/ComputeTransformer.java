@@ -36,6 +36,9 @@ import static org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelA
 import static org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelAttributes.ID_NAME;
 import static org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelAttributes.SUMMARY_NAME;
 
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
 import org.ow2.proactive.procci.model.InstanceModel;
 import org.ow2.proactive.procci.model.cloud.automation.Model;
 import org.ow2.proactive.procci.model.occi.infrastructure.Compute;
@@ -85,9 +88,16 @@ public class ComputeTransformer extends TransformerProvider {
     }
 
     @Override
-    public InstanceModel toInstanceModel(Model model) {
-        return new ComputeBuilder(model).addMixins(mixinService.getMixinsByEntityId(model.getVariables().get(ID_NAME)))
-                                        .build();
+    public CompletableFuture<InstanceModel> toInstanceModelAsync(Model model) {
+        String id = model.getVariables().get(ID_NAME);
+        return mixinService.getMixinsByEntityIdsAsync(Collections.singleton(id))
+                           .thenApply(entitiesMixins -> new ComputeBuilder(model).addMixins(entitiesMixins.getOrDefault(id, Collections.emptyList()))
+                                                                                 .build());
+    }
+
+    @Override
+    public ComputeBuilder toResourceBuilder(Model model) {
+        return new ComputeBuilder(model);
     }
 
     @Override
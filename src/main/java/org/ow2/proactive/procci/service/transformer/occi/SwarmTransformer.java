@@ -33,6 +33,9 @@ import static org.ow2.proactive.procci.model.occi.platform.bigdata.constants.Big
 import static org.ow2.proactive.procci.model.occi.platform.bigdata.constants.BigDataAttributes.NETWORK_NAME_NAME;
 import static org.ow2.proactive.procci.model.occi.platform.bigdata.constants.BigDataIdentifiers.SWARM_MODEL;
 
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
 import org.ow2.proactive.procci.model.InstanceModel;
 import org.ow2.proactive.procci.model.cloud.automation.Model;
 import org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelAttributes;
@@ -86,9 +89,16 @@ public class SwarmTransformer extends TransformerProvider {
     }
 
     @Override
-    public InstanceModel toInstanceModel(Model model) {
-        return new SwarmBuilder(model).addMixins(mixinService.getMixinsByEntityId(model.getVariables().get(ID_NAME)))
-                                      .build();
+    public CompletableFuture<InstanceModel> toInstanceModelAsync(Model model) {
+        String id = model.getVariables().get(ID_NAME);
+        return mixinService.getMixinsByEntityIdsAsync(Collections.singleton(id))
+                           .thenApply(entitiesMixins -> new SwarmBuilder(model).addMixins(entitiesMixins.getOrDefault(id, Collections.emptyList()))
+                                                                               .build());
+    }
+
+    @Override
+    public SwarmBuilder toResourceBuilder(Model model) {
+        return new SwarmBuilder(model);
     }
 
     @Override
@@ -0,0 +1,107 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.model.cloud.automation;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.ow2.proactive.procci.Benchmark;
+
+import com.sun.management.ThreadMXBean;
+
+
+/**
+ * Measure the memory allocated by {@link ModelDecoder}, the measures depend on the JVM, so they are only run by
+ * the benchmark task
+ */
+@Category(Benchmark.class)
+public class ModelDecoderBenchmark {
+
+    /**
+     * Compare the memory allocated by the streaming decoder with the previous string and json tree decoding
+     */
+    @Test
+    public void allocationBenchmark() throws Exception {
+        JSONObject response = new JSONObject();
+        for (int i = 0; i < 2000; i++) {
+            Model model = new Model.Builder("model" + i, "create").serviceName("service" + i)
+                                                                  .serviceDescription("description of " + i)
+                                                                  .addVariable("pca.instance.id", "instance" + i)
+                                                                  .addVariable("endpoint", "http://host" + i)
+                                                                  .addVariable("status", "RUNNING")
+                                                                  .build();
+            response.put("id" + i, model.getJson());
+        }
+        byte[] body = response.toJSONString().getBytes();
+
+        ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        //warm up both decoders before measuring them
+        List<Model> expected = decodeWithJsonTree(new ByteArrayInputStream(body));
+        ModelDecoder.decodeModels(new ByteArrayInputStream(body));
+
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        decodeWithJsonTree(new ByteArrayInputStream(body));
+        long jsonTreeAllocation = threadBean.getThreadAllocatedBytes(threadId) - start;
+
+        start = threadBean.getThreadAllocatedBytes(threadId);
+        List<Model> decoded = ModelDecoder.decodeModels(new ByteArrayInputStream(body));
+        long streamingAllocation = threadBean.getThreadAllocatedBytes(threadId) - start;
+
+        assertThat(decoded).containsExactlyElementsIn(expected).inOrder();
+        assertThat(streamingAllocation).isLessThan(jsonTreeAllocation / 2);
+    }
+
+    private static List<Model> decodeWithJsonTree(InputStream input) throws IOException, ParseException {
+        StringBuilder content = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                content.append(line);
+            }
+        }
+        JSONObject models = (JSONObject) new JSONParser().parse(content.toString());
+        List<Model> result = new ArrayList<>();
+        for (Object model : models.values()) {
+            result.add(new Model((JSONObject) model));
+        }
+        return result;
+    }
+}
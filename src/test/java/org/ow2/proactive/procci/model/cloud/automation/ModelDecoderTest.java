@@ -0,0 +1,78 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.model.cloud.automation;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.codehaus.jackson.JsonParseException;
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+
+public class ModelDecoderTest {
+
+    @Test
+    public void decodeModelsTest() throws IOException {
+        Model model1 = new Model.Builder("model1", "create").serviceName("name1")
+                                                            .actionIcon("icon1")
+                                                            .addVariable("key", "value1")
+                                                            .build();
+        Model model2 = new Model.Builder("model2", "update").addVariable("key", "value2").build();
+        JSONObject response = new JSONObject();
+        response.put("id1", model1.getJson());
+        response.put("id2", model2.getJson());
+
+        assertThat(ModelDecoder.decodeModels(toStream(response))).containsExactly(model1, model2);
+        assertThat(ModelDecoder.decodeModels(toStream(new JSONObject()))).isEmpty();
+    }
+
+    @Test
+    public void decodeLikeJsonConstructorTest() throws IOException {
+        String response = "{\"id\":{\"unknown\":[1,{\"a\":2}],\"genericInfo\":{\"pca.service.model\":\"model\"," +
+                          "\"nested\":{\"a\":\"b\"}},\"variables\":{\"number\":12,\"empty\":null}}}";
+
+        List<Model> models = ModelDecoder.decodeModels(new ByteArrayInputStream(response.getBytes()));
+
+        assertThat(models).hasSize(1);
+        assertThat(models.get(0).getServiceModel()).isEqualTo("model");
+        assertThat(models.get(0).getActionType()).isEmpty();
+        assertThat(models.get(0).getVariables()).containsExactly("number", "12", "empty", null);
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void invalidResponseTest() throws IOException {
+        ModelDecoder.decodeModels(new ByteArrayInputStream("[]".getBytes()));
+    }
+
+    private static InputStream toStream(JSONObject json) {
+        return new ByteArrayInputStream(json.toJSONString().getBytes());
+    }
+}
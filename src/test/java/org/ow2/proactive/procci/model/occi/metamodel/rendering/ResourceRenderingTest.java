@@ -28,16 +28,23 @@ package org.ow2.proactive.procci.model.occi.metamodel.rendering;
 import static com.google.common.truth.Truth.assertThat;
 import static org.ow2.proactive.procci.model.occi.infrastructure.constants.InfrastructureIdentifiers.VM_IMAGE;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.codehaus.jackson.JsonNode;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.MockitoAnnotations;
+import org.ow2.proactive.procci.model.exception.SyntaxException;
 import org.ow2.proactive.procci.model.exception.UnknownAttributeException;
 import org.ow2.proactive.procci.model.occi.infrastructure.Compute;
+import org.ow2.proactive.procci.model.utils.ConvertUtils;
 import org.ow2.proactive.procci.service.occi.MixinService;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 
 public class ResourceRenderingTest {
 
@@ -111,4 +118,44 @@ public class ResourceRenderingTest {
         }
         assertThat(exception).isNull();
     }
+
+    @Test
+    public void restrictedRenderingTest() {
+        RenderingFields fields = RenderingFields.parse(Arrays.asList("occi.compute.state", "occi.compute.memory"));
+        ResourceRendering restricted = new ResourceRendering.Builder("http://schemas.ogf.org/occi/infrastructure#compute",
+                                                                     "id1",
+                                                                     fields).addAttribute("occi.compute.state", "ACTIVE")
+                                                                            .addAttribute("occi.compute.cores", 2)
+                                                                            .addMixin("vmimage")
+                                                                            .build();
+        assertThat(restricted.getId()).isEqualTo("id1");
+        assertThat(restricted.getAttributes()).containsExactly("occi.compute.state", "ACTIVE");
+        assertThat(restricted.getKind()).isNull();
+        assertThat(restricted.getMixins()).isNull();
+        assertThat(restricted.getLinks()).isNull();
+
+        //the members which are not asked are not serialised, by the connector mapper and by the REST one
+        JsonNode connectorJson = ConvertUtils.MAPPER.valueToTree(restricted);
+        com.fasterxml.jackson.databind.JsonNode restJson = new ObjectMapper().valueToTree(restricted);
+        for (String member : Arrays.asList("kind", "mixins", "actions", "links")) {
+            assertThat(connectorJson.has(member)).isFalse();
+            assertThat(restJson.has(member)).isFalse();
+        }
+        assertThat(connectorJson.get("attributes").size()).isEqualTo(1);
+        assertThat(restJson.get("id").asText()).isEqualTo("id1");
+
+        restricted = new ResourceRendering.Builder("http://schemas.ogf.org/occi/infrastructure#compute",
+                                                   "id1",
+                                                   RenderingFields.parse(Collections.singletonList("mixins"))).addAttribute("occi.compute.state",
+                                                                                                                            "ACTIVE")
+                                                                                                              .addMixin("vmimage")
+                                                                                                              .build();
+        assertThat(restricted.getMixins()).containsExactly("vmimage");
+        assertThat(restricted.getAttributes()).isNull();
+    }
+
+    @Test(expected = SyntaxException.class)
+    public void projectUnknownFieldTest() {
+        RenderingFields.parse(Collections.singletonList("state"));
+    }
 }
@@ -29,6 +29,8 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Optional;
 
 import org.junit.Before;
@@ -39,6 +41,7 @@ import org.ow2.proactive.procci.model.cloud.automation.Model;
 import org.ow2.proactive.procci.model.exception.ClientException;
 import org.ow2.proactive.procci.model.exception.MissingAttributesException;
 import org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelAttributes;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.RenderingFields;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.ResourceRendering;
 import org.ow2.proactive.procci.model.occi.platform.Status;
 import org.ow2.proactive.procci.model.occi.platform.bigdata.constants.BigDataAttributes;
@@ -191,4 +194,24 @@ public class SwarmTest {
         assertThat(rendering.getKind()).matches(BigDataKinds.SWARM.getTitle());
 
     }
+
+    @Test
+    public void getRenderingFieldsTest() throws ClientException {
+        Swarm swarm = new SwarmBuilder("hostIpTest", "masterIpTest").addAgentIp("agent1")
+                                                                    .title("titleTest")
+                                                                    .build();
+
+        ResourceRendering rendering = swarm.getRendering(RenderingFields.parse(Arrays.asList(BigDataAttributes.HOST_IP_NAME,
+                                                                                             RenderingFields.MIXINS)));
+        assertThat(rendering.getId()).isEqualTo(swarm.getRenderingId());
+        assertThat(rendering.getAttributes()).containsExactly(BigDataAttributes.HOST_IP_NAME, "hostIpTest");
+        assertThat(rendering.getMixins()).isEmpty();
+        assertThat(rendering.getKind()).isNull();
+        assertThat(rendering.getLinks()).isNull();
+
+        rendering = swarm.getRendering(RenderingFields.parse(Collections.singletonList(RenderingFields.KIND)));
+        assertThat(rendering.getKind()).matches(BigDataKinds.SWARM.getTitle());
+        assertThat(rendering.getAttributes()).isNull();
+        assertThat(rendering.getMixins()).isNull();
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.model.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.ow2.proactive.procci.model.exception.CloudAutomationClientException;
+
+
+public class FutureUtilsTest {
+
+    @Test
+    public void allOfTest() {
+        List<CompletableFuture<Integer>> calls = new ArrayList<>();
+
+        Function<String, CompletableFuture<Integer>> call = key -> {
+            CompletableFuture<Integer> pendingCall = new CompletableFuture<>();
+            calls.add(pendingCall);
+            return pendingCall;
+        };
+
+        CompletableFuture<Map<String, Integer>> result = FutureUtils.allOf(Arrays.asList("a", "bb", "a", "ccc"), 2, call);
+
+        //at most two calls in progress
+        assertThat(calls).hasSize(2);
+        calls.get(1).complete(2);
+        assertThat(calls).hasSize(3);
+        calls.get(0).complete(1);
+        assertThat(result.isDone()).isFalse();
+        calls.get(2).complete(3);
+
+        assertThat(result.join()).containsExactly("a", 1, "bb", 2, "ccc", 3).inOrder();
+    }
+
+    @Test
+    public void allOfFailureTest() {
+        List<String> calledKeys = new ArrayList<>();
+
+        CompletableFuture<Map<String, String>> result = FutureUtils.allOf(Arrays.asList("a", "b", "c"), 1, key -> {
+            calledKeys.add(key);
+            CompletableFuture<String> call = new CompletableFuture<>();
+            call.completeExceptionally(new CloudAutomationClientException(key));
+            return call;
+        });
+
+        try {
+            FutureUtils.join(result);
+            throw new AssertionError("the batch should fail");
+        } catch (CloudAutomationClientException ex) {
+            assertThat(calledKeys).containsExactly("a");
+        }
+    }
+
+    @Test
+    public void allOfEmptyTest() {
+        assertThat(FutureUtils.allOf(new ArrayList<String>(), 2, CompletableFuture::completedFuture).join()).isEmpty();
+    }
+
+    @Test
+    public void allOfCompletedCallsTest() {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            keys.add(i);
+        }
+        AtomicInteger inProgress = new AtomicInteger();
+        AtomicInteger maxInProgress = new AtomicInteger();
+
+        //the calls complete at once, they must not pile up on the stack
+        Map<Integer, Integer> values = FutureUtils.allOf(keys, 4, key -> {
+            maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+            inProgress.decrementAndGet();
+            return CompletableFuture.completedFuture(key * 2);
+        }).join();
+
+        assertThat(values).hasSize(100000);
+        assertThat(values.get(99999)).isEqualTo(199998);
+        assertThat(maxInProgress.get()).isAtMost(4);
+    }
+}
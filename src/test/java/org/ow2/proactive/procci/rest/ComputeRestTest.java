@@ -0,0 +1,330 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.rest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelAttributes.ID_NAME;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.ow2.proactive.procci.model.cloud.automation.Model;
+import org.ow2.proactive.procci.model.exception.ServerException;
+import org.ow2.proactive.procci.model.exception.UpstreamUnavailableException;
+import org.ow2.proactive.procci.model.occi.infrastructure.ComputeBuilder;
+import org.ow2.proactive.procci.model.occi.infrastructure.constants.InfrastructureIdentifiers;
+import org.ow2.proactive.procci.model.occi.metamodel.ResourceBuilder;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.EntitiesRendering;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.EntityRendering;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.RenderingFields;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.ResourceRendering;
+import org.ow2.proactive.procci.service.ConnectorConfiguration;
+import org.ow2.proactive.procci.service.InstanceFilter;
+import org.ow2.proactive.procci.service.occi.InstanceService;
+import org.ow2.proactive.procci.service.occi.MixinService;
+import org.ow2.proactive.procci.service.transformer.TransformerManager;
+import org.ow2.proactive.procci.service.transformer.TransformerType;
+import org.ow2.proactive.procci.service.transformer.occi.ComputeTransformer;
+import org.springframework.format.support.DefaultFormattingConversionService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import com.google.gson.JsonParser;
+
+
+public class ComputeRestTest {
+
+    @InjectMocks
+    private ComputeRest computeRest;
+
+    @Mock
+    private InstanceService instanceService;
+
+    @Mock
+    private MixinService mixinService;
+
+    @Mock
+    private TransformerManager transformerManager;
+
+    @Mock
+    private ComputeTransformer computeTransformer;
+
+    @Mock
+    private ConnectorConfiguration configuration;
+
+    private RequestExecutor requestExecutor;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(configuration.getRestHandlerThreads()).thenReturn(2);
+        when(configuration.getRestHandlerQueueCapacity()).thenReturn(10);
+        when(configuration.getRestStreamThreads()).thenReturn(2);
+        when(configuration.getRequestDeadlineMillis()).thenReturn(10000L);
+        when(configuration.getRestStreamBatchSize()).thenReturn(2);
+        requestExecutor = new RequestExecutor();
+        ReflectionTestUtils.setField(requestExecutor, "configuration", configuration);
+        requestExecutor.init();
+        ReflectionTestUtils.setField(computeRest, "requestExecutor", requestExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        requestExecutor.close();
+    }
+
+    @Test
+    public void streamAllComputesTest() throws Exception {
+        when(instanceService.getInstancesBuildersAsync(Optional.empty(),
+                                                       InstanceFilter.empty(),
+                                                       Optional.empty(),
+                                                       2,
+                                                       mixinService)).thenReturn(CompletableFuture.completedFuture(Arrays.asList(computeBuilder("id1"),
+                                                                                                                                 computeBuilder("id2"))));
+        when(instanceService.getInstancesBuilders(Optional.empty(),
+                                                  InstanceFilter.empty(),
+                                                  Optional.of("id2"),
+                                                  2,
+                                                  mixinService)).thenReturn(Collections.singletonList(computeBuilder("id3")));
+        when(instanceService.getRenderings(anyListOf(ResourceBuilder.class),
+                                           eq(mixinService),
+                                           eq(RenderingFields.all()))).thenAnswer(invocation -> ((List<ResourceBuilder>) invocation.getArguments()[0]).stream()
+                                                                                                                                         .map(builder -> builder.build()
+                                                                                                                                                                .getRendering())
+                                                                                                                                         .collect(Collectors.toList()));
+
+        ResponseEntity<ResponseBodyEmitter> response = computeRest.streamAllComputes(null).join();
+        assertThat(response.getStatusCode().is2xxSuccessful()).isTrue();
+        assertThat(response.getHeaders().getContentType().toString()).isEqualTo(PathConstant.APPLICATION_NDJSON_VALUE);
+
+        MockHttpServletResponse servletResponse = StreamedResponses.write(response);
+        assertThat(servletResponse.getContentType()).isEqualTo(PathConstant.APPLICATION_NDJSON_VALUE);
+
+        String[] lines = servletResponse.getContentAsString().split("\n");
+        assertThat(lines).hasLength(3);
+        List<String> ids = Arrays.stream(lines)
+                                 .map(line -> new JsonParser().parse(line).getAsJsonObject().get("id").getAsString())
+                                 .collect(Collectors.toList());
+        assertThat(ids).containsExactly("id1", "id2", "id3").inOrder();
+        //the instances are read and rendered by batches of two, the last batch not being full ends the stream
+        verify(instanceService, times(2)).getRenderings(anyListOf(ResourceBuilder.class),
+                                                        eq(mixinService),
+                                                        eq(RenderingFields.all()));
+        verify(instanceService, times(1)).getInstancesBuilders(eq(Optional.empty()),
+                                                               eq(InstanceFilter.empty()),
+                                                               eq(Optional.of("id2")),
+                                                               eq(2),
+                                                               eq(mixinService));
+        verify(instanceService, never()).getInstancesBuilders();
+    }
+
+    @Test
+    public void streamAllComputesErrorTest() {
+        CompletableFuture<List<ResourceBuilder>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new ServerException());
+        when(instanceService.getInstancesBuildersAsync(Optional.empty(),
+                                                       InstanceFilter.empty(),
+                                                       Optional.empty(),
+                                                       2,
+                                                       mixinService)).thenReturn(failed);
+
+        ResponseEntity<ResponseBodyEmitter> response = computeRest.streamAllComputes(null).join();
+        assertThat(response.getStatusCode().is5xxServerError()).isTrue();
+    }
+
+    @Test
+    public void listAllComputesPageTest() {
+        when(configuration.getRestPageDefaultLimit()).thenReturn(2);
+        when(configuration.getRestPageMaxLimit()).thenReturn(3);
+        List<ResourceBuilder> builders = Arrays.asList(computeBuilder("id1"), computeBuilder("id2"));
+        when(instanceService.getInstancesBuildersAsync(Optional.empty(),
+                                                       InstanceFilter.empty(),
+                                                       Optional.empty(),
+                                                       2,
+                                                       mixinService)).thenReturn(CompletableFuture.completedFuture(builders));
+        List<EntityRendering> renderings = builders.stream()
+                                                   .map(builder -> builder.build().getRendering())
+                                                   .collect(Collectors.toList());
+        when(instanceService.getRenderingsAsync(builders,
+                                                mixinService,
+                                                RenderingFields.all())).thenReturn(CompletableFuture.completedFuture(renderings));
+
+        ResponseEntity<EntitiesRendering> response = computeRest.listAllComputes(null, "", null, null).join();
+        assertThat(response.getStatusCode().is2xxSuccessful()).isTrue();
+        assertThat(response.getBody().getEntities().keySet()).containsExactly("id1", "id2").inOrder();
+        String next = response.getHeaders().getFirst(HttpHeaders.LINK);
+        assertThat(next).isEqualTo("<" + PathConstant.COMPUTE_PATH + "?limit=2&cursor=" + Pages.cursor("id2") +
+                                   ">; rel=\"next\"");
+
+        //the next page starts after the last id of the previous one, the limit is bounded
+        List<ResourceBuilder> nextBuilders = Collections.singletonList(computeBuilder("id3"));
+        when(instanceService.getInstancesBuildersAsync(Optional.empty(),
+                                                       InstanceFilter.empty(),
+                                                       Optional.of("id2"),
+                                                       3,
+                                                       mixinService)).thenReturn(CompletableFuture.completedFuture(nextBuilders));
+        when(instanceService.getRenderingsAsync(nextBuilders,
+                                                mixinService,
+                                                RenderingFields.all())).thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
+        response = computeRest.listAllComputes(10, Pages.cursor("id2"), null, null).join();
+        assertThat(response.getStatusCode().is2xxSuccessful()).isTrue();
+        assertThat(response.getHeaders().containsKey(HttpHeaders.LINK)).isFalse();
+
+        assertThat(computeRest.listAllComputes(0, null, null, null).join().getStatusCode().is4xxClientError()).isTrue();
+        assertThat(computeRest.listAllComputes(null, "not a cursor", null, null).join().getStatusCode().is4xxClientError()).isTrue();
+        verify(instanceService, never()).getInstancesRenderingAsync(mixinService);
+    }
+
+    @Test
+    public void listAllComputesFilterTest() {
+        when(configuration.getRestPageMaxLimit()).thenReturn(10);
+        String[] filters = { "occi.compute.cores>=4", "mixin=vmimage" };
+        InstanceFilter filter = InstanceFilter.parse(Arrays.asList(filters));
+        List<ResourceBuilder> builders = Collections.singletonList(computeBuilder("id1"));
+        when(instanceService.getInstancesBuildersAsync(Optional.empty(),
+                                                       filter,
+                                                       Optional.empty(),
+                                                       1,
+                                                       mixinService)).thenReturn(CompletableFuture.completedFuture(builders));
+        when(instanceService.getRenderingsAsync(builders,
+                                                mixinService,
+                                                RenderingFields.all())).thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
+
+        ResponseEntity<EntitiesRendering> response = computeRest.listAllComputes(1, null, filters, null).join();
+        assertThat(response.getStatusCode().is2xxSuccessful()).isTrue();
+        //the next page keeps the filters
+        assertThat(response.getHeaders().getFirst(HttpHeaders.LINK)).isEqualTo("<" + PathConstant.COMPUTE_PATH +
+                                                                               "?limit=1&filter=occi.compute.cores%3E%3D4&filter=mixin%3Dvmimage&cursor=" +
+                                                                               Pages.cursor("id1") + ">; rel=\"next\"");
+
+        assertThat(computeRest.listAllComputes(null, null, new String[] { "occi.compute.cores" }, null)
+                              .join()
+                              .getStatusCode()
+                              .is4xxClientError()).isTrue();
+    }
+
+    @Test
+    public void filterWithCommaTest() {
+        WebDataBinder binder = new WebDataBinder(null, Pages.FILTER);
+        binder.setConversionService(new DefaultFormattingConversionService());
+        computeRest.initFilterBinder(binder);
+
+        //a single filter is not split on its commas, the filters are given by repeating the parameter
+        assertThat(Arrays.asList(binder.convertIfNecessary("occi.core.title=a,b",
+                                                           String[].class))).containsExactly("occi.core.title=a,b");
+        assertThat(Arrays.asList(binder.convertIfNecessary(new String[] { "occi.core.title=a,b", "mixin=vmimage" },
+                                                           String[].class))).containsExactly("occi.core.title=a,b",
+                                                                                             "mixin=vmimage")
+                                                                            .inOrder();
+    }
+
+    @Test
+    public void listAllComputesFieldsTest() {
+        List<String> fields = Arrays.asList("occi.compute.state", "kind");
+        RenderingFields renderingFields = RenderingFields.parse(fields);
+        List<ResourceBuilder> builders = Arrays.asList(computeBuilder("id1"), computeBuilder("id2"));
+        when(instanceService.getInstancesBuildersAsync(Optional.empty(),
+                                                       InstanceFilter.empty(),
+                                                       Optional.empty(),
+                                                       Integer.MAX_VALUE,
+                                                       mixinService)).thenReturn(CompletableFuture.completedFuture(builders));
+        List<EntityRendering> renderings = builders.stream()
+                                                   .map(builder -> builder.build().getRendering(renderingFields))
+                                                   .collect(Collectors.toList());
+        when(instanceService.getRenderingsAsync(builders,
+                                                mixinService,
+                                                renderingFields)).thenReturn(CompletableFuture.completedFuture(renderings));
+
+        ResponseEntity<EntitiesRendering> response = computeRest.listAllComputes(null, null, null, fields).join();
+        assertThat(response.getStatusCode().is2xxSuccessful()).isTrue();
+        assertThat(response.getBody().getEntities().keySet()).containsExactly("id1", "id2").inOrder();
+        verify(instanceService, never()).getInstancesRenderingAsync(mixinService);
+
+        assertThat(computeRest.listAllComputes(null, null, null, Collections.singletonList("state"))
+                              .join()
+                              .getStatusCode()
+                              .is4xxClientError()).isTrue();
+    }
+
+    @Test
+    public void getComputeTest() {
+        CompletableFuture<Optional<ResourceRendering>> rendering = new CompletableFuture<>();
+        when(transformerManager.getTransformerProvider(TransformerType.COMPUTE)).thenReturn(computeTransformer);
+        when(instanceService.getRenderingAsync("id1",
+                                               computeTransformer,
+                                               mixinService,
+                                               RenderingFields.all())).thenReturn(rendering);
+
+        //the request holds no thread while cloud automation answers
+        CompletableFuture<ResponseEntity<ResourceRendering>> response = computeRest.getCompute("id1", null);
+        assertThat(response.isDone()).isFalse();
+        assertThat(requestExecutor.getActiveRequests()).isEqualTo(0);
+
+        rendering.complete(Optional.of(computeBuilder("id1").build().getRendering()));
+        assertThat(response.join().getStatusCode().is2xxSuccessful()).isTrue();
+        assertThat(response.join().getBody().getId()).isEqualTo("id1");
+
+        when(instanceService.getRenderingAsync("id2",
+                                               computeTransformer,
+                                               mixinService,
+                                               RenderingFields.all())).thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+        assertThat(computeRest.getCompute("id2", null).join().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+        CompletableFuture<Optional<ResourceRendering>> unavailable = new CompletableFuture<>();
+        unavailable.completeExceptionally(new UpstreamUnavailableException("instances", "circuit open"));
+        when(instanceService.getRenderingAsync("id3",
+                                               computeTransformer,
+                                               mixinService,
+                                               RenderingFields.all())).thenReturn(unavailable);
+        assertThat(computeRest.getCompute("id3", null).join().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    private ResourceBuilder computeBuilder(String id) {
+        return new ComputeBuilder(new Model.Builder(InfrastructureIdentifiers.COMPUTE_MODEL,
+                                                    "action").addVariable(ID_NAME, id).build());
+    }
+}
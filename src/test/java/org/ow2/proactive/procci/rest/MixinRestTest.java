@@ -30,6 +30,7 @@ import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -38,11 +39,15 @@ import org.mockito.MockitoAnnotations;
 import org.ow2.proactive.procci.model.exception.ClientException;
 import org.ow2.proactive.procci.model.exception.CloudAutomationClientException;
 import org.ow2.proactive.procci.model.exception.ServerException;
+import org.ow2.proactive.procci.model.exception.UpstreamUnavailableException;
 import org.ow2.proactive.procci.model.occi.metamodel.MixinBuilder;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.MixinRendering;
 import org.ow2.proactive.procci.service.CloudAutomationVariablesClient;
+import org.ow2.proactive.procci.service.ConnectorConfiguration;
 import org.ow2.proactive.procci.service.occi.MixinService;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
 
 
 /**
@@ -59,9 +64,26 @@ public class MixinRestTest {
     @Mock
     private MixinService mixinService;
 
+    @Mock
+    private ConnectorConfiguration configuration;
+
+    private RequestExecutor requestExecutor;
+
     @Before
     public void initMocks() {
         MockitoAnnotations.initMocks(this);
+        when(configuration.getRestHandlerThreads()).thenReturn(2);
+        when(configuration.getRestHandlerQueueCapacity()).thenReturn(10);
+        when(configuration.getRestStreamThreads()).thenReturn(2);
+        requestExecutor = new RequestExecutor();
+        ReflectionTestUtils.setField(requestExecutor, "configuration", configuration);
+        requestExecutor.init();
+        ReflectionTestUtils.setField(mixinRest, "requestExecutor", requestExecutor);
+    }
+
+    @After
+    public void close() {
+        requestExecutor.close();
     }
 
     @Test
@@ -69,25 +91,31 @@ public class MixinRestTest {
         when(mixinService.getMixinByTitle("titleTest")).thenReturn(new MixinBuilder("schemeTest", "termTest")
                                                                                                              .title("titleTest")
                                                                                                              .build());
-        ResponseEntity<MixinRendering> response = mixinRest.getMixin("titleTest");
+        ResponseEntity<MixinRendering> response = mixinRest.getMixin("titleTest").join();
         assertThat(response.getBody().getScheme()).matches("schemeTest");
         assertThat(response.getBody().getTerm()).matches("termTest");
         assertThat(response.getStatusCode().is2xxSuccessful()).isTrue();
 
         when(mixinService.getMixinByTitle("titleTest2")).thenThrow(new CloudAutomationClientException("titleTest2"));
 
-        ResponseEntity<MixinRendering> responseClientError = mixinRest.getMixin("titleTest2");
+        ResponseEntity<MixinRendering> responseClientError = mixinRest.getMixin("titleTest2").join();
         assertThat(responseClientError.getStatusCode().is4xxClientError()).isTrue();
 
         when(mixinService.getMixinByTitle("titleTest3")).thenThrow(ServerException.class);
-        ResponseEntity<MixinRendering> responseServerError = mixinRest.getMixin("titleTest3");
+        ResponseEntity<MixinRendering> responseServerError = mixinRest.getMixin("titleTest3").join();
         assertThat(responseServerError.getStatusCode().is5xxServerError()).isTrue();
+
+        when(mixinService.getMixinByTitle("titleTest4")).thenThrow(new UpstreamUnavailableException("VARIABLES",
+                                                                                                    "bulkhead full"));
+        ResponseEntity<MixinRendering> responseUnavailable = mixinRest.getMixin("titleTest4").join();
+        assertThat(responseUnavailable.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(String.valueOf(responseUnavailable.getBody())).contains("bulkhead full");
     }
 
     @Test
     public void postMixinTest() throws ClientException, IOException {
         MixinRendering mixinRendering = new MixinBuilder("schemeTest", "termTest").build().getRendering();
-        ResponseEntity<MixinRendering> response = mixinRest.createMixin(mixinRendering);
+        ResponseEntity<MixinRendering> response = mixinRest.createMixin(mixinRendering).join();
         assertThat(response.getBody().getScheme()).matches("schemeTest");
         assertThat(response.getBody().getTerm()).matches("termTest");
         assertThat(response.getStatusCode().is2xxSuccessful()).isTrue();
@@ -96,12 +124,12 @@ public class MixinRestTest {
     @Test
     public void updateMixinTest() throws ClientException, IOException {
         MixinRendering mixinRendering = new MixinBuilder("schemeTest", "termTest").build().getRendering();
-        ResponseEntity<MixinRendering> response = mixinRest.updateMixin("termTest", mixinRendering);
+        ResponseEntity<MixinRendering> response = mixinRest.updateMixin("termTest", mixinRendering).join();
         assertThat(response.getBody().getScheme()).matches("schemeTest");
         assertThat(response.getBody().getTerm()).matches("termTest");
         assertThat(response.getStatusCode().is2xxSuccessful()).isTrue();
 
-        ResponseEntity<MixinRendering> response2 = mixinRest.updateMixin("anotherTermTest", mixinRendering);
+        ResponseEntity<MixinRendering> response2 = mixinRest.updateMixin("anotherTermTest", mixinRendering).join();
         assertThat(response2.getBody().getScheme()).matches("schemeTest");
         assertThat(response2.getBody().getTerm()).matches("termTest");
         assertThat(response2.getStatusCode().is2xxSuccessful()).isTrue();
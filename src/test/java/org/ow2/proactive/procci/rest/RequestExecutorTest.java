@@ -0,0 +1,259 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.rest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.ow2.proactive.procci.model.exception.DeadlineExceededException;
+import org.ow2.proactive.procci.model.exception.ServerException;
+import org.ow2.proactive.procci.model.exception.ServiceUnavailableException;
+import org.ow2.proactive.procci.model.utils.FutureUtils;
+import org.ow2.proactive.procci.service.ConnectorConfiguration;
+import org.ow2.proactive.procci.service.http.Deadline;
+import org.ow2.proactive.procci.service.occi.RequestIdentityMap;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+
+
+public class RequestExecutorTest {
+
+    @Mock
+    private ConnectorConfiguration configuration;
+
+    private RequestExecutor requestExecutor;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(configuration.getRestHandlerThreads()).thenReturn(1);
+        when(configuration.getRestHandlerQueueCapacity()).thenReturn(1);
+        when(configuration.getRestStreamThreads()).thenReturn(1);
+        when(configuration.getRequestDeadlineMillis()).thenReturn(10000L);
+        requestExecutor = new RequestExecutor();
+        ReflectionTestUtils.setField(requestExecutor, "configuration", configuration);
+        requestExecutor.init();
+    }
+
+    @After
+    public void tearDown() {
+        requestExecutor.close();
+        Deadline.set(null);
+        RequestIdentityMap.close();
+    }
+
+    @Test
+    public void requestContextTest() {
+        Deadline deadline = Deadline.after(10000);
+        Deadline.set(deadline);
+        RequestIdentityMap.open();
+        RequestIdentityMap identityMap = RequestIdentityMap.current().get();
+
+        CompletableFuture<Optional<Deadline>> workDeadline = requestExecutor.submit(Deadline::current);
+        CompletableFuture<Optional<RequestIdentityMap>> workIdentityMap = requestExecutor.submit(RequestIdentityMap::current);
+
+        assertThat(workDeadline.join().get()).isSameAs(deadline);
+        assertThat(workIdentityMap.join().get()).isSameAs(identityMap);
+
+        Deadline.set(null);
+        RequestIdentityMap.close();
+        assertThat(requestExecutor.submit(Deadline::current).join().isPresent()).isFalse();
+        assertThat(requestExecutor.submit(RequestIdentityMap::current).join().isPresent()).isFalse();
+    }
+
+    @Test
+    public void expiredDeadlineTest() {
+        Deadline.set(Deadline.after(0));
+        try {
+            FutureUtils.join(requestExecutor.submit(() -> {
+                fail("the work of an expired request is done");
+                return null;
+            }));
+            fail("the expired request is handled");
+        } catch (DeadlineExceededException ex) {
+            assertThat(ex.getJsonError()).contains("504");
+        }
+    }
+
+    @Test
+    public void refusedRequestTest() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = requestExecutor.submit(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        });
+        started.await();
+        CompletableFuture<Boolean> queued = requestExecutor.submit(() -> true);
+        CompletableFuture<Boolean> refused = requestExecutor.submit(() -> true);
+
+        try {
+            FutureUtils.join(refused);
+            fail("the request over the queue capacity is handled");
+        } catch (ServiceUnavailableException ex) {
+            assertThat(ex.getJsonError()).contains("503");
+            assertThat(requestExecutor.getQueuedRequests()).isEqualTo(1);
+        }
+        release.countDown();
+        assertThat(running.join()).isTrue();
+        assertThat(queued.join()).isTrue();
+    }
+
+    @Test
+    public void composeTest() {
+        CompletableFuture<Boolean> composed = requestExecutor.compose(() -> CompletableFuture.completedFuture(true));
+        assertThat(composed.join()).isTrue();
+
+        CompletableFuture<Boolean> failed = requestExecutor.compose(() -> {
+            throw new ServerException();
+        });
+        assertThat(failed.isCompletedExceptionally()).isTrue();
+        assertThat(requestExecutor.getActiveRequests()).isEqualTo(0);
+    }
+
+    @Test
+    public void streamTest() throws Exception {
+        List<Optional<Deadline>> deadlines = new ArrayList<>();
+        List<Optional<RequestIdentityMap>> identityMaps = new ArrayList<>();
+        List<String> threads = new ArrayList<>();
+        Iterator<byte[]> chunks = Iterators.transform(Arrays.asList("a\n", "b\n").iterator(), line -> {
+            deadlines.add(Deadline.current());
+            identityMaps.add(RequestIdentityMap.current());
+            threads.add(Thread.currentThread().getName());
+            return line.getBytes(StandardCharsets.UTF_8);
+        });
+
+        ResponseBodyEmitter emitter = requestExecutor.stream(chunks, MediaType.TEXT_PLAIN);
+        assertThat(emitter.getTimeout()).isEqualTo(0L);
+        assertThat(StreamedResponses.write(emitter).getContentAsString()).isEqualTo("a\nb\n");
+
+        //each chunk has its own deadline and identity map
+        assertThat(deadlines.get(0).isPresent()).isTrue();
+        assertThat(deadlines.get(1).isPresent()).isTrue();
+        assertThat(deadlines.get(0).get()).isNotSameAs(deadlines.get(1).get());
+        assertThat(identityMaps.get(0).isPresent()).isTrue();
+        assertThat(identityMaps.get(1).isPresent()).isTrue();
+        assertThat(identityMaps.get(0).get()).isNotSameAs(identityMaps.get(1).get());
+        assertThat(threads.get(0)).startsWith("rest-stream-");
+    }
+
+    @Test
+    public void refusedStreamTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Iterator<byte[]> blocked = new AbstractIterator<byte[]>() {
+            @Override
+            protected byte[] computeNext() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return endOfData();
+            }
+        };
+        ResponseBodyEmitter running = requestExecutor.stream(blocked, MediaType.TEXT_PLAIN);
+        started.await();
+        ResponseBodyEmitter queued = requestExecutor.stream(Collections.emptyIterator(), MediaType.TEXT_PLAIN);
+
+        try {
+            requestExecutor.stream(Collections.emptyIterator(), MediaType.TEXT_PLAIN);
+            fail("the stream over the queue capacity is written");
+        } catch (ServiceUnavailableException ex) {
+            assertThat(ex.getJsonError()).contains("503");
+            assertThat(requestExecutor.getQueuedStreams()).isEqualTo(1);
+        }
+        //the requests are still handled while the stream threads are busy
+        assertThat(requestExecutor.submit(() -> true).join()).isTrue();
+        release.countDown();
+        assertThat(StreamedResponses.write(running).getContentAsString()).isEmpty();
+        assertThat(StreamedResponses.write(queued).getContentAsString()).isEmpty();
+    }
+
+    @Test
+    public void expiredStreamTest() throws Exception {
+        when(configuration.getRequestDeadlineMillis()).thenReturn(100L);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Iterator<byte[]> blocked = new AbstractIterator<byte[]>() {
+            @Override
+            protected byte[] computeNext() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return endOfData();
+            }
+        };
+        AtomicBoolean asked = new AtomicBoolean();
+        Iterator<byte[]> late = new AbstractIterator<byte[]>() {
+            @Override
+            protected byte[] computeNext() {
+                asked.set(true);
+                return endOfData();
+            }
+        };
+        ResponseBodyEmitter running = requestExecutor.stream(blocked, MediaType.TEXT_PLAIN);
+        started.await();
+        ResponseBodyEmitter queued = requestExecutor.stream(late, MediaType.TEXT_PLAIN);
+
+        //the queued stream waits longer than the deadline of its request
+        Thread.sleep(200);
+        release.countDown();
+        StreamedResponses.write(running);
+        StreamedResponses.write(queued);
+        assertThat(asked.get()).isFalse();
+    }
+}
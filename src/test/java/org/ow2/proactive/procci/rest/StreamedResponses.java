@@ -0,0 +1,78 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.rest;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Collections;
+
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitterReturnValueHandler;
+
+
+/**
+ * Write a streamed response body the way Spring MVC does, to read what a client would receive
+ */
+class StreamedResponses {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private StreamedResponses() {
+    }
+
+    /**
+     * Write the response body emitter given back by a controller, alone or in a response entity
+     *
+     * @return the response as written once the stream is completed
+     */
+    static MockHttpServletResponse write(Object returnValue) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(webRequest);
+        asyncManager.setAsyncWebRequest(new StandardServletAsyncWebRequest(request, response));
+
+        new ResponseBodyEmitterReturnValueHandler(Collections.singletonList(new ByteArrayHttpMessageConverter())).handleReturnValue(returnValue,
+                                                                                                                                    null,
+                                                                                                                                    new ModelAndViewContainer(),
+                                                                                                                                    webRequest);
+
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!asyncManager.hasConcurrentResult() && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertThat(asyncManager.hasConcurrentResult()).isTrue();
+        return response;
+    }
+}
@@ -26,10 +26,14 @@
 package org.ow2.proactive.procci.service;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 import static org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelAttributes.ID_NAME;
-import static org.ow2.proactive.procci.service.CloudAutomationInstanceClient.PCA_INSTANCES_ENDPOINT;
+import static org.ow2.proactive.procci.service.ConnectorConfiguration.INSTANCES_ENDPOINT;
 
+import java.io.ByteArrayInputStream;
 import java.util.List;
 import java.util.Optional;
 
@@ -43,6 +47,7 @@ import org.ow2.proactive.procci.model.InstanceModel;
 import org.ow2.proactive.procci.model.cloud.automation.Model;
 import org.ow2.proactive.procci.model.occi.infrastructure.Compute;
 import org.ow2.proactive.procci.model.occi.infrastructure.ComputeBuilder;
+import org.ow2.proactive.procci.service.http.ResponseDecoder;
 import org.ow2.proactive.procci.service.transformer.TransformerManager;
 import org.ow2.proactive.procci.service.transformer.TransformerType;
 import org.ow2.proactive.procci.service.transformer.occi.ComputeTransformer;
@@ -56,6 +61,9 @@ public class CloudAutomationInstanceClientTest {
     @Mock
     private RequestUtils requestUtils;
 
+    @Mock
+    private ConnectorConfiguration configuration;
+
     @Mock
     private TransformerManager transformerManager;
 
@@ -68,6 +76,7 @@ public class CloudAutomationInstanceClientTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        cloudAutomationInstanceClient.init();
     }
 
     @Test
@@ -78,8 +87,8 @@ public class CloudAutomationInstanceClientTest {
         Model model2 = new Model.Builder("modelT2est", "actionTest").build();
 
         //test for empty database
-        when(requestUtils.getRequest(url)).thenReturn(new JSONObject());
-        when(requestUtils.getProperty(PCA_INSTANCES_ENDPOINT)).thenReturn(url);
+        respondWith(url, new JSONObject());
+        when(configuration.getInstancesEndpoint()).thenReturn(url);
 
         List<Model> noModel = cloudAutomationInstanceClient.getModels();
 
@@ -89,7 +98,7 @@ public class CloudAutomationInstanceClientTest {
         JSONObject oneItemJson = new JSONObject();
         oneItemJson.put("id1", model1.getJson());
 
-        when(requestUtils.getRequest(url)).thenReturn(oneItemJson);
+        respondWith(url, oneItemJson);
 
         List<Model> uniqueModel = cloudAutomationInstanceClient.getModels();
 
@@ -100,7 +109,7 @@ public class CloudAutomationInstanceClientTest {
         twoItemJson.put("id2", model1.getJson());
         twoItemJson.put("id3", model2.getJson());
 
-        when(requestUtils.getRequest(url)).thenReturn(twoItemJson);
+        respondWith(url, twoItemJson);
 
         List<Model> twoModels = cloudAutomationInstanceClient.getModels();
 
@@ -117,10 +126,10 @@ public class CloudAutomationInstanceClientTest {
         Model model1 = new Model.Builder("model1Test", "actionTest").addVariable(ID_NAME, id1).build();
         Model model2 = new Model.Builder("modelT2est", "actionTest").addVariable(ID_NAME, id2).build();
 
-        when(requestUtils.getProperty(PCA_INSTANCES_ENDPOINT)).thenReturn(url);
+        when(configuration.getInstancesEndpoint()).thenReturn(url);
 
         //test for empty database
-        when(requestUtils.getRequest(url)).thenReturn(new JSONObject());
+        respondWith(url, new JSONObject());
 
         Optional<Model> noModel = cloudAutomationInstanceClient.getInstanceByVariable("noKey", "noValue");
 
@@ -129,7 +138,7 @@ public class CloudAutomationInstanceClientTest {
         //test for one item in the database
         JSONObject oneItemJson = new JSONObject();
         oneItemJson.put("id1", model1.getJson());
-        when(requestUtils.getRequest(url)).thenReturn(oneItemJson);
+        respondWith(url, oneItemJson);
 
         //with the good key and value
         Optional<Model> goodModel = cloudAutomationInstanceClient.getInstanceByVariable(ID_NAME, id1);
@@ -148,7 +157,7 @@ public class CloudAutomationInstanceClientTest {
         twoItemJson.put("id2", model1.getJson());
         twoItemJson.put("id3", model2.getJson());
 
-        when(requestUtils.getRequest(url)).thenReturn(twoItemJson);
+        respondWith(url, twoItemJson);
 
         Optional<Model> goodModel2 = cloudAutomationInstanceClient.getInstanceByVariable(ID_NAME, id2);
 
@@ -161,15 +170,15 @@ public class CloudAutomationInstanceClientTest {
         String id1 = "id1";
         String endpointTest = "endpointTest";
 
-        Model model1 = new Model.Builder("model1Test", "actionTest").addVariable(PCA_INSTANCES_ENDPOINT, endpointTest)
+        Model model1 = new Model.Builder("model1Test", "actionTest").addVariable(INSTANCES_ENDPOINT, endpointTest)
                                                                     .addVariable(ID_NAME, id1)
                                                                     .build();
         Compute computeReceive = new ComputeBuilder(model1).build();
 
-        when(requestUtils.getProperty(PCA_INSTANCES_ENDPOINT)).thenReturn(url);
+        when(configuration.getInstancesEndpoint()).thenReturn(url);
 
         //test for empty database
-        when(requestUtils.getRequest(url)).thenReturn(new JSONObject());
+        respondWith(url, new JSONObject());
 
         Optional<InstanceModel> emptyModel = cloudAutomationInstanceClient.getInstanceModel("noKey",
                                                                                             "noValue",
@@ -179,9 +188,9 @@ public class CloudAutomationInstanceClientTest {
         //test for one item in the database
         JSONObject oneItemJson = new JSONObject();
         oneItemJson.put("id1", model1.getJson());
-        when(requestUtils.getRequest(url)).thenReturn(oneItemJson);
+        respondWith(url, oneItemJson);
         when(transformerManager.getTransformerProvider(TransformerType.COMPUTE)).thenReturn(computeTransformer);
-        when(computeTransformer.toInstanceModel(model1)).thenReturn(computeReceive);
+        when(computeTransformer.toInstanceModelAsync(model1)).thenReturn(completedFuture(computeReceive));
 
         Optional<InstanceModel> resultInstance = cloudAutomationInstanceClient.getInstanceModel(ID_NAME,
                                                                                                 id1,
@@ -204,11 +213,11 @@ public class CloudAutomationInstanceClientTest {
                                                                           .addVariable("endpoint", endpointTest)
                                                                           .build();
 
-        when(requestUtils.getProperty(PCA_INSTANCES_ENDPOINT)).thenReturn(url);
+        when(configuration.getInstancesEndpoint()).thenReturn(url);
         when(transformerManager.getTransformerProvider(TransformerType.COMPUTE)).thenReturn(computeTransformer);
-        when(requestUtils.postRequest(sendModel.getJson(), url)).thenReturn(receiveModel.getJson());
+        when(requestUtils.postRequestAsync(sendModel.getJson(), url)).thenReturn(completedFuture(receiveModel.getJson()));
         when(computeTransformer.toCloudAutomationModel(sendCompute, "create")).thenReturn(sendModel);
-        when(computeTransformer.toInstanceModel(receiveModel)).thenReturn(receiveCompute);
+        when(computeTransformer.toInstanceModelAsync(receiveModel)).thenReturn(completedFuture(receiveCompute));
 
         InstanceModel instanceModel = cloudAutomationInstanceClient.postInstanceModel(sendCompute,
                                                                                       "create",
@@ -222,4 +231,11 @@ public class CloudAutomationInstanceClientTest {
         assertThat(computeResult).isEqualTo(receiveCompute);
 
     }
+
+    private void respondWith(String url, JSONObject json) {
+        when(requestUtils.getRequestAsync(eq(url), any(ResponseDecoder.class))).thenAnswer(invocation -> {
+            ResponseDecoder<?> decoder = (ResponseDecoder<?>) invocation.getArguments()[1];
+            return completedFuture(decoder.decode(new ByteArrayInputStream(json.toJSONString().getBytes())));
+        });
+    }
 }
@@ -0,0 +1,180 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.ow2.proactive.procci.model.exception.CloudAutomationClientException;
+import org.ow2.proactive.procci.service.http.HttpTransport;
+import org.ow2.proactive.procci.service.http.Upstream;
+
+
+public class CloudAutomationVariablesClientTest {
+
+    private static final String URL = "http://variables";
+
+    @InjectMocks
+    private CloudAutomationVariablesClient cloudAutomationVariablesClient;
+
+    @Mock
+    private RequestUtils requestUtils;
+
+    @Mock
+    private HttpTransport httpTransport;
+
+    @Mock
+    private ConnectorConfiguration configuration;
+
+    private final Map<String, List<Integer>> statuses = new HashMap<>();
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(configuration.getVariablesEndpoint()).thenReturn(URL);
+        when(configuration.getVariablesBatchParallelism()).thenReturn(2);
+        when(httpTransport.executeWithRetry(eq(Upstream.VARIABLES),
+                                            any(Supplier.class))).thenAnswer(invocation -> respond(((Supplier<HttpUriRequest>) invocation.getArguments()[1]).get()));
+        when(httpTransport.execute(eq(Upstream.VARIABLES),
+                                   any(HttpUriRequest.class))).thenAnswer(invocation -> respond((HttpUriRequest) invocation.getArguments()[1]));
+        when(requestUtils.readHttpResponse(any(HttpResponse.class), anyString(), anyString())).thenReturn("value");
+    }
+
+    @Test
+    public void findTest() {
+        respondWith("GET " + URL + "/missing", HttpStatus.SC_NOT_FOUND);
+
+        assertThat(cloudAutomationVariablesClient.find("key")).isEqualTo(Optional.of("value"));
+        assertThat(cloudAutomationVariablesClient.find("missing")).isEqualTo(Optional.empty());
+
+        Exception ex = null;
+        try {
+            cloudAutomationVariablesClient.get("missing");
+        } catch (CloudAutomationClientException e) {
+            ex = e;
+        }
+        assertThat(((CloudAutomationClientException) ex).isNotFound()).isTrue();
+        //the expected missing variable is not read as an error response
+        verify(requestUtils).readHttpResponse(any(HttpResponse.class), eq(URL + "/key"), eq("GET"));
+        verify(requestUtils, never()).readHttpResponse(any(HttpResponse.class), eq(URL + "/missing"), anyString());
+    }
+
+    @Test
+    public void upsertTest() {
+        respondWith("PUT " + URL + "/new", HttpStatus.SC_NOT_FOUND);
+
+        cloudAutomationVariablesClient.upsert("existing", "value");
+        assertThat(requests).containsExactly("PUT " + URL + "/existing");
+
+        requests.clear();
+        cloudAutomationVariablesClient.upsert("new", "value");
+        assertThat(requests).containsExactly("PUT " + URL + "/new", "POST " + URL + "?key=new").inOrder();
+    }
+
+    @Test
+    public void upsertAllTest() {
+        respondWith("PUT " + URL + "/new", HttpStatus.SC_NOT_FOUND);
+        Map<String, String> values = new HashMap<>();
+        values.put("existing", "value");
+        values.put("new", "value");
+
+        cloudAutomationVariablesClient.upsertAll(values);
+
+        assertThat(requests).containsExactly("PUT " + URL + "/existing",
+                                             "PUT " + URL + "/new",
+                                             "POST " + URL + "?key=new");
+        assertThat(cloudAutomationVariablesClient.putAll(values)).containsExactly("new");
+    }
+
+    @Test
+    public void modifyTest() {
+        Optional<String> value = cloudAutomationVariablesClient.modify("key", current -> current.map(v -> v + "!"));
+
+        assertThat(value).isEqualTo(Optional.of("value!"));
+        assertThat(requests).containsExactly("GET " + URL + "/key", "PUT " + URL + "/key").inOrder();
+    }
+
+    @Test
+    public void modifyCreateTest() {
+        respondWith("GET " + URL + "/key", HttpStatus.SC_NOT_FOUND);
+
+        Optional<String> value = cloudAutomationVariablesClient.modify("key", current -> Optional.of("created"));
+
+        assertThat(value).isEqualTo(Optional.of("created"));
+        assertThat(requests).containsExactly("GET " + URL + "/key", "POST " + URL + "?key=key").inOrder();
+    }
+
+    @Test
+    public void modifyMissingTest() {
+        respondWith("GET " + URL + "/key", HttpStatus.SC_NOT_FOUND);
+
+        Optional<String> value = cloudAutomationVariablesClient.modify("key", current -> Optional.empty());
+
+        assertThat(value.isPresent()).isFalse();
+        assertThat(requests).containsExactly("GET " + URL + "/key");
+    }
+
+    private void respondWith(String call, Integer... callStatuses) {
+        statuses.put(call, new ArrayList<>(Arrays.asList(callStatuses)));
+    }
+
+    private CompletableFuture<HttpResponse> respond(HttpUriRequest request) {
+        String call = request.getMethod() + " " + request.getURI();
+        requests.add(call);
+        //the last status of a call is given again to the next calls
+        List<Integer> callStatuses = statuses.getOrDefault(call, Collections.singletonList(HttpStatus.SC_OK));
+        int status = callStatuses.size() > 1 ? callStatuses.remove(0) : callStatuses.get(0);
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null);
+        return CompletableFuture.completedFuture(response);
+    }
+}
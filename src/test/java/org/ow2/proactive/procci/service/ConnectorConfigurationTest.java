@@ -0,0 +1,126 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ow2.proactive.procci.service.http.Upstream;
+
+
+public class ConnectorConfigurationTest {
+
+    private Properties properties;
+
+    @Before
+    public void setUp() {
+        properties = new Properties();
+        properties.setProperty(ConnectorConfiguration.INSTANCES_ENDPOINT, "http://localhost:8080/instances");
+        properties.setProperty(ConnectorConfiguration.VARIABLES_ENDPOINT, "http://localhost:8080/variables");
+        properties.setProperty(ConnectorConfiguration.SCHEDULER_LOGIN_ENDPOINT, "https://localhost:8443/login");
+        properties.setProperty(ConnectorConfiguration.LOGIN_NAME, "admin");
+        properties.setProperty(ConnectorConfiguration.LOGIN_PASSWORD, "password");
+    }
+
+    @Test
+    public void loadConfigurationFileTest() {
+        ConnectorConfiguration configuration = new ConnectorConfiguration();
+        assertThat(configuration.getSchedulerLoginEndpoint()).isNotEmpty();
+        assertThat(configuration.getInstancesEndpoint()).isNotEmpty();
+        assertThat(configuration.getVariablesEndpoint()).isNotEmpty();
+
+        configuration.reload();
+        assertThat(configuration.getSchedulerLoginEndpoint()).isNotEmpty();
+    }
+
+    @Test
+    public void defaultValuesTest() {
+        ConnectorConfiguration configuration = new ConnectorConfiguration(properties);
+        assertThat(configuration.getInstancesEndpoint()).isEqualTo("http://localhost:8080/instances");
+        assertThat(configuration.getLoginPassword()).isEqualTo("password");
+        assertThat(configuration.getSessionTtlMillis()).isEqualTo(1800000L);
+        assertThat(configuration.getPoolMaxTotal()).isEqualTo(100);
+        assertThat(configuration.getMaxConcurrentCalls(Upstream.VARIABLES)).isAtLeast(configuration.getVariablesBatchParallelism() +
+                                                                                      configuration.getMixinResolutionParallelism());
+        assertThat(configuration.getBulkheadMaxWaitMillis()).isEqualTo(500L);
+    }
+
+    @Test
+    public void reloadTest() {
+        properties.setProperty(ConnectorConfiguration.POOL_MAX_TOTAL, "80");
+        ConnectorConfiguration configuration = new ConnectorConfiguration(properties);
+
+        Properties reloaded = new Properties();
+        reloaded.putAll(properties);
+        reloaded.setProperty(ConnectorConfiguration.POOL_MAX_TOTAL, "120");
+        reloaded.setProperty(ConnectorConfiguration.SESSION_TTL, "600000");
+        reloaded.setProperty(ConnectorConfiguration.REST_PAGE_MAX_LIMIT, "500");
+        reloaded.setProperty(ConnectorConfiguration.LOGIN_PASSWORD, "newPassword");
+        configuration.reload(reloaded);
+
+        //the values read on each use change, the ones read at startup are kept
+        assertThat(configuration.getRestPageMaxLimit()).isEqualTo(500);
+        assertThat(configuration.getLoginPassword()).isEqualTo("newPassword");
+        assertThat(configuration.getPoolMaxTotal()).isEqualTo(80);
+        assertThat(configuration.getSessionTtlMillis()).isEqualTo(1800000L);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingEndpointTest() {
+        properties.remove(ConnectorConfiguration.VARIABLES_ENDPOINT);
+        new ConnectorConfiguration(properties);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void invalidEndpointTest() {
+        properties.setProperty(ConnectorConfiguration.INSTANCES_ENDPOINT, "localhost:8080/instances");
+        new ConnectorConfiguration(properties);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void invalidNumberTest() {
+        properties.setProperty(ConnectorConfiguration.POOL_MAX_TOTAL, "-1");
+        new ConnectorConfiguration(properties);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void inconsistentSessionTest() {
+        properties.setProperty(ConnectorConfiguration.SESSION_TTL, "1000");
+        properties.setProperty(ConnectorConfiguration.SESSION_REFRESH_MARGIN, "1000");
+        new ConnectorConfiguration(properties);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void variablesFanOutTest() {
+        properties.setProperty(ConnectorConfiguration.VARIABLES_BATCH_PARALLELISM, "8");
+        properties.setProperty(ConnectorConfiguration.MIXIN_RESOLUTION_PARALLELISM, "8");
+        properties.setProperty("upstream.variables.max-concurrent-calls", "12");
+        new ConnectorConfiguration(properties);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.ow2.proactive.procci.model.cloud.automation.Model;
+import org.ow2.proactive.procci.model.exception.SyntaxException;
+import org.ow2.proactive.procci.service.InstanceFilter.Condition;
+import org.ow2.proactive.procci.service.InstanceFilter.Operator;
+
+
+public class InstanceFilterTest {
+
+    private final Model model = new Model.Builder("model", "create").addVariable("occi.compute.state", "active")
+                                                                    .addVariable("occi.compute.cores", "16")
+                                                                    .addVariable("occi.core.title", "web-1")
+                                                                    .build();
+
+    @Test
+    public void parseTest() {
+        InstanceFilter filter = InstanceFilter.parse(Arrays.asList("occi.compute.state=active",
+                                                                   "occi.compute.cores>=4",
+                                                                   "occi.compute.cores<32",
+                                                                   "occi.core.title=web*",
+                                                                   "mixin=vmimage"));
+
+        assertThat(filter.getConditions()).containsExactly(new Condition("occi.compute.state", Operator.EQUAL, "active"),
+                                                           new Condition("occi.compute.cores",
+                                                                         Operator.GREATER_OR_EQUAL,
+                                                                         "4"),
+                                                           new Condition("occi.compute.cores", Operator.LESS, "32"),
+                                                           new Condition("occi.core.title", Operator.PREFIX, "web"))
+                                          .inOrder();
+        assertThat(filter.getMixins()).containsExactly("vmimage");
+        assertThat(filter.getConditions().stream().allMatch(condition -> condition.matches(model))).isTrue();
+
+        assertThat(InstanceFilter.parse(null).isEmpty()).isTrue();
+        assertThat(InstanceFilter.parse(Collections.emptyList())).isEqualTo(InstanceFilter.empty());
+    }
+
+    @Test
+    public void matchesTest() {
+        //a number bound compares the values as numbers, 16 is greater than 4 even if "16" is before "4"
+        assertThat(new Condition("occi.compute.cores", Operator.GREATER, "4").matches(model)).isTrue();
+        assertThat(new Condition("occi.compute.cores", Operator.LESS_OR_EQUAL, "16.0").matches(model)).isTrue();
+        assertThat(new Condition("occi.compute.state", Operator.GREATER, "4").matches(model)).isFalse();
+        //a string bound compares the values as strings
+        assertThat(new Condition("occi.compute.state", Operator.GREATER_OR_EQUAL, "act").matches(model)).isTrue();
+        assertThat(new Condition("occi.compute.state", Operator.LESS, "act").matches(model)).isFalse();
+        assertThat(new Condition("occi.compute.state", Operator.EQUAL, "inactive").matches(model)).isFalse();
+        assertThat(new Condition("occi.core.title", Operator.PREFIX, "web-").matches(model)).isTrue();
+        assertThat(new Condition("occi.core.summary", Operator.PREFIX, "").matches(model)).isFalse();
+    }
+
+    @Test
+    public void parseErrorTest() {
+        for (String filter : Arrays.asList("occi.compute.state", "=active", "occi.compute.state=", "mixin>=a")) {
+            try {
+                InstanceFilter.parse(Collections.singletonList(filter));
+                fail(filter + " is read as a filter");
+            } catch (SyntaxException ex) {
+                assertThat(ex.getStringException()).isEqualTo(filter);
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelAttributes.ID_NAME;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.ow2.proactive.procci.model.cloud.automation.Model;
+import org.ow2.proactive.procci.service.InstanceFilter.Condition;
+import org.ow2.proactive.procci.service.InstanceFilter.Operator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+
+public class InstanceIndexTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final AtomicLong time = new AtomicLong();
+
+    private final AtomicReference<CompletableFuture<List<Model>>> response = new AtomicReference<>();
+
+    private final InstanceIndex instanceIndex = new InstanceIndex(() -> {
+        loads.incrementAndGet();
+        return response.get();
+    }, Collections.singletonList(ID_NAME), 100, 1000, time::get);
+
+    private final Model model1 = new Model.Builder("model1", "create").addVariable(ID_NAME, "id1")
+                                                                      .addVariable("endpoint", "host1")
+                                                                      .build();
+
+    private final Model model2 = new Model.Builder("model2", "create").addVariable(ID_NAME, "id2").build();
+
+    @Test
+    public void findTest() {
+        response.set(completedFuture(ImmutableList.of(model1, model2)));
+
+        assertThat(instanceIndex.find(ID_NAME, "id2").join().get()).isEqualTo(model2);
+        assertThat(instanceIndex.find("endpoint", "host1").join().get()).isEqualTo(model1);
+        assertThat(instanceIndex.find(ID_NAME, "id3").join().isPresent()).isFalse();
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(instanceIndex.getHits()).isEqualTo(2);
+        assertThat(instanceIndex.getMisses()).isEqualTo(1);
+        assertThat(instanceIndex.getSize()).isEqualTo(2);
+    }
+
+    @Test
+    public void findAllTest() {
+        response.set(completedFuture(ImmutableList.of(model1, model2)));
+
+        Map<String, Model> models = instanceIndex.findAll(ID_NAME, ImmutableList.of("id1", "id2", "id3")).join();
+
+        assertThat(models).containsExactly("id1", model1, "id2", model2);
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(instanceIndex.getHits()).isEqualTo(2);
+        assertThat(instanceIndex.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void backgroundRefreshTest() {
+        response.set(completedFuture(ImmutableList.of(model1)));
+        instanceIndex.find(ID_NAME, "id1").join();
+
+        //a stale index answers at once and is reloaded in background
+        CompletableFuture<List<Model>> pendingLoad = new CompletableFuture<>();
+        response.set(pendingLoad);
+        time.set(100);
+        assertThat(instanceIndex.find(ID_NAME, "id2").join().isPresent()).isFalse();
+        assertThat(instanceIndex.find(ID_NAME, "id2").join().isPresent()).isFalse();
+        assertThat(loads.get()).isEqualTo(2);
+
+        pendingLoad.complete(ImmutableList.of(model1, model2));
+        assertThat(instanceIndex.find(ID_NAME, "id2").join().get()).isEqualTo(model2);
+        assertThat(instanceIndex.getRefreshes()).isEqualTo(2);
+    }
+
+    @Test
+    public void maxStalenessTest() {
+        response.set(completedFuture(ImmutableList.of(model1)));
+        instanceIndex.find(ID_NAME, "id1").join();
+
+        CompletableFuture<List<Model>> pendingLoad = new CompletableFuture<>();
+        response.set(pendingLoad);
+        time.set(1000);
+        CompletableFuture<?> lookup = instanceIndex.find(ID_NAME, "id2");
+        assertThat(lookup.isDone()).isFalse();
+
+        pendingLoad.complete(ImmutableList.of(model2));
+        assertThat(lookup.join()).isEqualTo(Optional.of(model2));
+    }
+
+    @Test
+    public void writeThroughTest() {
+        response.set(completedFuture(ImmutableList.of(model1)));
+        instanceIndex.find(ID_NAME, "id1").join();
+
+        //a reload started before the creation does not remove the created instance
+        CompletableFuture<List<Model>> pendingLoad = new CompletableFuture<>();
+        response.set(pendingLoad);
+        time.set(500);
+        CompletableFuture<?> refresh = instanceIndex.refresh();
+        time.set(501);
+        instanceIndex.put(model2);
+        assertThat(instanceIndex.find(ID_NAME, "id2").join().get()).isEqualTo(model2);
+
+        pendingLoad.complete(ImmutableList.of(model1));
+        refresh.join();
+        assertThat(instanceIndex.find(ID_NAME, "id2").join().get()).isEqualTo(model2);
+        assertThat(instanceIndex.getSize()).isEqualTo(2);
+    }
+
+    @Test
+    public void putReplacesTheIndexedValuesTest() {
+        response.set(completedFuture(ImmutableList.of(model1, model2)));
+        instanceIndex.find(ID_NAME, "id1").join();
+
+        //the created instance wins over an instance of another model with the same value
+        Model created = new Model.Builder("model2", "create").addVariable(ID_NAME, "id1").build();
+        instanceIndex.put(created);
+
+        assertThat(instanceIndex.find(ID_NAME, "id1").join().get()).isEqualTo(created);
+        assertThat(instanceIndex.page(ID_NAME, Optional.of("model1"), Optional.empty(), 5).join()).isEmpty();
+        assertThat(instanceIndex.page(ID_NAME, Optional.of("model2"), Optional.empty(), 5).join()).containsExactly(created,
+                                                                                                                   model2)
+                                                                                                  .inOrder();
+        assertThat(instanceIndex.getSize()).isEqualTo(3);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void pageTest() {
+        Model model3 = new Model.Builder("model1", "create").addVariable(ID_NAME, "id3").build();
+        Model model4 = new Model.Builder("model1", "create").addVariable("endpoint", "host4").build();
+        response.set(completedFuture(ImmutableList.of(model3, model4, model2, model1)));
+
+        assertThat(instanceIndex.page(ID_NAME, Optional.empty(), Optional.empty(), 2).join()).containsExactly(model1,
+                                                                                                              model2)
+                                                                                             .inOrder();
+        assertThat(instanceIndex.page(ID_NAME, Optional.empty(), Optional.of("id2"), 2).join()).containsExactly(model3);
+        assertThat(instanceIndex.page(ID_NAME, Optional.empty(), Optional.of("id3"), 2).join()).isEmpty();
+
+        //the page of a cloud automation model only contains its instances
+        assertThat(instanceIndex.page(ID_NAME, Optional.of("model1"), Optional.empty(), 5).join()).containsExactly(model1,
+                                                                                                                   model3)
+                                                                                                  .inOrder();
+        assertThat(instanceIndex.page(ID_NAME, Optional.of("model3"), Optional.empty(), 5).join()).isEmpty();
+
+        //a variable which is not indexed is sorted for the page
+        assertThat(instanceIndex.page("endpoint", Optional.empty(), Optional.empty(), 5).join()).containsExactly(model1,
+                                                                                                                 model4)
+                                                                                                .inOrder();
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void queryTest() {
+        Model small = new Model.Builder("model1", "create").addVariable(ID_NAME, "id3")
+                                                           .addVariable("cores", "2")
+                                                           .addVariable("state", "active")
+                                                           .build();
+        Model large = new Model.Builder("model1", "create").addVariable(ID_NAME, "id4")
+                                                           .addVariable("cores", "16")
+                                                           .addVariable("state", "active")
+                                                           .build();
+        Model stopped = new Model.Builder("model2", "create").addVariable(ID_NAME, "id5")
+                                                             .addVariable("cores", "8")
+                                                             .addVariable("state", "inactive")
+                                                             .build();
+        response.set(completedFuture(ImmutableList.of(stopped, large, small, model1, model2)));
+
+        Condition active = new Condition("state", Operator.EQUAL, "active");
+        Condition atLeastFour = new Condition("cores", Operator.GREATER_OR_EQUAL, "4");
+        assertThat(query(Optional.empty(), ImmutableList.of(active), Optional.empty(), Optional.empty(), 10)).containsExactly(small,
+                                                                                                                                 large)
+                                                                                                                .inOrder();
+        assertThat(query(Optional.empty(), ImmutableList.of(atLeastFour), Optional.empty(), Optional.empty(), 10)).containsExactly(large,
+                                                                                                                                      stopped)
+                                                                                                                     .inOrder();
+        assertThat(query(Optional.empty(),
+                         ImmutableList.of(active, atLeastFour),
+                         Optional.empty(),
+                         Optional.empty(),
+                         10)).containsExactly(large);
+        assertThat(query(Optional.of("model2"),
+                         ImmutableList.of(atLeastFour),
+                         Optional.empty(),
+                         Optional.empty(),
+                         10)).containsExactly(stopped);
+        assertThat(query(Optional.empty(),
+                         ImmutableList.of(new Condition("cores", Operator.LESS, "4")),
+                         Optional.empty(),
+                         Optional.empty(),
+                         10)).containsExactly(small);
+
+        //the values and the cursor restrict the page, which keeps the order of the ids
+        assertThat(query(Optional.empty(),
+                         ImmutableList.of(),
+                         Optional.of(ImmutableSet.of("id5", "id1", "id9")),
+                         Optional.empty(),
+                         10)).containsExactly(model1, stopped).inOrder();
+        assertThat(query(Optional.empty(), ImmutableList.of(atLeastFour), Optional.empty(), Optional.of("id4"), 10)).containsExactly(stopped);
+        assertThat(query(Optional.empty(), ImmutableList.of(active), Optional.empty(), Optional.empty(), 1)).containsExactly(small);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    private List<Model> query(Optional<String> serviceModel, List<Condition> conditions, Optional<Set<String>> values,
+            Optional<String> after, int limit) {
+        return instanceIndex.query(ID_NAME, serviceModel, conditions, values, after, limit).join();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+
+public class SchedulerSessionManagerTest {
+
+    private final AtomicInteger logins = new AtomicInteger();
+
+    private final AtomicLong time = new AtomicLong();
+
+    private final SchedulerSessionManager sessionManager = new SchedulerSessionManager(() -> completedFuture("session" +
+                                                                                                             logins.incrementAndGet()),
+                                                                                       1000,
+                                                                                       100,
+                                                                                       time::get);
+
+    @Test
+    public void cachedSessionTest() {
+        assertThat(sessionManager.getSessionId()).isEqualTo("session1");
+        time.set(899);
+        assertThat(sessionManager.getSessionId()).isEqualTo("session1");
+        assertThat(logins.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void refreshBeforeExpirationTest() {
+        assertThat(sessionManager.getSessionId()).isEqualTo("session1");
+        time.set(900);
+        assertThat(sessionManager.getSessionId()).isEqualTo("session2");
+        assertThat(logins.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void renewTest() {
+        String rejected = sessionManager.getSessionId();
+        assertThat(sessionManager.renew(rejected).join()).isEqualTo("session2");
+
+        //a session already renewed by another caller is not renewed twice
+        assertThat(sessionManager.renew(rejected).join()).isEqualTo("session2");
+        assertThat(logins.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void concurrentLoginTest() throws Exception {
+        CompletableFuture<String> pendingLogin = new CompletableFuture<>();
+        SchedulerSessionManager slowSessionManager = new SchedulerSessionManager(() -> {
+            logins.incrementAndGet();
+            return pendingLogin;
+        }, 1000, 100, time::get);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<CompletableFuture<String>>> sessions = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                sessions.add(executor.submit(slowSessionManager::getSessionIdAsync));
+            }
+            for (Future<CompletableFuture<String>> session : sessions) {
+                assertThat(session.get().isDone()).isFalse();
+            }
+            pendingLogin.complete("session1");
+
+            for (Future<CompletableFuture<String>> session : sessions) {
+                assertThat(session.get().get()).isEqualTo("session1");
+            }
+            assertThat(logins.get()).isEqualTo(1);
+            assertThat(slowSessionManager.getSessionId()).isEqualTo("session1");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
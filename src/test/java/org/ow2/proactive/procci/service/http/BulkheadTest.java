@@ -0,0 +1,82 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.http;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class BulkheadTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final Bulkhead bulkhead = new Bulkhead(1);
+
+    @After
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void waitForPermitTest() throws Exception {
+        assertThat(bulkhead.acquire(1000, scheduler).get()).isTrue();
+
+        CompletableFuture<Boolean> waiting = bulkhead.acquire(10000, scheduler);
+        assertThat(waiting.isDone()).isFalse();
+        assertThat(bulkhead.getWaitingCalls()).isEqualTo(1);
+
+        //the permit goes to the waiting call instead of back to the bulkhead
+        bulkhead.release();
+        assertThat(waiting.get(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(bulkhead.getActiveCalls()).isEqualTo(1);
+        assertThat(bulkhead.getWaitingCalls()).isEqualTo(0);
+
+        bulkhead.release();
+        assertThat(bulkhead.getActiveCalls()).isEqualTo(0);
+        assertThat(bulkhead.getRejectedCalls()).isEqualTo(0);
+    }
+
+    @Test
+    public void waitTimeoutTest() throws Exception {
+        assertThat(bulkhead.acquire(1000, scheduler).get()).isTrue();
+
+        assertThat(bulkhead.acquire(0, scheduler).get()).isFalse();
+        assertThat(bulkhead.acquire(50, scheduler).get(1, TimeUnit.SECONDS)).isFalse();
+        assertThat(bulkhead.getRejectedCalls()).isEqualTo(2);
+        assertThat(bulkhead.getWaitingCalls()).isEqualTo(0);
+
+        //the refused calls do not take the permit released later
+        bulkhead.release();
+        assertThat(bulkhead.getActiveCalls()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.http;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.ow2.proactive.procci.service.http.CircuitBreaker.State;
+
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong time = new AtomicLong();
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker.Builder("test").windowSize(4)
+                                                                                    .minimumCalls(4)
+                                                                                    .failureRateThreshold(50)
+                                                                                    .slowCallRateThreshold(75)
+                                                                                    .slowCallDurationMillis(100)
+                                                                                    .openDurationMillis(1000)
+                                                                                    .halfOpenCalls(2)
+                                                                                    .clock(time::get)
+                                                                                    .build();
+
+    @Test
+    public void failureRateTest() {
+        call(true, 10);
+        call(true, 10);
+        call(false, 10);
+        //too few calls to compute a rate
+        assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+        assertThat(circuitBreaker.getFailureRate()).isEqualTo(-1f);
+
+        call(false, 10);
+        assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+        assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+        assertThat(circuitBreaker.getNotPermittedCalls()).isEqualTo(1);
+    }
+
+    @Test
+    public void slidingWindowTest() {
+        call(true, 10);
+        call(true, 10);
+        call(false, 10);
+        call(false, 10);
+
+        //the window only keeps the last calls, the first failures are forgotten
+        CircuitBreaker healthy = new CircuitBreaker.Builder("healthy").windowSize(4)
+                                                                      .minimumCalls(4)
+                                                                      .failureRateThreshold(50)
+                                                                      .clock(time::get)
+                                                                      .build();
+        for (boolean failed : new boolean[] { true, false, false, false, false, true }) {
+            assertThat(healthy.tryAcquirePermission()).isTrue();
+            if (failed) {
+                healthy.onError(10);
+            } else {
+                healthy.onSuccess(10);
+            }
+        }
+        assertThat(healthy.getState()).isEqualTo(State.CLOSED);
+        assertThat(healthy.getFailureRate()).isEqualTo(25f);
+    }
+
+    @Test
+    public void slowCallRateTest() {
+        call(false, 100);
+        call(false, 200);
+        call(false, 10);
+        assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+
+        call(false, 150);
+        assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+        assertThat(circuitBreaker.getSlowCalls()).isEqualTo(3);
+    }
+
+    @Test
+    public void halfOpenTest() {
+        open();
+        time.set(1000);
+        assertThat(circuitBreaker.getState()).isEqualTo(State.HALF_OPEN);
+
+        //only the trial calls are permitted
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+
+        circuitBreaker.onSuccess(10);
+        circuitBreaker.onSuccess(10);
+        assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+        assertThat(circuitBreaker.getFailureRate()).isEqualTo(-1f);
+    }
+
+    @Test
+    public void halfOpenFailureTest() {
+        open();
+        time.set(1000);
+
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        circuitBreaker.onError(10);
+        assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+
+        time.set(1999);
+        assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+        time.set(2000);
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    }
+
+    @Test
+    public void ignoredCallTest() {
+        open();
+        time.set(1000);
+
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        circuitBreaker.onIgnored();
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            call(true, 10);
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+    }
+
+    private void call(boolean failed, long durationMillis) {
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        if (failed) {
+            circuitBreaker.onError(durationMillis);
+        } else {
+            circuitBreaker.onSuccess(durationMillis);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.http;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ow2.proactive.procci.model.exception.DeadlineExceededException;
+
+
+public class DeadlineTest {
+
+    @After
+    public void tearDown() {
+        Deadline.set(null);
+    }
+
+    @Test
+    public void withinTest() {
+        Deadline outer = Deadline.after(10000);
+        Deadline inner = Deadline.after(100);
+        Deadline.set(outer);
+
+        assertThat(Deadline.within(inner, () -> Deadline.current().get())).isSameAs(inner);
+        assertThat(Deadline.within(null, () -> Deadline.current().isPresent())).isFalse();
+        assertThat(Deadline.current().get()).isSameAs(outer);
+    }
+
+    @Test
+    public void remainingTest() {
+        Deadline deadline = Deadline.after(10000);
+
+        assertThat(deadline.remainingMillis()).isAtMost(10000L);
+        assertThat(deadline.remainingMillis()).isGreaterThan(9000L);
+        assertThat(deadline.isExpired()).isFalse();
+        deadline.check("test");
+    }
+
+    @Test(expected = DeadlineExceededException.class)
+    public void expiredTest() {
+        Deadline deadline = Deadline.after(0);
+
+        assertThat(deadline.isExpired()).isTrue();
+        deadline.check("test");
+    }
+}
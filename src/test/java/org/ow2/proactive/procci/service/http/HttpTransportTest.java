@@ -0,0 +1,406 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.http;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ow2.proactive.procci.model.cloud.automation.Model;
+import org.ow2.proactive.procci.model.cloud.automation.ModelDecoder;
+import org.ow2.proactive.procci.model.exception.DeadlineExceededException;
+import org.ow2.proactive.procci.model.exception.ServerException;
+import org.ow2.proactive.procci.model.exception.UpstreamUnavailableException;
+import org.ow2.proactive.procci.model.utils.FutureUtils;
+import org.ow2.proactive.procci.service.ConnectorConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.sun.net.httpserver.HttpServer;
+
+
+public class HttpTransportTest {
+
+    private HttpServer server;
+
+    private HttpTransport httpTransport;
+
+    private final Set<Object> remoteClients = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final AtomicInteger flakyCalls = new AtomicInteger();
+
+    private final AtomicInteger hedgedCalls = new AtomicInteger();
+
+    private final CountDownLatch firstModelDecoded = new CountDownLatch(1);
+
+    private final AtomicBoolean decodedBeforeEnd = new AtomicBoolean();
+
+    private ConnectorConfiguration configuration;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            remoteClients.add(exchange.getRemoteAddress());
+            byte[] body = "{}".getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            remoteClients.add(exchange.getRemoteAddress());
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/error", exchange -> {
+            remoteClients.add(exchange.getRemoteAddress());
+            byte[] body = "{}".getBytes();
+            exchange.sendResponseHeaders(500, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.createContext("/flaky", exchange -> {
+            byte[] body = "{}".getBytes();
+            exchange.sendResponseHeaders(flakyCalls.incrementAndGet() < 3 ? 503 : 200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.createContext("/hedged", exchange -> {
+            if (hedgedCalls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = "{}".getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.createContext("/missing", exchange -> {
+            byte[] body = "{}".getBytes();
+            exchange.sendResponseHeaders(404, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.createContext("/stream", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write("{\"id1\":{\"variables\":{\"occi.entity.id\":\"id1\"}},".getBytes());
+                output.flush();
+                try {
+                    //the end of the body is only sent once the first model is decoded, or after a while
+                    decodedBeforeEnd.set(firstModelDecoded.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                output.write("\"id2\":{\"variables\":{\"occi.entity.id\":\"id2\"}}}".getBytes());
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+
+        configuration = mock(ConnectorConfiguration.class);
+        when(configuration.getPoolMaxTotal()).thenReturn(4);
+        when(configuration.getPoolMaxPerRoute()).thenReturn(2);
+        when(configuration.getPoolKeepAliveMillis()).thenReturn(30000L);
+        when(configuration.getPoolIdleTimeoutMillis()).thenReturn(60000L);
+        when(configuration.getConnectTimeoutMillis()).thenReturn(5000L);
+        when(configuration.getSocketTimeoutMillis()).thenReturn(30000L);
+        when(configuration.getPoolAcquireTimeoutMillis()).thenReturn(5000L);
+        when(configuration.getMaxConcurrentCalls(any(Upstream.class))).thenReturn(1);
+        when(configuration.getCircuitBreakerWindowSize()).thenReturn(4);
+        when(configuration.getCircuitBreakerMinimumCalls()).thenReturn(2);
+        when(configuration.getCircuitBreakerFailureRateThreshold()).thenReturn(50);
+        when(configuration.getCircuitBreakerSlowCallRateThreshold()).thenReturn(100);
+        when(configuration.getCircuitBreakerSlowCallDurationMillis()).thenReturn(10000L);
+        when(configuration.getCircuitBreakerOpenDurationMillis()).thenReturn(60000L);
+        when(configuration.getCircuitBreakerHalfOpenCalls()).thenReturn(1);
+        when(configuration.getRetryMaxAttempts()).thenReturn(3);
+        when(configuration.getRetryBaseDelayMillis()).thenReturn(10L);
+        when(configuration.getRetryMaxDelayMillis()).thenReturn(50L);
+        when(configuration.getRetryBudgetPercent()).thenReturn(20);
+        when(configuration.getRetryBudgetMaxTokens()).thenReturn(10);
+
+        startTransport();
+    }
+
+    private void startTransport() throws IOReactorException {
+        httpTransport = new HttpTransport();
+        ReflectionTestUtils.setField(httpTransport, "configuration", configuration);
+        httpTransport.init();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        httpTransport.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void connectionReuseTest() throws Exception {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/test";
+
+        for (int i = 0; i < 5; i++) {
+            HttpResponse response = httpTransport.execute(Upstream.INSTANCES, new HttpGet(url)).get();
+            assertThat(EntityUtils.toString(response.getEntity())).isEqualTo("{}");
+        }
+
+        assertThat(remoteClients).hasSize(1);
+        assertThat(httpTransport.getPoolStatistics().getLeased()).isEqualTo(0);
+        assertThat(httpTransport.getPoolStatistics().getAvailable()).isEqualTo(1);
+        assertThat(httpTransport.getPoolStatistics().getMax()).isEqualTo(4);
+    }
+
+    @Test(expected = ServerException.class)
+    public void unreachableServerTest() {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/test";
+        server.stop(0);
+
+        FutureUtils.join(httpTransport.execute(Upstream.INSTANCES, new HttpGet(url)));
+    }
+
+    @Test
+    public void deadlineTest() {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/slow";
+        long start = System.currentTimeMillis();
+
+        try {
+            Deadline.within(Deadline.after(200), () -> Deadline.join(httpTransport.execute(Upstream.INSTANCES, new HttpGet(url))));
+            throw new AssertionError("the deadline should have been exceeded");
+        } catch (DeadlineExceededException ex) {
+            assertThat(System.currentTimeMillis() - start).isLessThan(1500L);
+        }
+        //the caller giving up is not a failure of the upstream
+        assertThat(httpTransport.getCircuitBreaker(Upstream.INSTANCES).getFailedCalls()).isEqualTo(0);
+    }
+
+    @Test(expected = DeadlineExceededException.class)
+    public void expiredDeadlineTest() {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/test";
+
+        try {
+            FutureUtils.join(httpTransport.execute(Upstream.INSTANCES, new HttpGet(url), Optional.of(Deadline.after(0))));
+        } finally {
+            assertThat(remoteClients).isEmpty();
+        }
+    }
+
+    @Test
+    public void unsentRequestTest() throws Exception {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/test";
+        ((CloseableHttpAsyncClient) ReflectionTestUtils.getField(httpTransport, "httpClient")).close();
+
+        try {
+            FutureUtils.join(httpTransport.execute(Upstream.INSTANCES, new HttpGet(url)));
+            throw new AssertionError("the request should not be sent");
+        } catch (ServerException ex) {
+            assertThat(httpTransport.getBulkhead(Upstream.INSTANCES).getActiveCalls()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void circuitBreakerTest() throws Exception {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/error";
+
+        for (int i = 0; i < 2; i++) {
+            HttpResponse response = httpTransport.execute(Upstream.INSTANCES, new HttpGet(url)).get();
+            assertThat(response.getStatusLine().getStatusCode()).isEqualTo(500);
+        }
+        assertThat(httpTransport.getCircuitBreaker(Upstream.INSTANCES).getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        try {
+            FutureUtils.join(httpTransport.execute(Upstream.INSTANCES, new HttpGet(url)));
+            throw new AssertionError("the circuit breaker should refuse the call");
+        } catch (UpstreamUnavailableException ex) {
+            assertThat(httpTransport.getCircuitBreaker(Upstream.INSTANCES).getNotPermittedCalls()).isEqualTo(1);
+        }
+
+        //the other services are not affected
+        String variablesUrl = "http://localhost:" + server.getAddress().getPort() + "/test";
+        HttpResponse response = httpTransport.execute(Upstream.VARIABLES, new HttpGet(variablesUrl)).get();
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(200);
+        assertThat(httpTransport.getCircuitBreakerStates().get("VARIABLES")).startsWith("CLOSED");
+    }
+
+    @Test
+    public void bulkheadTest() throws Exception {
+        String slowUrl = "http://localhost:" + server.getAddress().getPort() + "/slow";
+        String url = "http://localhost:" + server.getAddress().getPort() + "/test";
+
+        CompletableFuture<HttpResponse> slowCall = httpTransport.execute(Upstream.VARIABLES, new HttpGet(slowUrl));
+        try {
+            FutureUtils.join(httpTransport.execute(Upstream.VARIABLES, new HttpGet(url)));
+            throw new AssertionError("the bulkhead should refuse the call");
+        } catch (UpstreamUnavailableException ex) {
+            assertThat(httpTransport.getBulkhead(Upstream.VARIABLES).getRejectedCalls()).isEqualTo(1);
+        }
+
+        //the slow variables do not hold the calls to the instances
+        HttpResponse response = httpTransport.execute(Upstream.INSTANCES, new HttpGet(url)).get(1, TimeUnit.SECONDS);
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(200);
+
+        slowCall.cancel(true);
+        assertThat(httpTransport.getBulkhead(Upstream.VARIABLES).getActiveCalls()).isEqualTo(0);
+    }
+
+    @Test
+    public void bulkheadWaitTest() throws Exception {
+        when(configuration.getBulkheadMaxWaitMillis()).thenReturn(5000L);
+        String slowUrl = "http://localhost:" + server.getAddress().getPort() + "/slow";
+        String url = "http://localhost:" + server.getAddress().getPort() + "/test";
+
+        CompletableFuture<HttpResponse> slowCall = httpTransport.execute(Upstream.VARIABLES, new HttpGet(slowUrl));
+        CompletableFuture<HttpResponse> waitingCall = httpTransport.execute(Upstream.VARIABLES, new HttpGet(url));
+        assertThat(httpTransport.getBulkhead(Upstream.VARIABLES).getWaitingCalls()).isEqualTo(1);
+
+        //the waiting call is sent once the slow one finishes
+        slowCall.cancel(true);
+        HttpResponse response = waitingCall.get(1, TimeUnit.SECONDS);
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(200);
+        assertThat(httpTransport.getBulkhead(Upstream.VARIABLES).getRejectedCalls()).isEqualTo(0);
+        assertThat(httpTransport.getBulkhead(Upstream.VARIABLES).getActiveCalls()).isEqualTo(0);
+    }
+
+    @Test
+    public void retryTest() throws Exception {
+        when(configuration.getCircuitBreakerMinimumCalls()).thenReturn(4);
+        httpTransport.close();
+        startTransport();
+        String url = "http://localhost:" + server.getAddress().getPort() + "/flaky";
+
+        HttpResponse response = httpTransport.executeWithRetry(Upstream.VARIABLES, () -> new HttpGet(url)).get();
+
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(200);
+        assertThat(flakyCalls.get()).isEqualTo(3);
+        assertThat(httpTransport.getRetryBudget(Upstream.VARIABLES).getRetries()).isEqualTo(2);
+    }
+
+    @Test
+    public void retryRefusedCallTest() {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/error";
+        for (int i = 0; i < 2; i++) {
+            FutureUtils.join(httpTransport.execute(Upstream.INSTANCES, new HttpGet(url)));
+        }
+
+        try {
+            FutureUtils.join(httpTransport.executeWithRetry(Upstream.INSTANCES, () -> new HttpGet(url)));
+            throw new AssertionError("the circuit breaker should refuse the call");
+        } catch (UpstreamUnavailableException ex) {
+            assertThat(httpTransport.getRetryBudget(Upstream.INSTANCES).getRetries()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void hedgingTest() throws Exception {
+        when(configuration.isHedgingEnabled()).thenReturn(true);
+        when(configuration.getMaxConcurrentCalls(Upstream.INSTANCES)).thenReturn(2);
+        httpTransport.close();
+        startTransport();
+        String url = "http://localhost:" + server.getAddress().getPort() + "/test";
+        for (int i = 0; i < 100; i++) {
+            httpTransport.execute(Upstream.INSTANCES, new HttpGet(url)).get();
+        }
+        String hedgedUrl = "http://localhost:" + server.getAddress().getPort() + "/hedged";
+        long start = System.currentTimeMillis();
+
+        HttpResponse response = httpTransport.executeWithRetry(Upstream.INSTANCES, () -> new HttpGet(hedgedUrl))
+                                             .get(1, TimeUnit.SECONDS);
+
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(200);
+        assertThat(System.currentTimeMillis() - start).isLessThan(1000L);
+        assertThat(hedgedCalls.get()).isEqualTo(2);
+        assertThat(httpTransport.getHedgedCalls().get("INSTANCES")).isEqualTo(1L);
+    }
+
+    @Test
+    public void decodeWhileReceivedTest() throws Exception {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/stream";
+        ResponseDecoder<List<Model>> decoder = content -> {
+            List<Model> models = new ArrayList<>();
+            ModelDecoder.decodeModels(content, model -> {
+                models.add(model);
+                firstModelDecoded.countDown();
+            });
+            return models;
+        };
+
+        HttpResponse response = httpTransport.executeWithRetry(Upstream.INSTANCES, () -> new HttpGet(url), decoder)
+                                             .get(10, TimeUnit.SECONDS);
+
+        assertThat(response.getEntity()).isInstanceOf(DecodedEntity.class);
+        List<Model> models = ((DecodedEntity<List<Model>>) response.getEntity()).getDecoded()
+                                                                                .get(10, TimeUnit.SECONDS);
+        assertThat(models).hasSize(2);
+        assertThat(models.get(1).getVariables()).containsEntry("occi.entity.id", "id2");
+        assertThat(decodedBeforeEnd.get()).isTrue();
+
+        //the body of an error is buffered to be read as usual
+        String errorUrl = "http://localhost:" + server.getAddress().getPort() + "/missing";
+        HttpResponse error = httpTransport.executeWithRetry(Upstream.INSTANCES, () -> new HttpGet(errorUrl), decoder)
+                                          .get(10, TimeUnit.SECONDS);
+        assertThat(error.getStatusLine().getStatusCode()).isEqualTo(404);
+        assertThat(EntityUtils.toString(error.getEntity())).isEqualTo("{}");
+    }
+}
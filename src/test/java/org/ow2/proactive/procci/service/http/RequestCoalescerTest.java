@@ -0,0 +1,99 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.http;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.ow2.proactive.procci.model.exception.ServerException;
+
+
+public class RequestCoalescerTest {
+
+    private final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>();
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @Test
+    public void coalesceTest() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> first = coalescer.execute("url", () -> call(upstream));
+        CompletableFuture<String> second = coalescer.execute("url", () -> call(upstream));
+        CompletableFuture<String> other = coalescer.execute("other", () -> call(new CompletableFuture<>()));
+        assertThat(coalescer.getInFlight()).isEqualTo(2);
+
+        upstream.complete("result");
+
+        assertThat(first.join()).isEqualTo("result");
+        assertThat(second.join()).isEqualTo("result");
+        assertThat(other.isDone()).isFalse();
+        assertThat(upstreamCalls.get()).isEqualTo(2);
+        assertThat(coalescer.getCalls()).isEqualTo(2);
+        assertThat(coalescer.getCoalescedCalls()).isEqualTo(1);
+        assertThat(coalescer.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    public void noCachingTest() {
+        CompletableFuture<String> first = coalescer.execute("url", () -> call(CompletableFuture.completedFuture("1")));
+        CompletableFuture<String> second = coalescer.execute("url", () -> call(CompletableFuture.completedFuture("2")));
+
+        assertThat(first.join()).isEqualTo("1");
+        assertThat(second.join()).isEqualTo("2");
+        assertThat(coalescer.getCoalescedCalls()).isEqualTo(0);
+    }
+
+    @Test
+    public void failureAndCancellationTest() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> first = coalescer.execute("url", () -> call(upstream));
+        CompletableFuture<String> second = coalescer.execute("url", () -> call(upstream));
+
+        //a caller giving up does not cancel the shared call
+        first.cancel(true);
+        assertThat(upstream.isCancelled()).isFalse();
+
+        upstream.completeExceptionally(new ServerException());
+        try {
+            second.join();
+            throw new AssertionError("the failure should be shared");
+        } catch (CompletionException ex) {
+            assertThat(ex.getCause()).isInstanceOf(ServerException.class);
+        }
+        assertThat(coalescer.getInFlight()).isEqualTo(0);
+    }
+
+    private CompletableFuture<String> call(CompletableFuture<String> result) {
+        upstreamCalls.incrementAndGet();
+        return result;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.http;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+
+public class RetryPolicyTest {
+
+    @Test
+    public void canRetryTest() {
+        RetryPolicy retryPolicy = new RetryPolicy(3, 100, 1000);
+
+        assertThat(retryPolicy.canRetry(1)).isTrue();
+        assertThat(retryPolicy.canRetry(2)).isTrue();
+        assertThat(retryPolicy.canRetry(3)).isFalse();
+    }
+
+    @Test
+    public void backoffTest() {
+        RetryPolicy retryPolicy = new RetryPolicy(100, 100, 1000);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(retryPolicy.backoffMillis(1)).isAtMost(100L);
+            assertThat(retryPolicy.backoffMillis(3)).isAtMost(400L);
+            assertThat(retryPolicy.backoffMillis(64)).isAtMost(1000L);
+            assertThat(retryPolicy.backoffMillis(64)).isAtLeast(0L);
+        }
+    }
+
+    @Test
+    public void retryBudgetTest() {
+        RetryBudget retryBudget = new RetryBudget(50, 2);
+
+        assertThat(retryBudget.tryRetry()).isTrue();
+        assertThat(retryBudget.tryRetry()).isTrue();
+        assertThat(retryBudget.tryRetry()).isFalse();
+
+        retryBudget.onCall();
+        assertThat(retryBudget.tryRetry()).isFalse();
+        retryBudget.onCall();
+        assertThat(retryBudget.tryRetry()).isTrue();
+
+        assertThat(retryBudget.getRetries()).isEqualTo(3);
+        assertThat(retryBudget.getExhausted()).isEqualTo(2);
+    }
+
+    @Test
+    public void latencyPercentileTest() {
+        LatencyTracker latencyTracker = new LatencyTracker(100);
+        for (int i = 1; i <= 99; i++) {
+            latencyTracker.record(i);
+        }
+        assertThat(latencyTracker.percentile(95).isPresent()).isFalse();
+
+        latencyTracker.record(100);
+        assertThat(latencyTracker.percentile(95).getAsLong()).isEqualTo(95L);
+    }
+}
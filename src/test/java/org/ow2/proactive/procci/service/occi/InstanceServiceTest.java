@@ -26,33 +26,48 @@
 package org.ow2.proactive.procci.service.occi;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelAttributes.ID_NAME;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.ow2.proactive.procci.model.ModelConstant;
 import org.ow2.proactive.procci.model.cloud.automation.Model;
 import org.ow2.proactive.procci.model.occi.infrastructure.Compute;
 import org.ow2.proactive.procci.model.occi.infrastructure.ComputeBuilder;
+import org.ow2.proactive.procci.model.occi.infrastructure.constants.InfrastructureAttributes;
 import org.ow2.proactive.procci.model.occi.infrastructure.constants.InfrastructureIdentifiers;
+import org.ow2.proactive.procci.model.occi.platform.bigdata.constants.BigDataIdentifiers;
 import org.ow2.proactive.procci.model.occi.infrastructure.mixin.VMImage;
 import org.ow2.proactive.procci.model.occi.metamodel.Entity;
 import org.ow2.proactive.procci.model.occi.metamodel.Mixin;
 import org.ow2.proactive.procci.model.occi.metamodel.Resource;
+import org.ow2.proactive.procci.model.occi.metamodel.ResourceBuilder;
 import org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelAttributes;
 import org.ow2.proactive.procci.model.occi.metamodel.constants.MetamodelIdentifiers;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.EntityRendering;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.RenderingFields;
+import org.ow2.proactive.procci.model.occi.metamodel.rendering.ResourceRendering;
 import org.ow2.proactive.procci.model.occi.platform.bigdata.Swarm;
 import org.ow2.proactive.procci.model.occi.platform.bigdata.SwarmBuilder;
+import org.ow2.proactive.procci.model.utils.ConvertUtils;
 import org.ow2.proactive.procci.service.CloudAutomationInstanceClient;
+import org.ow2.proactive.procci.service.InstanceFilter;
 import org.ow2.proactive.procci.service.transformer.TransformerManager;
 import org.ow2.proactive.procci.service.transformer.TransformerType;
 import org.ow2.proactive.procci.service.transformer.occi.ComputeTransformer;
@@ -182,19 +197,26 @@ public class InstanceServiceTest {
         List<Model> models = new ArrayList<>();
         models.add(compute);
 
-        when(cloudAutomationInstanceClient.getModels()).thenReturn(models);
+        when(cloudAutomationInstanceClient.getModelsAsync()).thenReturn(CompletableFuture.completedFuture(models));
+        Mixin mixin = new VMImage("vmimageTest", new ArrayList<>(), new ArrayList<>(), "imageTest");
+        when(mixinService.getMixinsByEntityIdsAsync(Collections.singleton("id1"))).thenReturn(CompletableFuture.completedFuture(Collections.singletonMap("id1",
+                                                                                                                                                       Collections.singletonList(mixin))));
 
         List<EntityRendering> renderings = instanceService.getInstancesRendering(mixinService);
 
         assertThat(renderings.get(0).getKind()).matches(InfrastructureIdentifiers.INFRASTRUCTURE_SCHEME +
                                                         InfrastructureIdentifiers.COMPUTE);
+        assertThat(renderings.get(0).getMixins()).containsExactly(mixin.getTitle());
+        verify(mixinService, never()).getMixinsByEntityId("id1");
+        verify(cloudAutomationInstanceClient, never()).getModels();
 
         Model resource = new Model.Builder("test", "action").addVariable(ID_NAME, "id").build();
 
         models = new ArrayList<>();
         models.add(resource);
 
-        when(cloudAutomationInstanceClient.getModels()).thenReturn(models);
+        when(cloudAutomationInstanceClient.getModelsAsync()).thenReturn(CompletableFuture.completedFuture(models));
+        when(mixinService.getMixinsByEntityIdsAsync(Collections.singleton("id"))).thenReturn(CompletableFuture.completedFuture(Collections.emptyMap()));
 
         renderings = instanceService.getInstancesRendering(mixinService);
 
@@ -202,6 +224,127 @@ public class InstanceServiceTest {
                                                         MetamodelIdentifiers.RESOURCE_TERM);
     }
 
+    @Test
+    public void getInstancesBuildersFilterTest() {
+        Model compute = new Model.Builder(InfrastructureIdentifiers.COMPUTE_MODEL, "action").addVariable(ID_NAME, "id2")
+                                                                                            .build();
+        InstanceFilter filter = InstanceFilter.parse(Arrays.asList("mixin=vmimage", "mixin=os", "state=active"));
+        when(mixinService.getEntitiesIdByMixinTitleAsync("vmimage")).thenReturn(CompletableFuture.completedFuture(new HashSet<>(Arrays.asList("id1",
+                                                                                                                                               "id2"))));
+        when(mixinService.getEntitiesIdByMixinTitleAsync("os")).thenReturn(CompletableFuture.completedFuture(new HashSet<>(Arrays.asList("id2",
+                                                                                                                                          "id3"))));
+        when(cloudAutomationInstanceClient.queryModelsAsync(ID_NAME,
+                                                            Optional.empty(),
+                                                            filter.getConditions(),
+                                                            Optional.of(Collections.singleton("id2")),
+                                                            Optional.of("id1"),
+                                                            10)).thenReturn(CompletableFuture.completedFuture(Collections.singletonList(compute)));
+
+        List<ResourceBuilder> builders = instanceService.getInstancesBuilders(Optional.empty(),
+                                                                              filter,
+                                                                              Optional.of("id1"),
+                                                                              10,
+                                                                              mixinService);
+
+        assertThat(builders).hasSize(1);
+        assertThat(builders.get(0).build().getId()).isEqualTo("id2");
+        verify(mixinService, never()).getEntitiesIdByMixinTitle(Mockito.anyString());
+    }
+
+    @Test
+    public void getRenderingsWithoutMixinsTest() {
+        Model compute = new Model.Builder(InfrastructureIdentifiers.COMPUTE_MODEL, "action").addVariable(ID_NAME, "id1")
+                                                                                            .addVariable(ModelConstant.INSTANCE_STATUS,
+                                                                                                         ModelConstant.RUNNING_STATE)
+                                                                                            .build();
+        RenderingFields fields = RenderingFields.parse(Collections.singletonList(InfrastructureAttributes.COMPUTE_STATE_NAME));
+
+        List<EntityRendering> renderings = instanceService.getRenderings(Collections.singletonList(new ComputeBuilder(compute)),
+                                                                         mixinService,
+                                                                         fields);
+        assertThat(renderings.get(0).getAttributes()).containsExactly(InfrastructureAttributes.COMPUTE_STATE_NAME,
+                                                                      "ACTIVE");
+        assertThat(renderings.get(0).getMixins()).isNull();
+
+        when(cloudAutomationInstanceClient.getInstanceByVariableAsync(ID_NAME,
+                                                                      ConvertUtils.formatURL("id1"))).thenReturn(CompletableFuture.completedFuture(Optional.of(compute)));
+        when(computeTransformer.toResourceBuilder(Mockito.any(Model.class))).thenAnswer(invocation -> new ComputeBuilder((Model) invocation.getArguments()[0]));
+        when(computeTransformer.isInstanceOfType(Mockito.any(Compute.class))).thenReturn(true);
+        Optional<ResourceRendering> rendering = instanceService.getRendering("id1",
+                                                                             computeTransformer,
+                                                                             mixinService,
+                                                                             fields);
+        assertThat(rendering.get().getAttributes()).containsExactly(InfrastructureAttributes.COMPUTE_STATE_NAME,
+                                                                    "ACTIVE");
+
+        //the mixins are never resolved when they are not asked
+        verify(mixinService, never()).getMixinsByEntityIdsAsync(Mockito.anySetOf(String.class));
+        verify(mixinService, never()).getMixinsByEntityId(Mockito.anyString());
+        verify(computeTransformer, never()).toInstanceModel(Mockito.any(Model.class));
+    }
+
+    @Test
+    public void getRenderingAsyncTest() {
+        Model compute = new Model.Builder(InfrastructureIdentifiers.COMPUTE_MODEL, "action").addVariable(ID_NAME, "id1")
+                                                                                            .build();
+        Mixin mixin = new VMImage("vmimageTest", new ArrayList<>(), new ArrayList<>(), "imageTest");
+        CompletableFuture<Optional<Model>> instance = new CompletableFuture<>();
+        when(cloudAutomationInstanceClient.getInstanceByVariableAsync(ID_NAME,
+                                                                      ConvertUtils.formatURL("id1"))).thenReturn(instance);
+        when(mixinService.getMixinsByEntityIdsAsync(Collections.singleton("id1"))).thenReturn(CompletableFuture.completedFuture(Collections.singletonMap("id1",
+                                                                                                                                                       Collections.singletonList(mixin))));
+        when(computeTransformer.toResourceBuilder(Mockito.any(Model.class))).thenAnswer(invocation -> new ComputeBuilder((Model) invocation.getArguments()[0]));
+        when(computeTransformer.isInstanceOfType(Mockito.any(Compute.class))).thenReturn(true);
+
+        //the rendering waits for cloud automation without holding the calling thread
+        CompletableFuture<Optional<ResourceRendering>> rendering = instanceService.getRenderingAsync("id1",
+                                                                                                     computeTransformer,
+                                                                                                     mixinService,
+                                                                                                     RenderingFields.all());
+        assertThat(rendering.isDone()).isFalse();
+        instance.complete(Optional.of(compute));
+
+        assertThat(rendering.join().get().getMixins()).containsExactly(mixin.getTitle());
+        verify(mixinService, never()).getMixinsByEntityId(Mockito.anyString());
+        verify(cloudAutomationInstanceClient, never()).getInstanceModel(Mockito.anyString(),
+                                                                        Mockito.anyString(),
+                                                                        Mockito.any(ComputeTransformer.class));
+
+        //any instance is rendered as a compute by the compute transformer, as getEntity does
+        Model swarm = new Model.Builder(BigDataIdentifiers.SWARM_MODEL, "action").addVariable(ID_NAME, "id2").build();
+        when(cloudAutomationInstanceClient.getInstanceByVariableAsync(ID_NAME,
+                                                                      ConvertUtils.formatURL("id2"))).thenReturn(CompletableFuture.completedFuture(Optional.of(swarm)));
+        assertThat(instanceService.getRendering("id2",
+                                                computeTransformer,
+                                                mixinService,
+                                                RenderingFields.parse(Collections.singletonList(RenderingFields.KIND)))
+                                  .get()
+                                  .getKind()).isEqualTo(InfrastructureIdentifiers.INFRASTRUCTURE_SCHEME +
+                                                        InfrastructureIdentifiers.COMPUTE);
+
+        when(computeTransformer.isInstanceOfType(Mockito.any(Compute.class))).thenReturn(false);
+        assertThat(instanceService.getRendering("id1", computeTransformer, mixinService, RenderingFields.all())
+                                  .isPresent()).isFalse();
+    }
+
+    @Test
+    public void getMixinsFreeEntitiesTest() {
+        Model compute = new Model.Builder(InfrastructureIdentifiers.COMPUTE_MODEL, "action").addVariable(ID_NAME,
+                                                                                                         "id-1")
+                                                                                            .build();
+        when(cloudAutomationInstanceClient.getInstancesByVariable(Mockito.eq(ID_NAME),
+                                                                  Mockito.anyCollectionOf(String.class))).thenReturn(Collections.singletonMap("id-1",
+                                                                                                                                              compute));
+
+        Map<String, Entity> entities = instanceService.getMixinsFreeEntities(new HashSet<>(Arrays.asList("id−1",
+                                                                                                         "id2")));
+
+        assertThat(entities.keySet()).containsExactly("id−1");
+        assertThat(entities.get("id−1").getId()).isEqualTo("id-1");
+        verify(cloudAutomationInstanceClient).getInstancesByVariable(Mockito.eq(ID_NAME),
+                                                                     Mockito.anyCollectionOf(String.class));
+    }
+
     @Test
     public void createTest() {
         Mixin mixin = new VMImage("vmimageTest", new ArrayList<>(), new ArrayList<>(), "imageTest");
@@ -0,0 +1,106 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.occi;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+
+public class MixinReferenceIndexTest {
+
+    @Test
+    public void addEntityTest() {
+        MixinReferenceIndex index = new MixinReferenceIndex();
+        index.loadMixin("mixin", Collections.singleton("entity1"));
+
+        index.addEntity("entity2", Collections.singleton("mixin"));
+
+        assertThat(index.getEntityMixins("entity2").get()).containsExactly("mixin");
+        assertThat(index.getMixinEntities("mixin").get()).containsExactly("entity1", "entity2");
+
+        MixinReferenceIndex.Changes changes = index.takeChanges();
+        assertThat(changes.getEntities().get("entity2").applyTo(Collections.emptySet())).containsExactly("mixin");
+        assertThat(changes.getMixins().get("mixin").applyTo(Collections.singleton("entity3"))).containsExactly("entity2",
+                                                                                                              "entity3");
+        assertThat(index.takeChanges().isEmpty()).isTrue();
+    }
+
+    @Test
+    public void addAndRemoveMixinTest() {
+        MixinReferenceIndex index = new MixinReferenceIndex();
+        index.loadEntity("entity1", Collections.singleton("other"));
+
+        index.addMixin("mixin", new HashSet<>(Arrays.asList("entity1", "entity2")));
+
+        assertThat(index.getEntityMixins("entity1").get()).containsExactly("other", "mixin");
+        assertThat(index.getEntityMixins("entity2").isPresent()).isFalse();
+        assertThat(index.getUnloadedEntities(Arrays.asList("entity1", "entity3"))).containsExactly("entity3");
+        assertThat(index.getChangesCount()).isEqualTo(2);
+
+        index.removeMixin("mixin", new HashSet<>(Arrays.asList("entity1", "entity2")));
+
+        assertThat(index.getMixinEntities("mixin").isPresent()).isFalse();
+        assertThat(index.getEntityMixins("entity1").get()).containsExactly("other");
+
+        //the removal cancels the addition which has not been written
+        MixinReferenceIndex.Changes changes = index.takeChanges();
+        assertThat(changes.getEntities().get("entity1").applyTo(Collections.singleton("mixin"))).isEmpty();
+        assertThat(changes.getEntities().get("entity2").hasAdditions()).isFalse();
+    }
+
+    @Test
+    public void refreshTest() {
+        MixinReferenceIndex index = new MixinReferenceIndex();
+        index.loadMixin("mixin", Collections.singleton("entity1"));
+        index.addEntity("entity2", Collections.singleton("mixin"));
+
+        //another connector has added entity3, entity2 is not written yet
+        index.refreshMixin("mixin", new HashSet<>(Arrays.asList("entity1", "entity3")));
+
+        assertThat(index.getMixinEntities("mixin").get()).containsExactly("entity1", "entity2", "entity3");
+    }
+
+    @Test
+    public void restoreChangesTest() {
+        MixinReferenceIndex index = new MixinReferenceIndex();
+        index.loadMixin("mixin", Collections.emptySet());
+        index.addEntity("entity", Collections.singleton("mixin"));
+
+        MixinReferenceIndex.Changes changes = index.takeChanges();
+        index.removeMixin("mixin", Collections.singleton("entity"));
+        index.restoreChanges(changes);
+
+        //the later removal wins over the restored addition
+        MixinReferenceIndex.Changes restoredChanges = index.takeChanges();
+        assertThat(restoredChanges.getEntities().get("entity").applyTo(Collections.emptySet())).isEmpty();
+        assertThat(restoredChanges.getMixins()).isEmpty();
+    }
+}
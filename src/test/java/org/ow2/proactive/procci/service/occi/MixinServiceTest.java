@@ -31,12 +31,21 @@ import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -45,6 +54,7 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.ow2.proactive.procci.model.exception.CloudAutomationClientException;
 import org.ow2.proactive.procci.model.exception.CloudAutomationServerException;
+import org.ow2.proactive.procci.model.exception.MixinResolutionException;
 import org.ow2.proactive.procci.model.occi.infrastructure.Compute;
 import org.ow2.proactive.procci.model.occi.infrastructure.ComputeBuilder;
 import org.ow2.proactive.procci.model.occi.metamodel.Entity;
@@ -54,6 +64,8 @@ import org.ow2.proactive.procci.model.occi.metamodel.Resource;
 import org.ow2.proactive.procci.model.occi.metamodel.ResourceBuilder;
 import org.ow2.proactive.procci.model.occi.metamodel.rendering.MixinRendering;
 import org.ow2.proactive.procci.service.CloudAutomationVariablesClient;
+import org.ow2.proactive.procci.service.ConnectorConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
 
 
 /**
@@ -70,9 +82,35 @@ public class MixinServiceTest {
     @Mock
     private InstanceService instanceService;
 
+    @Mock
+    private ConnectorConfiguration configuration;
+
+    /**
+     * The variables changed through {@link CloudAutomationVariablesClient#modifyAsync(String, Function)}
+     */
+    private final Map<String, String> variables = new ConcurrentHashMap<>();
+
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        when(configuration.getMixinResolutionParallelism()).thenReturn(2);
+        when(configuration.getMixinCacheMaxSize()).thenReturn(100L);
+        when(configuration.getMixinLockStripes()).thenReturn(4);
+        when(configuration.getVariablesBatchParallelism()).thenReturn(2);
+        when(cloudAutomationVariablesClient.modifyAsync(Mockito.anyString(),
+                                                        Mockito.any(Function.class))).thenAnswer(invocation -> {
+                                                            String key = (String) invocation.getArguments()[0];
+                                                            Function<Optional<String>, Optional<String>> modification = (Function<Optional<String>, Optional<String>>) invocation.getArguments()[1];
+                                                            modification.apply(Optional.ofNullable(variables.get(key)))
+                                                                        .ifPresent(value -> variables.put(key, value));
+                                                            return CompletableFuture.completedFuture(Optional.ofNullable(variables.get(key)));
+                                                        });
+        mixinService.init();
+    }
+
+    @After
+    public void tearDown() {
+        mixinService.close();
     }
 
     @Test
@@ -84,18 +122,42 @@ public class MixinServiceTest {
         Mixin mixinToReturn = new MixinBuilder("schemeTest", "termTest").addEntity(entity).title(mixinTitle).build();
 
         when(cloudAutomationVariablesClient.get(mixinTitle)).thenReturn(MixinRendering.convertStringFromMixin(mixinToReturn.getRendering()));
-        when(instanceService.getMixinsFreeEntity(entity.getId())).thenReturn(Optional.of(entity));
+        when(instanceService.getMixinsFreeEntities(Collections.singleton(entity.getId()))).thenReturn(Collections.singletonMap(entity.getId(),
+                                                                                                                               entity));
 
         Mixin mixinGot = mixinService.getMixinByTitle(mixinTitle);
 
         verify(cloudAutomationVariablesClient).get(mixinTitle);
-        verify(instanceService).getMixinsFreeEntity(entity.getId());
+        verify(instanceService).getMixinsFreeEntities(Collections.singleton(entity.getId()));
 
         assertThat(mixinGot).isNotNull();
         assertThat(mixinGot.getTitle()).isEqualTo(mixinTitle);
         assertThat(mixinGot.getEntities()).containsExactly(entity);
     }
 
+    @Test
+    public void mixinCacheTest() {
+        String mixinTitle = "cachedMixin";
+        Mixin mixinToReturn = new MixinBuilder("schemeTest", "termTest").title(mixinTitle).build();
+        when(cloudAutomationVariablesClient.get(mixinTitle)).thenReturn(MixinRendering.convertStringFromMixin(mixinToReturn.getRendering()));
+
+        mixinService.getMixinByTitle(mixinTitle);
+        Mixin mixinGot = mixinService.getMixinByTitle(mixinTitle);
+
+        verify(cloudAutomationVariablesClient, Mockito.times(1)).get(mixinTitle);
+        assertThat(mixinGot.getTitle()).isEqualTo(mixinTitle);
+        assertThat(mixinService.getMixinCacheHits()).isEqualTo(1L);
+        assertThat(mixinService.getMixinCacheSize()).isEqualTo(1L);
+
+        when(cloudAutomationVariablesClient.getAllAsync(Collections.emptySet())).thenReturn(CompletableFuture.completedFuture(Collections.emptyMap()));
+        mixinService.removeMixin(mixinTitle);
+        assertThat(mixinService.getMixinCacheSize()).isEqualTo(0L);
+
+        mixinService.addMixin(mixinToReturn);
+        assertThat(mixinService.getEntitiesFreeMixinByTitle(mixinTitle).getTitle()).isEqualTo(mixinTitle);
+        verify(cloudAutomationVariablesClient, Mockito.times(1)).get(mixinTitle);
+    }
+
     @Test
     public void getMixinMockByTitleTest() {
 
@@ -105,12 +167,13 @@ public class MixinServiceTest {
         Mixin mixinToReturn = new MixinBuilder("schemeTest", "termTest").title(mixinTitle).addEntity(entity).build();
 
         when(cloudAutomationVariablesClient.get(mixinTitle)).thenReturn(MixinRendering.convertStringFromMixin(mixinToReturn.getRendering()));
-        when(instanceService.getMixinsFreeEntity(entity.getId())).thenReturn(Optional.of(entity));
+        when(instanceService.getMixinsFreeEntities(Collections.singleton(entity.getId()))).thenReturn(Collections.singletonMap(entity.getId(),
+                                                                                                                               entity));
 
         Mixin mixinGot = mixinService.getEntitiesFreeMixinByTitle(mixinTitle);
 
         verify(cloudAutomationVariablesClient).get(mixinTitle);
-        verify(instanceService).getMixinsFreeEntity(entity.getId());
+        verify(instanceService).getMixinsFreeEntities(Collections.singleton(entity.getId()));
 
         assertThat(mixinGot).isNotNull();
         assertThat(mixinGot.getTitle()).isEqualTo(mixinTitle);
@@ -144,6 +207,98 @@ public class MixinServiceTest {
 
     }
 
+    @Test
+    public void getMixinsByTitlesTest() throws IOException {
+
+        Mixin mixin1 = new MixinBuilder("schemeTest", "mixin1").build();
+        Mixin mixin2 = new MixinBuilder("schemeTest", "mixin2").build();
+        when(cloudAutomationVariablesClient.get(mixin1.getTitle())).thenReturn(MixinRendering.convertStringFromMixin(mixin1.getRendering()));
+        when(cloudAutomationVariablesClient.get(mixin2.getTitle())).thenReturn(MixinRendering.convertStringFromMixin(mixin2.getRendering()));
+
+        List<Mixin> mixins = mixinService.getMixinsByTitles(Arrays.asList(mixin2.getTitle(),
+                                                                          mixin1.getTitle(),
+                                                                          mixin2.getTitle()));
+
+        assertThat(mixins).containsExactly(mixin2, mixin1, mixin2).inOrder();
+        verify(cloudAutomationVariablesClient).get(mixin1.getTitle());
+        verify(cloudAutomationVariablesClient).get(mixin2.getTitle());
+    }
+
+    @Test
+    public void getMixinsByTitlesErrorsTest() throws IOException {
+
+        Mixin mixin = new MixinBuilder("schemeTest", "mixin").build();
+        when(cloudAutomationVariablesClient.get(mixin.getTitle())).thenReturn(MixinRendering.convertStringFromMixin(mixin.getRendering()));
+        when(cloudAutomationVariablesClient.get("missing1")).thenThrow(new CloudAutomationClientException("Not Found",
+                                                                                                          404));
+        when(cloudAutomationVariablesClient.get("missing2")).thenThrow(new CloudAutomationClientException("Not Found",
+                                                                                                          404));
+
+        try {
+            mixinService.getMixinsByTitles(Arrays.asList("missing1", mixin.getTitle(), "missing2"));
+            throw new AssertionError("the missing mixins should be reported");
+        } catch (MixinResolutionException ex) {
+            assertThat(ex.getErrors().keySet()).containsExactly("missing1", "missing2").inOrder();
+            assertThat(new ObjectMapper().readTree(ex.getJsonError()).get("mixins").has("missing2")).isTrue();
+        }
+
+        try {
+            mixinService.getMixinsByTitles(Arrays.asList("missing1", mixin.getTitle()));
+            throw new AssertionError("the missing mixin should be reported");
+        } catch (CloudAutomationClientException ex) {
+            assertThat(ex.isNotFound()).isTrue();
+        }
+    }
+
+    @Test
+    public void getMixinsByEntityIdsTest() throws IOException {
+
+        ObjectMapper mapper = new ObjectMapper();
+
+        Resource referencedEntity = new ResourceBuilder().url("referencedEntity").build();
+        Mixin sharedMixin = new MixinBuilder("mixinTest", "shared").addEntity(referencedEntity).build();
+        Mixin ownMixin = new MixinBuilder("mixinTest", "own").build();
+
+        Map<String, String> references = new HashMap<>();
+        references.put("entity1", mapper.writeValueAsString(Collections.singleton(sharedMixin.getTitle())));
+        references.put("entity2", mapper.writeValueAsString(new HashSet<>(Arrays.asList(sharedMixin.getTitle(),
+                                                                                        ownMixin.getTitle(),
+                                                                                        "deletedMixin"))));
+        Set<String> entitiesId = new HashSet<>(Arrays.asList("entity1", "entity2", "entityWithoutMixins"));
+        when(cloudAutomationVariablesClient.getAllAsync(entitiesId)).thenReturn(CompletableFuture.completedFuture(references));
+
+        Map<String, String> mixins = new HashMap<>();
+        mixins.put(sharedMixin.getTitle(), mapper.writeValueAsString(sharedMixin.getRendering()));
+        mixins.put(ownMixin.getTitle(), mapper.writeValueAsString(ownMixin.getRendering()));
+        when(cloudAutomationVariablesClient.getAllAsync(new HashSet<>(Arrays.asList(sharedMixin.getTitle(),
+                                                                                    ownMixin.getTitle(),
+                                                                                    "deletedMixin")))).thenReturn(CompletableFuture.completedFuture(mixins));
+
+        Map<String, List<Mixin>> entitiesMixins = mixinService.getMixinsByEntityIds(entitiesId);
+
+        assertThat(entitiesMixins.get("entity1")).containsExactly(new MixinBuilder("mixinTest", "shared").build());
+        assertThat(entitiesMixins.get("entity2")).containsExactly(new MixinBuilder("mixinTest", "shared").build(),
+                                                                  ownMixin);
+        assertThat(entitiesMixins).doesNotContainKey("entityWithoutMixins");
+        verify(cloudAutomationVariablesClient, Mockito.times(2)).getAllAsync(Mockito.anyCollection());
+        verify(instanceService, Mockito.never()).getMixinsFreeEntities(Mockito.anySet());
+    }
+
+    @Test
+    public void getEntitiesIdByMixinTitleAsyncTest() {
+        Resource entity = new ResourceBuilder().url("entity").build();
+        Mixin mixin = new MixinBuilder("mixinTest", "carried").addEntity(entity).build();
+        when(cloudAutomationVariablesClient.findAsync(mixin.getTitle())).thenReturn(CompletableFuture.completedFuture(Optional.of(MixinRendering.convertStringFromMixin(mixin.getRendering()))));
+        when(cloudAutomationVariablesClient.findAsync("missingMixin")).thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+        assertThat(mixinService.getEntitiesIdByMixinTitleAsync(mixin.getTitle()).join()).containsExactly("entity");
+        //the definition read is cached
+        assertThat(mixinService.getEntitiesIdByMixinTitleAsync(mixin.getTitle()).join()).containsExactly("entity");
+        assertThat(mixinService.getEntitiesIdByMixinTitleAsync("missingMixin").join()).isEmpty();
+        verify(cloudAutomationVariablesClient).findAsync(mixin.getTitle());
+        verify(cloudAutomationVariablesClient, Mockito.never()).find(Mockito.anyString());
+    }
+
     @Test
     public void getEntityMixinNamesTest() throws IOException {
         Set<String> references = new HashSet<>();
@@ -172,6 +327,35 @@ public class MixinServiceTest {
         assertThat(ex).isInstanceOf(CloudAutomationServerException.class);
     }
 
+    @Test
+    public void indexedReferencesTest() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+
+        Mixin mixin = new MixinBuilder("mixinTest", "indexed").build();
+        variables.put("entity", mapper.writeValueAsString(Collections.singleton("other")));
+        when(cloudAutomationVariablesClient.get("entity")).thenReturn(variables.get("entity"));
+        when(cloudAutomationVariablesClient.getAllAsync(Collections.singleton("entity"))).thenReturn(CompletableFuture.completedFuture(Collections.emptyMap()));
+
+        assertThat(mixinService.getMixinNamesFromEntity("entity")).containsExactly("other");
+
+        //another connector adds a reference after this one has read them
+        variables.put("entity", mapper.writeValueAsString(new TreeSet<>(Arrays.asList("other", "remote"))));
+        mixinService.addMixin(new MixinBuilder("mixinTest", "indexed").addEntity(new ResourceBuilder().url("entity")
+                                                                                                       .build())
+                                                                       .build());
+
+        assertThat(mixinService.getMixinNamesFromEntity("entity")).contains(mixin.getTitle());
+        verify(cloudAutomationVariablesClient).get("entity");
+        verify(cloudAutomationVariablesClient, Mockito.never()).getAllAsync(Mockito.anyCollection());
+
+        mixinService.flushReferences();
+
+        Set<String> references = new TreeSet<>(Arrays.asList("other", "remote", mixin.getTitle()));
+        assertThat(variables.get("entity")).isEqualTo(mapper.writeValueAsString(references));
+        assertThat(mixinService.getMixinNamesFromEntity("entity")).isEqualTo(references);
+        assertThat(mixinService.getPendingReferenceChanges()).isEqualTo(0);
+    }
+
     @Test
     public void addReferenceTest() throws IOException {
 
@@ -186,15 +370,17 @@ public class MixinServiceTest {
 
         Compute compute = new ComputeBuilder().url("idTest").addMixin(mixin).build();
 
-        when(cloudAutomationVariablesClient.get("mixinTest")).thenReturn(mapper.writeValueAsString(mixin.getRendering()));
+        variables.put("mixinTest", mapper.writeValueAsString(mixin.getRendering()));
+        when(cloudAutomationVariablesClient.find("mixinTest")).thenReturn(Optional.of(variables.get("mixinTest")));
 
         mixinService.addEntity(compute);
+        mixinService.flushReferences();
 
         mixin.addEntity(compute);
 
-        verify(cloudAutomationVariablesClient).post("idTest", mapper.writeValueAsString(mixinsId));
-        verify(cloudAutomationVariablesClient).get("mixinTest");
-        verify(cloudAutomationVariablesClient).update("mixinTest", mapper.writeValueAsString(mixin.getRendering()));
+        assertThat(variables.get("idTest")).isEqualTo(mapper.writeValueAsString(mixinsId));
+        verify(cloudAutomationVariablesClient).find("mixinTest");
+        assertThat(variables.get("mixinTest")).isEqualTo(mapper.writeValueAsString(mixin.getRendering()));
 
         //test add new object with new mixin
 
@@ -209,14 +395,13 @@ public class MixinServiceTest {
 
         when(cloudAutomationVariablesClient.get("idTest2")).thenReturn(mapper.writeValueAsString(mixin.getRendering()));
 
-        Mockito.doThrow(new CloudAutomationClientException("mixinTest2 not found"))
-               .when(cloudAutomationVariablesClient)
-               .get("mixinTest2");
+        when(cloudAutomationVariablesClient.find("mixinTest2")).thenReturn(Optional.empty());
 
         mixinService.addEntity(compute2);
+        mixinService.flushReferences();
 
-        verify(cloudAutomationVariablesClient).post("idTest2", mapper.writeValueAsString(mixinId2));
-        verify(cloudAutomationVariablesClient).get("mixinTest2");
+        assertThat(variables.get("idTest2")).isEqualTo(mapper.writeValueAsString(mixinId2));
+        verify(cloudAutomationVariablesClient).find("mixinTest2");
         verify(cloudAutomationVariablesClient).post("mixinTest2", mapper.writeValueAsString(mixin2.getRendering()));
 
     }
@@ -247,21 +432,63 @@ public class MixinServiceTest {
 
         when(cloudAutomationVariablesClient.get(mixinToRemove.getTitle())).thenReturn(MixinRendering.convertStringFromMixin(mixinToRemove.getRendering()));
 
-        when(instanceService.getMixinsFreeEntity(resourceWithThreeMixin.getId())).thenReturn(Optional.of(resourceWithThreeMixin));
-
-        when(instanceService.getMixinsFreeEntity(resourceWithTheMixinToRemove.getId())).thenReturn(Optional.of(resourceWithTheMixinToRemove));
-
-        when(cloudAutomationVariablesClient.get(resourceWithThreeMixin.getId())).thenReturn(mapper.writeValueAsString(allMixins));
+        Map<String, Entity> entities = new HashMap<>();
+        entities.put(resourceWithThreeMixin.getId(), resourceWithThreeMixin);
+        entities.put(resourceWithTheMixinToRemove.getId(), resourceWithTheMixinToRemove);
+        when(instanceService.getMixinsFreeEntities(entities.keySet())).thenReturn(entities);
 
-        when(cloudAutomationVariablesClient.get(resourceWithTheMixinToRemove.getId())).thenReturn(mapper.writeValueAsString(setWithMixinToRemove));
+        variables.put(resourceWithThreeMixin.getId(), mapper.writeValueAsString(allMixins));
+        variables.put(resourceWithTheMixinToRemove.getId(), mapper.writeValueAsString(setWithMixinToRemove));
 
         mixinService.removeMixin(mixinToRemove.getTitle());
+        mixinService.flushReferences();
 
         verify(cloudAutomationVariablesClient).delete(mixinToRemove.getTitle());
-        verify(cloudAutomationVariablesClient).update(resourceWithThreeMixin.getId(),
-                                                      mapper.writeValueAsString(notDeletedMixins));
-        verify(cloudAutomationVariablesClient).update(resourceWithTheMixinToRemove.getId(),
-                                                      mapper.writeValueAsString(new HashSet<String>()));
+        assertThat(variables.get(resourceWithThreeMixin.getId())).isEqualTo(mapper.writeValueAsString(new TreeSet<>(notDeletedMixins)));
+        assertThat(variables.get(resourceWithTheMixinToRemove.getId())).isEqualTo("[]");
+    }
+
+    @Test
+    public void addMixinTest() throws IOException {
+
+        ObjectMapper mapper = new ObjectMapper();
+
+        Resource referencedResource = new ResourceBuilder().url("referencedResource").build();
+        Resource newResource = new ResourceBuilder().url("newResource").build();
+        Mixin mixin = new MixinBuilder("mixinTest", "added").addEntity(referencedResource)
+                                                             .addEntity(newResource)
+                                                             .build();
+
+        variables.put(referencedResource.getId(), "[\"other\"]");
+
+        mixinService.addMixin(mixin);
+        mixinService.flushReferences();
+
+        Set<String> updatedReferences = new TreeSet<>();
+        updatedReferences.add("other");
+        updatedReferences.add(mixin.getTitle());
+        verify(cloudAutomationVariablesClient).post(mixin.getTitle(), mapper.writeValueAsString(mixin.getRendering()));
+        verify(cloudAutomationVariablesClient, Mockito.never()).getAllAsync(Mockito.anyCollection());
+        assertThat(variables.get(referencedResource.getId())).isEqualTo(mapper.writeValueAsString(updatedReferences));
+        assertThat(variables.get(newResource.getId())).isEqualTo(mapper.writeValueAsString(Collections.singleton(mixin.getTitle())));
+    }
+
+    @Test
+    public void referenceWriteMergeTest() throws IOException {
+        Resource referencedResource = new ResourceBuilder().url("mergedResource").build();
+        Mixin mixin = new MixinBuilder("mixinTest", "mergedMixin").addEntity(referencedResource).build();
+        variables.put(referencedResource.getId(), "[\"other\"]");
+        ReferenceLocks referenceLocks = (ReferenceLocks) ReflectionTestUtils.getField(mixinService, "referenceLocks");
+
+        //the references written are merged with the stored ones, without waiting for a change of the entity
+        mixinService.addMixin(mixin);
+        referenceLocks.withLocks(Collections.emptySet(),
+                                 Collections.singleton(referencedResource.getId()),
+                                 () -> {
+                                     CompletableFuture.runAsync(mixinService::flushReferences).join();
+                                 });
+
+        assertThat(variables.get(referencedResource.getId())).isEqualTo("[\"mergedMixin\",\"other\"]");
     }
 
     @Test
@@ -0,0 +1,141 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.occi;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+import org.ow2.proactive.procci.model.exception.DeadlineExceededException;
+import org.ow2.proactive.procci.service.http.Deadline;
+
+
+public class ReferenceLocksTest {
+
+    private final ReferenceLocks referenceLocks = new ReferenceLocks(1024);
+
+    @Test
+    public void sameKeyTest() throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> first = holdLock("mixin", locked, release);
+        locked.await();
+
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() -> referenceLocks.withLocks(Collections.singleton("mixin"),
+                                                                                                   Collections.emptySet(),
+                                                                                                   () -> {
+                                                                                                   }));
+        Exception ex = null;
+        try {
+            second.get(100, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            ex = e;
+        }
+        assertThat(ex).isNotNull();
+
+        release.countDown();
+        first.get(1, TimeUnit.SECONDS);
+        second.get(1, TimeUnit.SECONDS);
+        assertThat(referenceLocks.getContentions()).isEqualTo(1L);
+        assertThat(referenceLocks.getWaitMillis()).isAtLeast(50L);
+        assertThat(referenceLocks.getMostWaitedMixins(10).keySet()).containsExactly("mixin");
+    }
+
+    @Test
+    public void differentKeysTest() throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> first = holdLock("mixin1", locked, release);
+        locked.await();
+
+        String result = referenceLocks.withLocks(Collections.singleton("mixin2"),
+                                                 Collections.singleton("entity"),
+                                                 () -> "done");
+
+        release.countDown();
+        first.get(1, TimeUnit.SECONDS);
+        assertThat(result).isEqualTo("done");
+        assertThat(referenceLocks.getContentions()).isEqualTo(0L);
+    }
+
+    @Test
+    public void deadlineTest() throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> first = holdLock("mixin", locked, release);
+        locked.await();
+
+        Exception ex = null;
+        try {
+            Deadline.within(Deadline.after(50),
+                            () -> referenceLocks.withLocks(Collections.singleton("mixin"),
+                                                           Collections.emptySet(),
+                                                           () -> "done"));
+        } catch (DeadlineExceededException e) {
+            ex = e;
+        }
+
+        release.countDown();
+        first.get(1, TimeUnit.SECONDS);
+        assertThat(ex).isNotNull();
+    }
+
+    @Test
+    public void lockOrderTest() throws Exception {
+        //the keys given in opposite orders are locked in the same order, the operations never wait for each other
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> lockRepeatedly("mixin1", "mixin2"));
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() -> lockRepeatedly("mixin2", "mixin1"));
+
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+        assertThat(referenceLocks.getAcquisitions()).isEqualTo(4000L);
+    }
+
+    private void lockRepeatedly(String... titles) {
+        for (int i = 0; i < 1000; i++) {
+            referenceLocks.withLocks(Arrays.asList(titles), Collections.emptySet(), Thread::yield);
+        }
+    }
+
+    private CompletableFuture<Void> holdLock(String title, CountDownLatch locked, CountDownLatch release) {
+        return CompletableFuture.runAsync(() -> referenceLocks.withLocks(Collections.singleton(title),
+                                                                         Collections.emptySet(),
+                                                                         () -> {
+                                                                             locked.countDown();
+                                                                             try {
+                                                                                 release.await();
+                                                                             } catch (InterruptedException e) {
+                                                                                 Thread.currentThread().interrupt();
+                                                                             }
+                                                                         }));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * ProActive Parallel Suite(TM):
+ * The Open Source library for parallel and distributed
+ * Workflows & Scheduling, Orchestration, Cloud Automation
+ * and Big Data Analysis on Enterprise Grids & Clouds.
+ *
+ * Copyright (c) 2007 - 2017 ActiveEon
+ * Contact: contact@activeeon.com
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation: version 3 of
+ * the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If needed, contact us to obtain a release under GPL Version 2 or 3
+ * or a different license than the AGPL.
+ */
+package org.ow2.proactive.procci.service.occi;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ow2.proactive.procci.model.exception.ReferenceCycleException;
+
+import com.google.common.collect.ImmutableSet;
+
+
+public class RequestIdentityMapTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        RequestIdentityMap.close();
+    }
+
+    @Test
+    public void getTest() {
+        assertThat(load("id")).isNotSameAs(load("id"));
+        assertThat(loads.get()).isEqualTo(2);
+
+        RequestIdentityMap.open();
+        Object first = load("id");
+        assertThat(load("id")).isSameAs(first);
+        assertThat(RequestIdentityMap.get("other type", "id", Object::new)).isNotSameAs(first);
+        assertThat(loads.get()).isEqualTo(3);
+
+        RequestIdentityMap.evict("type", "id");
+        assertThat(load("id")).isNotSameAs(first);
+        assertThat(loads.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void getAllTest() {
+        RequestIdentityMap.open();
+        Object loaded = load("id1");
+
+        Map<String, Object> objects = RequestIdentityMap.getAll("type", ImmutableSet.of("id1", "id2", "id3"), ids -> {
+            assertThat(ids).containsExactly("id2", "id3");
+            Map<String, Object> found = new HashMap<>();
+            found.put("id2", new Object());
+            return found;
+        });
+
+        assertThat(objects.get("id1")).isSameAs(loaded);
+        assertThat(objects.keySet()).containsExactly("id1", "id2");
+        assertThat(RequestIdentityMap.current().get().size()).isEqualTo(2);
+    }
+
+    @Test
+    public void propagationTest() {
+        RequestIdentityMap.open();
+        Object loaded = load("id");
+        RequestIdentityMap identityMap = RequestIdentityMap.current().get();
+
+        Object fromAnotherThread = CompletableFuture.supplyAsync(() -> RequestIdentityMap.within(identityMap,
+                                                                                                 () -> load("id")))
+                                                    .join();
+
+        assertThat(fromAnotherThread).isSameAs(loaded);
+    }
+
+    @Test(expected = ReferenceCycleException.class)
+    public void cycleTest() {
+        RequestIdentityMap.open();
+        RequestIdentityMap.get("type", "a", () -> RequestIdentityMap.get("type", "b", () -> load("a")));
+    }
+
+    @Test
+    public void getAllCycleTest() {
+        RequestIdentityMap.open();
+        try {
+            RequestIdentityMap.getAll("type", ImmutableSet.of("a", "b"), ids -> {
+                load("b");
+                return new HashMap<>();
+            });
+            throw new AssertionError("the cycle should be refused");
+        } catch (ReferenceCycleException ex) {
+            assertThat(ex.getJsonError()).contains("type b");
+        }
+
+        //the ids are not loading anymore
+        assertThat(load("a")).isSameAs(load("a"));
+    }
+
+    private Object load(String id) {
+        return RequestIdentityMap.get("type", id, () -> {
+            loads.incrementAndGet();
+            return new Object();
+        });
+    }
+}
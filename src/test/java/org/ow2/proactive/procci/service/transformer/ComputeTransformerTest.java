@@ -26,14 +26,28 @@
 package org.ow2.proactive.procci.service.transformer;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.Test;
+import org.ow2.proactive.procci.model.InstanceModel;
 import org.ow2.proactive.procci.model.cloud.automation.Model;
 import org.ow2.proactive.procci.model.exception.CloudAutomationServerException;
 import org.ow2.proactive.procci.model.occi.infrastructure.Compute;
 import org.ow2.proactive.procci.model.occi.infrastructure.ComputeBuilder;
 import org.ow2.proactive.procci.model.occi.infrastructure.state.ComputeState;
+import org.ow2.proactive.procci.model.occi.metamodel.Mixin;
+import org.ow2.proactive.procci.model.occi.metamodel.MixinBuilder;
+import org.ow2.proactive.procci.service.occi.MixinService;
 import org.ow2.proactive.procci.service.transformer.occi.ComputeTransformer;
+import org.springframework.test.util.ReflectionTestUtils;
 
 
 public class ComputeTransformerTest {
@@ -60,4 +74,26 @@ public class ComputeTransformerTest {
         assertThat(model.getVariables()).containsEntry("occi.entity.title", "titleTest");
     }
 
+    @Test
+    public void toInstanceModelAsyncTest() {
+        MixinService mixinService = mock(MixinService.class);
+        ComputeTransformer computeTransformer = new ComputeTransformer();
+        ReflectionTestUtils.setField(computeTransformer, "mixinService", mixinService);
+        Mixin mixin = new MixinBuilder("schemeTest", "termTest").build();
+        CompletableFuture<Map<String, List<Mixin>>> mixins = new CompletableFuture<>();
+        when(mixinService.getMixinsByEntityIdsAsync(Collections.singleton("id1"))).thenReturn(mixins);
+        Model model = new Model.Builder("occi.infrastructure.compute", "create").addVariable("occi.entity.id", "id1")
+                                                                                .addVariable("occi.compute.cores", "2")
+                                                                                .build();
+
+        //the conversion waits for the mixins without blocking the caller
+        CompletableFuture<InstanceModel> compute = computeTransformer.toInstanceModelAsync(model);
+        assertThat(compute.isDone()).isFalse();
+
+        mixins.complete(Collections.singletonMap("id1", Collections.singletonList(mixin)));
+        assertThat(((Compute) compute.join()).getCores().get()).isEqualTo(2);
+        assertThat(((Compute) compute.join()).getMixins()).containsExactly(mixin);
+        verify(mixinService, never()).getMixinsByEntityId("id1");
+    }
+
 }